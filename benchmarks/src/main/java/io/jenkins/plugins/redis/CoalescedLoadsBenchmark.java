@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import hudson.model.Fingerprint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrent loads of single small fingerprints, with and without coalescing them by the {@link LoadMultiplexer},
+ * against the in-process {@link RespServer} with an injected latency, so that uncoalesced loads are bound by the
+ * number of connections in the pool and coalesced ones by the size of the batches. Only loads are measured, against
+ * a stand-in that answers every command after the same latency, so it tells neither how saves and other operations
+ * behave, nor how a real Redis server handles the pipelined batches. Meant to be run at a high thread count, given
+ * on the command line, such as with {@code -t 64}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CoalescedLoadsBenchmark {
+
+    static final int FINGERPRINTS = 1000;
+
+    @Param({"false", "true"})
+    public boolean coalesceLoads;
+
+    @Param({"1"})
+    public int latency;
+
+    private RespServer server;
+    private RedisFingerprintStorage storage;
+    private final List<String> ids = new ArrayList<>();
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        SplittableRandom random;
+
+        @Setup
+        public void setUp(ThreadParams threadParams) {
+            random = new SplittableRandom(threadParams.getThreadIndex());
+        }
+
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new RespServer();
+        storage = new RedisFingerprintStorage("benchmark");
+        storage.setHost("127.0.0.1");
+        storage.setPort(server.getPort());
+        storage.setCoalesceLoads(coalesceLoads);
+        for (int i = 0; i < FINGERPRINTS; i++) {
+            storage.save(storage.blobToFingerprint(FingerprintFixtures.xml(FingerprintFixtures.Size.SMALL, i)));
+            ids.add(FingerprintFixtures.id(i));
+        }
+        server.setLatency(latency, 0);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Benchmark
+    public Fingerprint load(ThreadState state) throws IOException {
+        return storage.load(ids.get(state.random.nextInt(FINGERPRINTS)));
+    }
+
+}
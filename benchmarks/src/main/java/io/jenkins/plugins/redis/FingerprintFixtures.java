@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import hudson.Util;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates realistic fingerprints, deterministically so that benchmark results are reproducible.
+ */
+final class FingerprintFixtures {
+
+    /**
+     * Size of the usages of a fingerprint.
+     */
+    enum Size {
+        /**
+         * Artifact that has just been archived, and is not used yet.
+         */
+        EMPTY(0, 0),
+        /**
+         * Artifact used by a single build.
+         */
+        SMALL(1, 1),
+        /**
+         * Library used by a few dozen jobs.
+         */
+        MEDIUM(20, 50),
+        /**
+         * Base image or parent pom used by thousands of jobs, across many builds.
+         */
+        HUGE(2000, 200);
+
+        private final int jobs;
+        private final int rangesPerJob;
+
+        Size(int jobs, int rangesPerJob) {
+            this.jobs = jobs;
+            this.rangesPerJob = rangesPerJob;
+        }
+
+        static Size of(String name) {
+            return valueOf(name.toUpperCase(Locale.ENGLISH));
+        }
+    }
+
+    private FingerprintFixtures() {
+    }
+
+    static String id(int index) {
+        return Util.getDigestOf("benchmark-" + index);
+    }
+
+    /**
+     * Returns the XML of the fingerprint with the given index, as stored by Jenkins.
+     */
+    static String xml(Size size, int index) {
+        Random random = new Random(index);
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version='1.1' encoding='UTF-8'?>\n<fingerprint>\n");
+        xml.append("  <timestamp>2021-01-01 00:00:00.0 UTC</timestamp>\n");
+        xml.append("  <original>\n    <name>").append(jobName(0)).append("</name>\n    <number>1</number>\n");
+        xml.append("  </original>\n");
+        xml.append("  <md5sum>").append(id(index)).append("</md5sum>\n");
+        xml.append("  <fileName>artifact-").append(index).append(".jar</fileName>\n");
+        xml.append("  <usages>\n");
+        for (int job = 0; job < size.jobs; job++) {
+            xml.append("    <entry>\n      <string>").append(jobName(job)).append("</string>\n      <ranges>");
+            int build = 1 + random.nextInt(10);
+            for (int range = 0; range < size.rangesPerJob; range++) {
+                if (range > 0) {
+                    xml.append(',');
+                }
+                int length = random.nextInt(4);
+                xml.append(build);
+                if (length > 0) {
+                    xml.append('-').append(build + length);
+                }
+                build += length + 2 + random.nextInt(5);
+            }
+            xml.append("</ranges>\n    </entry>\n");
+        }
+        xml.append("  </usages>\n  <facets/>\n</fingerprint>");
+        return xml.toString();
+    }
+
+    private static String jobName(int job) {
+        return "team-" + job % 10 + "/service-" + job + "/main";
+    }
+
+}
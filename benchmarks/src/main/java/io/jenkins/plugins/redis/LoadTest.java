@@ -0,0 +1,266 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import hudson.model.Fingerprint;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Load test of the storage by a simulated build farm, against the in-process {@link RespServer} with injected latency.
+ *
+ * Concurrent builds each record the fingerprints of a few artifacts, picked following a {@link ZipfDistribution} of
+ * their popularity, by loading them, adding the build to their usages and saving them. Meanwhile, a cleanup thread
+ * may continuously stream all the fingerprints, as {@link RedisFingerprintStorage#iterateAndCleanupFingerprints} does,
+ * and delete the stale fingerprints preloaded before the test. Trimming the usages of deleted jobs needs a running
+ * Jenkins, so it is not simulated.
+ *
+ * The throughput, the latency percentiles of loads and saves, the mean wait for a pooled connection and the number of
+ * Redis commands of each scenario are printed. The load is configured by the following system properties:
+ * <ul>
+ *     <li>{@code loadtest.scenarios}: scenarios to run, all by default</li>
+ *     <li>{@code loadtest.builds}: concurrent builds, 16 by default</li>
+ *     <li>{@code loadtest.artifacts}: distinct artifacts, 5000 by default</li>
+ *     <li>{@code loadtest.artifactsPerBuild}: fingerprints recorded by each build, 10 by default</li>
+ *     <li>{@code loadtest.zipfExponent}: exponent of the popularity of artifacts, 1.0 by default</li>
+ *     <li>{@code loadtest.staleFingerprints}: stale fingerprints to clean up, 2000 by default</li>
+ *     <li>{@code loadtest.duration}: duration of each scenario in seconds, 20 by default</li>
+ *     <li>{@code loadtest.keyScheme}: key scheme of the storage, {@code COMPACT} by default</li>
+ * </ul>
+ */
+public final class LoadTest {
+
+    enum Scenario {
+        /**
+         * Builds only, with no latency.
+         */
+        BASELINE(0, 0, false),
+        /**
+         * Builds only, with the latency of a Redis in the same data center.
+         */
+        LATENCY(2, 1, false),
+        /**
+         * Builds and cleanup, with the latency of a Redis in the same data center.
+         */
+        CLEANUP(2, 1, true);
+
+        private final int latency;
+        private final int jitter;
+        private final boolean cleanup;
+
+        Scenario(int latency, int jitter, boolean cleanup) {
+            this.latency = latency;
+            this.jitter = jitter;
+            this.cleanup = cleanup;
+        }
+    }
+
+    private static final int BUILDS = Integer.getInteger("loadtest.builds", 16);
+    private static final int ARTIFACTS = Integer.getInteger("loadtest.artifacts", 5000);
+    private static final int ARTIFACTS_PER_BUILD = Integer.getInteger("loadtest.artifactsPerBuild", 10);
+    private static final double ZIPF_EXPONENT = Double.parseDouble(System.getProperty("loadtest.zipfExponent", "1.0"));
+    private static final int STALE_FINGERPRINTS = Integer.getInteger("loadtest.staleFingerprints", 2000);
+    private static final int DURATION = Integer.getInteger("loadtest.duration", 20);
+    private static final KeyScheme KEY_SCHEME = KeyScheme.valueOf(System.getProperty("loadtest.keyScheme", "COMPACT"));
+
+    private final Scenario scenario;
+    private final ZipfDistribution popularity = new ZipfDistribution(ARTIFACTS, ZIPF_EXPONENT);
+    private final Set<String> staleIds = new HashSet<>();
+    private final LatencyHistogram loads = new LatencyHistogram();
+    private final LatencyHistogram saves = new LatencyHistogram();
+    private final LatencyHistogram cleanups = new LatencyHistogram();
+    private final LongAdder builds = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder cleanedUp = new LongAdder();
+    private RedisFingerprintStorage storage;
+    private volatile boolean stopped;
+
+    private LoadTest(Scenario scenario) {
+        this.scenario = scenario;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String scenarios = System.getProperty("loadtest.scenarios");
+        List<Scenario> selected = new ArrayList<>();
+        if (scenarios == null) {
+            selected.addAll(Arrays.asList(Scenario.values()));
+        } else {
+            for (String scenario : scenarios.split(",")) {
+                selected.add(Scenario.valueOf(scenario.trim().toUpperCase(Locale.ENGLISH)));
+            }
+        }
+        for (Scenario scenario : selected) {
+            new LoadTest(scenario).run(System.out);
+        }
+    }
+
+    private void run(PrintStream out) throws Exception {
+        try (RespServer server = new RespServer()) {
+            storage = new RedisFingerprintStorage("loadtest");
+            storage.setHost("127.0.0.1");
+            storage.setPort(server.getPort());
+            storage.setKeyScheme(KEY_SCHEME);
+            for (int i = 0; i < STALE_FINGERPRINTS; i++) {
+                int index = ARTIFACTS + i;
+                storage.save(storage.blobToFingerprint(
+                        FingerprintFixtures.xml(FingerprintFixtures.Size.SMALL, index)));
+                staleIds.add(FingerprintFixtures.id(index));
+            }
+            server.setLatency(scenario.latency, scenario.jitter);
+            Map<String, Long> commandsBefore = server.getCommandCounts();
+            StorageMetrics.OperationMetrics borrows = StorageMetrics.INSTANCE.get(StorageMetrics.Operation.BORROW);
+            long borrowsBefore = borrows.getCount();
+            double borrowTimeBefore = borrows.getTotalTimeMillis();
+
+            ExecutorService executor = Executors.newFixedThreadPool(BUILDS + 1);
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.SECONDS.toNanos(DURATION);
+            for (int i = 0; i < BUILDS; i++) {
+                int builder = i;
+                futures.add(executor.submit(() -> build(builder, deadline)));
+            }
+            if (scenario.cleanup) {
+                futures.add(executor.submit(this::cleanup));
+            }
+            for (Future<?> future : futures.subList(0, BUILDS)) {
+                future.get();
+            }
+            double elapsedSeconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+            stopped = true;
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+
+            long borrowCount = borrows.getCount() - borrowsBefore;
+            double borrowTime = borrows.getTotalTimeMillis() - borrowTimeBefore;
+            out.printf(Locale.ENGLISH, "Scenario %s: %d builds, %d artifacts, latency %d ms, jitter %d ms, cleanup %s%n",
+                    scenario.name().toLowerCase(Locale.ENGLISH), BUILDS, ARTIFACTS, scenario.latency, scenario.jitter,
+                    scenario.cleanup ? "running" : "off");
+            out.printf(Locale.ENGLISH, "  Throughput: %.1f builds/s, %.1f fingerprints/s, %d errors%n",
+                    builds.sum() / elapsedSeconds, saves.getCount() / elapsedSeconds, errors.sum());
+            print(out, "load", loads);
+            print(out, "save", saves);
+            if (scenario.cleanup) {
+                print(out, "cleanup pass", cleanups);
+                out.printf(Locale.ENGLISH, "  Cleaned up: %d of %d stale fingerprints%n",
+                        cleanedUp.sum(), STALE_FINGERPRINTS);
+            }
+            out.printf(Locale.ENGLISH, "  Pool wait: %.3f ms mean over %d borrows%n",
+                    borrowCount == 0 ? 0 : borrowTime / borrowCount, borrowCount);
+            out.println("  Redis commands:");
+            for (Map.Entry<String, Long> commands : server.getCommandCounts().entrySet()) {
+                long count = commands.getValue() - commandsBefore.getOrDefault(commands.getKey(), 0L);
+                if (count > 0) {
+                    out.printf(Locale.ENGLISH, "    %-8s %d%n", commands.getKey(), count);
+                }
+            }
+        }
+    }
+
+    private void build(int builder, long deadline) {
+        Random random = new Random(builder);
+        String job = "team-" + builder % 10 + "/service-" + builder + "/main";
+        int number = 0;
+        while (System.nanoTime() < deadline) {
+            number++;
+            for (int i = 0; i < ARTIFACTS_PER_BUILD; i++) {
+                int artifact = popularity.sample(random);
+                try {
+                    long start = System.nanoTime();
+                    Fingerprint fingerprint = storage.load(FingerprintFixtures.id(artifact));
+                    loads.record(System.nanoTime() - start);
+                    if (fingerprint == null) {
+                        fingerprint = storage.blobToFingerprint(
+                                FingerprintFixtures.xml(FingerprintFixtures.Size.EMPTY, artifact));
+                    }
+                    fingerprint.addWithoutSaving(job, number);
+                    start = System.nanoTime();
+                    storage.save(fingerprint);
+                    saves.record(System.nanoTime() - start);
+                } catch (IOException | JedisException e) {
+                    errors.increment();
+                }
+            }
+            builds.increment();
+        }
+    }
+
+    private void cleanup() {
+        while (!stopped) {
+            long start = System.nanoTime();
+            try (Stream<Fingerprint> fingerprints = storage.streamFingerprints()) {
+                Iterator<Fingerprint> iterator = fingerprints.iterator();
+                while (!stopped && iterator.hasNext()) {
+                    String id = iterator.next().getHashString();
+                    if (staleIds.contains(id)) {
+                        storage.delete(id);
+                        cleanedUp.increment();
+                    }
+                }
+                if (!stopped) {
+                    cleanups.record(System.nanoTime() - start);
+                }
+            } catch (IOException | UncheckedIOException | JedisException e) {
+                errors.increment();
+            }
+        }
+    }
+
+    private static void print(PrintStream out, String operation, LatencyHistogram latency) {
+        long count = latency.getCount();
+        out.printf(Locale.ENGLISH, "  %s: %d, mean %.3f ms, p50 %s ms, p95 %s ms, p99 %s ms%n", operation, count,
+                count == 0 ? 0 : latency.getSumMillis() / count, percentile(latency, 50),
+                percentile(latency, 95), percentile(latency, 99));
+    }
+
+    /**
+     * Returns the upper bound of the bucket of the given percentile.
+     */
+    private static String percentile(LatencyHistogram latency, double percentile) {
+        double millis = latency.getPercentileMillis(percentile);
+        double[] bounds = LatencyHistogram.BUCKET_BOUNDS_MILLIS;
+        return Double.isInfinite(millis) ? ">" + bounds[bounds.length - 1] : Double.toString(millis);
+    }
+
+}
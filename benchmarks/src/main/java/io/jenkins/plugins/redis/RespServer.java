@@ -0,0 +1,620 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process stand-in for Redis, speaking the RESP2 protocol on the loopback interface, so that the storage can be
+ * benchmarked with no network and no external Redis.
+ *
+ * Only the commands sent by the storage are supported, on strings, sets, hashes, sorted sets and lists. Like Redis, commands are executed
+ * one at a time, and transactions are queued and executed by EXEC unless a watched key was modified in the meantime.
+ *
+ * Like the latency toxic of Toxiproxy, a latency with jitter can be added before every reply is sent, and the commands
+ * received are counted by name.
+ */
+final class RespServer implements Closeable {
+
+    private static final byte[] OK = "+OK\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] QUEUED = "+QUEUED\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "$-1\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL_ARRAY = "*-1\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "RespServer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<Key, Object> data = new HashMap<>();
+    private final Map<Key, Long> modifications = new HashMap<>();
+    private long modificationCount;
+    private final Map<String, LongAdder> commandCounts = new ConcurrentHashMap<>();
+    private volatile int latency;
+    private volatile int jitter;
+
+    RespServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor.execute(this::accept);
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Delays every reply by the given latency, plus or minus a random jitter, in milliseconds.
+     */
+    void setLatency(int latency, int jitter) {
+        this.latency = latency;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Returns the number of commands received so far by command name, including the commands queued in transactions.
+     */
+    Map<String, Long> getCommandCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        commandCounts.forEach((name, count) -> counts.put(name, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             InputStream in = new BufferedInputStream(s.getInputStream());
+             OutputStream out = new BufferedOutputStream(s.getOutputStream())) {
+            List<List<byte[]>> transaction = null;
+            Map<Key, Long> watched = new HashMap<>();
+            while (true) {
+                List<byte[]> command = readCommand(in);
+                if (command == null) {
+                    return;
+                }
+                String name = new String(command.get(0), StandardCharsets.US_ASCII).toUpperCase(Locale.ENGLISH);
+                commandCounts.computeIfAbsent(name, n -> new LongAdder()).increment();
+                if (name.equals("MULTI")) {
+                    transaction = new ArrayList<>();
+                    out.write(OK);
+                } else if (name.equals("EXEC") && transaction != null) {
+                    List<Object> replies = null;
+                    synchronized (data) {
+                        if (!isModified(watched)) {
+                            replies = new ArrayList<>();
+                            for (List<byte[]> queued : transaction) {
+                                replies.add(execute(queued));
+                            }
+                        }
+                    }
+                    transaction = null;
+                    watched.clear();
+                    if (replies == null) {
+                        out.write(NULL_ARRAY);
+                    } else {
+                        writeReply(out, replies);
+                    }
+                } else if (name.equals("DISCARD") && transaction != null) {
+                    transaction = null;
+                    watched.clear();
+                    out.write(OK);
+                } else if (name.equals("WATCH") && transaction == null) {
+                    synchronized (data) {
+                        for (byte[] key : command.subList(1, command.size())) {
+                            watched.putIfAbsent(new Key(key), modifications.getOrDefault(new Key(key), 0L));
+                        }
+                    }
+                    out.write(OK);
+                } else if (name.equals("UNWATCH") && transaction == null) {
+                    watched.clear();
+                    out.write(OK);
+                } else if (transaction != null) {
+                    transaction.add(command);
+                    out.write(QUEUED);
+                } else if (name.equals("QUIT")) {
+                    out.write(OK);
+                    out.flush();
+                    return;
+                } else {
+                    Object reply;
+                    synchronized (data) {
+                        reply = execute(command);
+                    }
+                    writeReply(out, reply);
+                }
+                if (in.available() == 0) {
+                    delay();
+                    out.flush();
+                }
+            }
+        } catch (SocketException | EOFException e) {
+            // Client disconnected
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void delay() throws InterruptedException {
+        int latency = this.latency;
+        int jitter = this.jitter;
+        if (latency > 0 || jitter > 0) {
+            int delay = latency + (jitter > 0 ? ThreadLocalRandom.current().nextInt(-jitter, jitter + 1) : 0);
+            TimeUnit.MILLISECONDS.sleep(Math.max(0, delay));
+        }
+    }
+
+    private boolean isModified(Map<Key, Long> watched) {
+        for (Map.Entry<Key, Long> watchedKey : watched.entrySet()) {
+            if (!modifications.getOrDefault(watchedKey.getKey(), 0L).equals(watchedKey.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void modified(byte[] key) {
+        modifications.put(new Key(key), ++modificationCount);
+    }
+
+    private Object execute(List<byte[]> command) {
+        String name = new String(command.get(0), StandardCharsets.US_ASCII).toUpperCase(Locale.ENGLISH);
+        List<byte[]> args = command.subList(1, command.size());
+        switch (name) {
+            case "PING":
+                return new Status("PONG");
+            case "AUTH":
+            case "SELECT":
+            case "CLIENT":
+                return new Status("OK");
+            case "FLUSHDB":
+                for (Key key : data.keySet()) {
+                    modified(key.bytes);
+                }
+                data.clear();
+                return new Status("OK");
+            case "EXISTS": {
+                long count = 0;
+                for (byte[] key : args) {
+                    if (data.containsKey(new Key(key))) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+            case "DEL": {
+                long count = 0;
+                for (byte[] key : args) {
+                    if (data.remove(new Key(key)) != null) {
+                        modified(key);
+                        count++;
+                    }
+                }
+                return count;
+            }
+            case "GET":
+                return string(args.get(0));
+            case "MGET": {
+                List<Object> values = new ArrayList<>();
+                for (byte[] key : args) {
+                    values.add(string(key));
+                }
+                return values;
+            }
+            case "SET": {
+                Key key = new Key(args.get(0));
+                boolean nx = false;
+                boolean xx = false;
+                for (byte[] option : args.subList(2, args.size())) {
+                    String flag = new String(option, StandardCharsets.US_ASCII).toUpperCase(Locale.ENGLISH);
+                    nx |= flag.equals("NX");
+                    xx |= flag.equals("XX");
+                }
+                if (nx && data.containsKey(key) || xx && !data.containsKey(key)) {
+                    return null;
+                }
+                data.put(key, args.get(1));
+                modified(args.get(0));
+                return new Status("OK");
+            }
+            case "INCR": {
+                byte[] value = string(args.get(0));
+                long incremented = (value == null ? 0 : Long.parseLong(new String(value, StandardCharsets.US_ASCII)))
+                        + 1;
+                data.put(new Key(args.get(0)), Long.toString(incremented).getBytes(StandardCharsets.US_ASCII));
+                modified(args.get(0));
+                return incremented;
+            }
+            case "SADD": {
+                Set<Key> set = set(args.get(0), true);
+                long added = 0;
+                for (byte[] member : args.subList(1, args.size())) {
+                    if (set.add(new Key(member))) {
+                        added++;
+                    }
+                }
+                modified(args.get(0));
+                return added;
+            }
+            case "SREM": {
+                Set<Key> set = set(args.get(0), false);
+                long removed = 0;
+                for (byte[] member : args.subList(1, args.size())) {
+                    if (set != null && set.remove(new Key(member))) {
+                        removed++;
+                    }
+                }
+                removeIfEmpty(args.get(0), set);
+                modified(args.get(0));
+                return removed;
+            }
+            case "SCARD": {
+                Set<Key> set = set(args.get(0), false);
+                return (long) (set == null ? 0 : set.size());
+            }
+            case "SSCAN":
+                return scan(set(args.get(0), false), args);
+            case "HSET":
+            case "HSETNX": {
+                Map<Key, byte[]> hash = hash(args.get(0), true);
+                long added = 0;
+                for (int i = 1; i + 1 < args.size(); i += 2) {
+                    Key field = new Key(args.get(i));
+                    if (name.equals("HSETNX") && hash.containsKey(field)) {
+                        continue;
+                    }
+                    if (hash.put(field, args.get(i + 1)) == null) {
+                        added++;
+                    }
+                }
+                modified(args.get(0));
+                return added;
+            }
+            case "HGET": {
+                Map<Key, byte[]> hash = hash(args.get(0), false);
+                return hash == null ? null : hash.get(new Key(args.get(1)));
+            }
+            case "HMGET": {
+                Map<Key, byte[]> hash = hash(args.get(0), false);
+                List<Object> values = new ArrayList<>();
+                for (byte[] field : args.subList(1, args.size())) {
+                    values.add(hash == null ? null : hash.get(new Key(field)));
+                }
+                return values;
+            }
+            case "HDEL": {
+                Map<Key, byte[]> hash = hash(args.get(0), false);
+                long removed = 0;
+                for (byte[] field : args.subList(1, args.size())) {
+                    if (hash != null && hash.remove(new Key(field)) != null) {
+                        removed++;
+                    }
+                }
+                if (hash != null && hash.isEmpty()) {
+                    data.remove(new Key(args.get(0)));
+                }
+                modified(args.get(0));
+                return removed;
+            }
+            case "HKEYS": {
+                Map<Key, byte[]> hash = hash(args.get(0), false);
+                List<Object> fields = new ArrayList<>();
+                if (hash != null) {
+                    for (Key field : hash.keySet()) {
+                        fields.add(field.bytes);
+                    }
+                }
+                return fields;
+            }
+            case "ZADD": {
+                Map<Key, Double> sortedSet = sortedSet(args.get(0), true);
+                boolean nx = false;
+                boolean xx = false;
+                int i = 1;
+                for (; i < args.size(); i++) {
+                    String flag = new String(args.get(i), StandardCharsets.US_ASCII).toUpperCase(Locale.ENGLISH);
+                    if (flag.equals("NX")) {
+                        nx = true;
+                    } else if (flag.equals("XX")) {
+                        xx = true;
+                    } else {
+                        break;
+                    }
+                }
+                long added = 0;
+                for (; i + 1 < args.size(); i += 2) {
+                    Key member = new Key(args.get(i + 1));
+                    if (nx && sortedSet.containsKey(member) || xx && !sortedSet.containsKey(member)) {
+                        continue;
+                    }
+                    double score = Double.parseDouble(new String(args.get(i), StandardCharsets.US_ASCII));
+                    if (sortedSet.put(member, score) == null) {
+                        added++;
+                    }
+                }
+                removeIfEmpty(args.get(0), sortedSet.keySet());
+                modified(args.get(0));
+                return added;
+            }
+            case "ZREM": {
+                Map<Key, Double> sortedSet = sortedSet(args.get(0), false);
+                long removed = 0;
+                for (byte[] member : args.subList(1, args.size())) {
+                    if (sortedSet != null && sortedSet.remove(new Key(member)) != null) {
+                        removed++;
+                    }
+                }
+                removeIfEmpty(args.get(0), sortedSet == null ? null : sortedSet.keySet());
+                modified(args.get(0));
+                return removed;
+            }
+            case "RPUSH": {
+                List<byte[]> list = list(args.get(0), true);
+                list.addAll(args.subList(1, args.size()));
+                modified(args.get(0));
+                return (long) list.size();
+            }
+            case "LINDEX": {
+                List<byte[]> list = list(args.get(0), false);
+                int index = Integer.parseInt(new String(args.get(1), StandardCharsets.US_ASCII));
+                if (list != null && index < 0) {
+                    index += list.size();
+                }
+                return list == null || index < 0 || index >= list.size() ? null : list.get(index);
+            }
+            default:
+                return new Error("ERR unknown command '" + name + "'");
+        }
+    }
+
+    private byte[] string(byte[] key) {
+        Object value = data.get(new Key(key));
+        return value instanceof byte[] ? (byte[]) value : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<Key> set(byte[] key, boolean create) {
+        Object value = data.get(new Key(key));
+        if (value == null && create) {
+            value = new LinkedHashSet<Key>();
+            data.put(new Key(key), value);
+        }
+        return (Set<Key>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Key, byte[]> hash(byte[] key, boolean create) {
+        Object value = data.get(new Key(key));
+        if (value == null && create) {
+            value = new LinkedHashMap<Key, byte[]>();
+            data.put(new Key(key), value);
+        }
+        return (Map<Key, byte[]>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Key, Double> sortedSet(byte[] key, boolean create) {
+        Object value = data.get(new Key(key));
+        if (value == null && create) {
+            value = new HashMap<Key, Double>();
+            data.put(new Key(key), value);
+        }
+        return (Map<Key, Double>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<byte[]> list(byte[] key, boolean create) {
+        Object value = data.get(new Key(key));
+        if (value == null && create) {
+            value = new ArrayList<byte[]>();
+            data.put(new Key(key), value);
+        }
+        return (List<byte[]>) value;
+    }
+
+    private void removeIfEmpty(byte[] key, Set<Key> set) {
+        if (set != null && set.isEmpty()) {
+            data.remove(new Key(key));
+        }
+    }
+
+    /**
+     * Scans a snapshot of the set in insertion order, the cursor being the index of the next member.
+     */
+    private static List<Object> scan(Set<Key> set, List<byte[]> args) {
+        int cursor = Integer.parseInt(new String(args.get(1), StandardCharsets.US_ASCII));
+        int count = 10;
+        for (int i = 2; i + 1 < args.size(); i += 2) {
+            if (new String(args.get(i), StandardCharsets.US_ASCII).equalsIgnoreCase("COUNT")) {
+                count = Integer.parseInt(new String(args.get(i + 1), StandardCharsets.US_ASCII));
+            }
+        }
+        List<Key> members = set == null ? new ArrayList<>() : new ArrayList<>(set);
+        int end = Math.min(members.size(), cursor + count);
+        List<Object> page = new ArrayList<>();
+        for (Key member : members.subList(Math.min(cursor, end), end)) {
+            page.add(member.bytes);
+        }
+        String next = end >= members.size() ? "0" : Integer.toString(end);
+        return Arrays.asList(next.getBytes(StandardCharsets.US_ASCII), page);
+    }
+
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            return null;
+        }
+        if (type != '*') {
+            throw new IOException("Unsupported request type: " + (char) type);
+        }
+        int count = Integer.parseInt(readLine(in));
+        List<byte[]> command = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("Expected a bulk string");
+            }
+            int length = Integer.parseInt(readLine(in));
+            byte[] bytes = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int n = in.read(bytes, read, length - read);
+                if (n == -1) {
+                    throw new EOFException();
+                }
+                read += n;
+            }
+            in.read();
+            in.read();
+            command.add(bytes);
+        }
+        return command;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) {
+                throw new EOFException();
+            }
+            line.append((char) c);
+        }
+        in.read();
+        return line.toString();
+    }
+
+    private static void writeReply(OutputStream out, Object reply) throws IOException {
+        if (reply == null) {
+            out.write(NULL);
+        } else if (reply instanceof Status) {
+            out.write(("+" + ((Status) reply).message + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        } else if (reply instanceof Error) {
+            out.write(("-" + ((Error) reply).message + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        } else if (reply instanceof Long) {
+            out.write((":" + reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        } else if (reply instanceof byte[]) {
+            byte[] bytes = (byte[]) reply;
+            out.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(bytes);
+            out.write('\r');
+            out.write('\n');
+        } else if (reply instanceof List) {
+            List<?> replies = (List<?>) reply;
+            out.write(("*" + replies.size() + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            for (Object element : replies) {
+                writeReply(out, element);
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported reply: " + reply);
+        }
+    }
+
+    private static final class Status {
+
+        private final String message;
+
+        Status(String message) {
+            this.message = message;
+        }
+
+    }
+
+    private static final class Error {
+
+        private final String message;
+
+        Error(String message) {
+            this.message = message;
+        }
+
+    }
+
+    private static final class Key {
+
+        private final byte[] bytes;
+        private final int hashCode;
+
+        Key(byte[] bytes) {
+            this.bytes = bytes;
+            this.hashCode = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(bytes, ((Key) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import hudson.model.Fingerprint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storage operations against the in-process {@link RespServer}, which measures the client side cost of the storage:
+ * serialization, key encoding, pooling and the protocol round trips on the loopback interface.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+
+    static final int FINGERPRINTS = 1000;
+    static final int BULK_SIZE = 100;
+
+    @Param({"small", "medium"})
+    public String size;
+
+    @Param({"LEGACY", "COMPACT", "BUCKETED"})
+    public String keyScheme;
+
+    private RespServer server;
+    private RedisFingerprintStorage storage;
+    private final Fingerprint[] fingerprints = new Fingerprint[FINGERPRINTS];
+    private final List<String> ids = new ArrayList<>();
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        SplittableRandom random;
+
+        @Setup
+        public void setUp(ThreadParams threadParams) {
+            random = new SplittableRandom(threadParams.getThreadIndex());
+        }
+
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new RespServer();
+        storage = new RedisFingerprintStorage("benchmark");
+        storage.setHost("127.0.0.1");
+        storage.setPort(server.getPort());
+        storage.setKeyScheme(KeyScheme.valueOf(keyScheme));
+        for (int i = 0; i < FINGERPRINTS; i++) {
+            fingerprints[i] = storage.blobToFingerprint(
+                    FingerprintFixtures.xml(FingerprintFixtures.Size.of(size), i));
+            storage.save(fingerprints[i]);
+            ids.add(FingerprintFixtures.id(i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Benchmark
+    public void save(ThreadState state) throws IOException {
+        storage.save(fingerprints[state.random.nextInt(FINGERPRINTS)]);
+    }
+
+    @Benchmark
+    public Fingerprint load(ThreadState state) throws IOException {
+        return storage.load(ids.get(state.random.nextInt(FINGERPRINTS)));
+    }
+
+    @Benchmark
+    public List<Fingerprint> bulkLoad(ThreadState state) throws IOException {
+        int start = state.random.nextInt(FINGERPRINTS - BULK_SIZE + 1);
+        return storage.bulkLoad(ids.subList(start, start + BULK_SIZE));
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.SystemProperties;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.MultiKeyPipelineBase;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Storage of the fingerprints larger than {@link #CHUNK_SIZE} as a list of chunks, so that no single command reads or
+ * writes more than a chunk, whatever the size of the fingerprint.
+ *
+ * The {@link KeyScheme} holds a small manifest in place of the fingerprint, giving the number of chunks, the length
+ * and the checksum of the fingerprint. The chunks are held by a list keyed by the fingerprint id, whatever the key
+ * scheme, so that migrating keys only moves the manifest. The list and the manifest are written in the same
+ * transaction, but read separately. A fingerprint rewritten in between fails the checksum, and is read again.
+ */
+final class ChunkedBlobs {
+
+    static final int CHUNK_SIZE = SystemProperties.getInteger(ChunkedBlobs.class.getName() + ".chunkSize",
+            256 * 1024);
+    static final int MAX_READ_ATTEMPTS = 3;
+
+    // Never part of serialized XML, which starts with a '<'.
+    private static final byte[] MAGIC = "\0chunked:".getBytes(StandardCharsets.US_ASCII);
+
+    private ChunkedBlobs() {
+    }
+
+    static byte[] getKey(String instanceId, String id) {
+        return KeyScheme.getKey('c', instanceId, id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static boolean isManifest(@CheckForNull byte[] storedBlob) {
+        return storedBlob != null && storedBlob.length > MAGIC.length
+                && Arrays.equals(Arrays.copyOf(storedBlob, MAGIC.length), MAGIC);
+    }
+
+    static boolean isChunked(@NonNull byte[] fingerprintBlob) {
+        return fingerprintBlob.length > CHUNK_SIZE;
+    }
+
+    /**
+     * Queues the commands replacing the chunks of the given fingerprint, and returns what to store with the
+     * {@link KeyScheme}: the fingerprint itself if it is not larger than a chunk, otherwise its manifest.
+     */
+    static @NonNull byte[] queueWrite(MultiKeyPipelineBase pipeline, String instanceId, String id,
+                                      @NonNull byte[] fingerprintBlob) {
+        byte[] key = getKey(instanceId, id);
+        pipeline.del(key);
+        if (!isChunked(fingerprintBlob)) {
+            return fingerprintBlob;
+        }
+        for (int start = 0; start < fingerprintBlob.length; start += CHUNK_SIZE) {
+            pipeline.rpush(key, Arrays.copyOfRange(fingerprintBlob, start,
+                    Math.min(fingerprintBlob.length, start + CHUNK_SIZE)));
+        }
+        return getStoredBlob(fingerprintBlob);
+    }
+
+    /**
+     * Returns what is stored with the {@link KeyScheme} for the given fingerprint: the fingerprint itself if it is not
+     * larger than a chunk, otherwise its manifest.
+     */
+    static @NonNull byte[] getStoredBlob(@NonNull byte[] fingerprintBlob) {
+        if (!isChunked(fingerprintBlob)) {
+            return fingerprintBlob;
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(fingerprintBlob);
+        int chunks = (fingerprintBlob.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        return getManifest(chunks, fingerprintBlob.length, checksum.getValue());
+    }
+
+    static void queueDelete(MultiKeyPipelineBase pipeline, String instanceId, String id) {
+        pipeline.del(getKey(instanceId, id));
+    }
+
+    /**
+     * Reads the chunks of a fingerprint with a pipeline, and reassembles them. Returns null if the fingerprint was
+     * rewritten or deleted since its manifest was read.
+     */
+    static @CheckForNull byte[] read(Jedis jedis, String instanceId, String id, @NonNull byte[] manifest) {
+        String[] fields = getFields(manifest);
+        int chunks = Integer.parseInt(fields[0]);
+        int length = Integer.parseInt(fields[1]);
+        long expectedChecksum = Long.parseLong(fields[2]);
+
+        byte[] key = getKey(instanceId, id);
+        Pipeline pipeline = jedis.pipelined();
+        List<Response<byte[]>> responses = new ArrayList<>();
+        for (int i = 0; i < chunks; i++) {
+            responses.add(pipeline.lindex(key, i));
+        }
+        pipeline.sync();
+        ByteArrayOutputStream fingerprintBlob = new ByteArrayOutputStream(length);
+        CRC32 checksum = new CRC32();
+        for (Response<byte[]> response : responses) {
+            byte[] chunk = response.get();
+            if (chunk == null) {
+                return null;
+            }
+            checksum.update(chunk);
+            fingerprintBlob.write(chunk, 0, chunk.length);
+        }
+        if (fingerprintBlob.size() != length || checksum.getValue() != expectedChecksum) {
+            return null;
+        }
+        return fingerprintBlob.toByteArray();
+    }
+
+    private static String[] getFields(byte[] manifest) {
+        return new String(manifest, MAGIC.length, manifest.length - MAGIC.length, StandardCharsets.US_ASCII)
+                .split(":");
+    }
+
+    private static byte[] getManifest(int chunks, int length, long checksum) {
+        byte[] fields = (chunks + ":" + length + ":" + checksum).getBytes(StandardCharsets.US_ASCII);
+        byte[] manifest = Arrays.copyOf(MAGIC, MAGIC.length + fields.length);
+        System.arraycopy(fields, 0, manifest, MAGIC.length, fields.length);
+        return manifest;
+    }
+
+}
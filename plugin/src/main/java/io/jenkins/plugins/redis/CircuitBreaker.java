@@ -0,0 +1,174 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Count based circuit breaker guarding the calls made to Redis.
+ *
+ * The outcome of the last {@link #SLIDING_WINDOW_SIZE} calls is recorded. Once at least
+ * {@link #MINIMUM_NUMBER_OF_CALLS} calls have been recorded and the failure rate reaches the configured threshold,
+ * the breaker opens and calls are rejected without touching Redis. After the configured wait duration, a limited
+ * number of probe calls are let through. If they all succeed the breaker closes again, otherwise it re-opens.
+ */
+class CircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    static final int SLIDING_WINDOW_SIZE = 100;
+    static final int MINIMUM_NUMBER_OF_CALLS = 20;
+    static final int PERMITTED_CALLS_IN_HALF_OPEN_STATE = 3;
+
+    private final boolean enabled;
+    private final int failureRateThreshold;
+    private final long waitDurationInOpenStateNanos;
+    private final LongSupplier nanoClock;
+
+    private final boolean[] failures = new boolean[SLIDING_WINDOW_SIZE];
+    private int recordedCalls;
+    private int failedCalls;
+    private int nextIndex;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    CircuitBreaker(boolean enabled, int failureRateThreshold, long waitDurationInOpenStateMillis) {
+        this(enabled, failureRateThreshold, waitDurationInOpenStateMillis, System::nanoTime);
+    }
+
+    CircuitBreaker(boolean enabled, int failureRateThreshold, long waitDurationInOpenStateMillis,
+                   LongSupplier nanoClock) {
+        this.enabled = enabled;
+        this.failureRateThreshold = failureRateThreshold;
+        this.waitDurationInOpenStateNanos = TimeUnit.MILLISECONDS.toNanos(waitDurationInOpenStateMillis);
+        this.nanoClock = nanoClock;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Returns true if calls are currently being rejected, without consuming a permission.
+     */
+    synchronized boolean isOpen() {
+        return enabled && state == State.OPEN && nanoClock.getAsLong() - openedAt < waitDurationInOpenStateNanos;
+    }
+
+    /**
+     * Returns true if a call to Redis may be made. Every granted permission must be followed by a call to either
+     * {@link #onSuccess()} or {@link #onError()}.
+     */
+    synchronized boolean tryAcquirePermission() {
+        if (!enabled) {
+            return true;
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (nanoClock.getAsLong() - openedAt < waitDurationInOpenStateNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                halfOpenPermits = PERMITTED_CALLS_IN_HALF_OPEN_STATE - 1;
+                halfOpenSuccesses = 0;
+                return true;
+            case HALF_OPEN:
+                if (halfOpenPermits == 0) {
+                    return false;
+                }
+                halfOpenPermits--;
+                return true;
+            default:
+                throw new IllegalStateException("Unknown circuit breaker state: " + state);
+        }
+    }
+
+    synchronized void onSuccess() {
+        if (!enabled) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            halfOpenSuccesses++;
+            if (halfOpenSuccesses == PERMITTED_CALLS_IN_HALF_OPEN_STATE) {
+                transitionToClosed();
+            }
+            return;
+        }
+        record(false);
+    }
+
+    synchronized void onError() {
+        if (!enabled) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            transitionToOpen();
+            return;
+        }
+        record(true);
+        if (recordedCalls >= MINIMUM_NUMBER_OF_CALLS && failedCalls * 100 >= failureRateThreshold * recordedCalls) {
+            transitionToOpen();
+        }
+    }
+
+    private void record(boolean failure) {
+        if (recordedCalls == SLIDING_WINDOW_SIZE) {
+            if (failures[nextIndex]) {
+                failedCalls--;
+            }
+        } else {
+            recordedCalls++;
+        }
+        failures[nextIndex] = failure;
+        if (failure) {
+            failedCalls++;
+        }
+        nextIndex = (nextIndex + 1) % SLIDING_WINDOW_SIZE;
+    }
+
+    private void transitionToOpen() {
+        state = State.OPEN;
+        openedAt = nanoClock.getAsLong();
+    }
+
+    private void transitionToClosed() {
+        state = State.CLOSED;
+        recordedCalls = 0;
+        failedCalls = 0;
+        nextIndex = 0;
+    }
+
+}
@@ -0,0 +1,259 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.MultiKeyPipelineBase;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.params.SetParams;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lease held in Redis by the controller process cleaning up the fingerprints of an instance, so that processes sharing
+ * the instance identity, during a rolling restart or in an active/passive setup, do not clean up at the same time.
+ *
+ * The lease expires after {@link #TTL_SECONDS} unless renewed, which is done by a timer every third of its time to
+ * live while it is held, whatever the time spent on each fingerprint. Its value holds a
+ * fencing token, incremented by every acquisition, followed by the id of the process. Deletes made by the cleanup are
+ * only applied if Redis still holds that value, so that a process whose lease expired, for example during a long
+ * garbage collection pause, cannot delete fingerprints once another process took over.
+ *
+ * If the cleanup is shared, every process holds a lease of its own and registers in a sorted set of holders, scored by
+ * the time of their last renewal. The fingerprints are split among the live holders, ranked by id, by a hash of the
+ * fingerprint id. A holder
+ * joining or leaving during a run may leave some fingerprints to the next run, or have them checked twice.
+ */
+final class CleanupLease {
+
+    static final int TTL_SECONDS = SystemProperties.getInteger(CleanupLease.class.getName() + ".ttlSeconds", 300);
+
+    private static final Logger LOGGER = Logger.getLogger(CleanupLease.class.getName());
+
+    private static final String HOLDER_ID = UUID.randomUUID().toString();
+    private static final ThreadLocal<CleanupLease> CURRENT = new ThreadLocal<>();
+
+    private final RedisFingerprintStorage storage;
+    private final String instanceId;
+    private final boolean shared;
+    private final byte[] key;
+    private final byte[] value;
+    private final long token;
+    private volatile int holderIndex;
+    private volatile int holderCount = 1;
+    private volatile boolean lost;
+    private volatile ScheduledFuture<?> renewal;
+
+    private CleanupLease(RedisFingerprintStorage storage, String instanceId, boolean shared, long token) {
+        this.storage = storage;
+        this.instanceId = instanceId;
+        this.shared = shared;
+        this.key = getKey(instanceId, shared ? "cleanup:" + HOLDER_ID : "cleanup");
+        this.value = (token + ":" + HOLDER_ID).getBytes(StandardCharsets.UTF_8);
+        this.token = token;
+    }
+
+    static byte[] getKey(String instanceId, String name) {
+        return KeyScheme.getKey('l', instanceId, name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Acquires the cleanup lease of the given instance. Returns null if another process holds it, unless the cleanup
+     * is shared.
+     */
+    static @CheckForNull CleanupLease acquire(@NonNull RedisFingerprintStorage storage, @NonNull String instanceId,
+                                              boolean shared) throws JedisException {
+        CleanupLease acquired = JedisPoolManager.INSTANCE.withJedis(storage, jedis -> {
+            long token = jedis.incr(getKey(instanceId, "cleanup:token"));
+            CleanupLease lease = new CleanupLease(storage, instanceId, shared, token);
+            SetParams params = SetParams.setParams().px(TimeUnit.SECONDS.toMillis(TTL_SECONDS));
+            if (!"OK".equals(jedis.set(lease.key, lease.value, shared ? params : params.nx()))) {
+                return null;
+            }
+            if (shared) {
+                lease.updateHolders(jedis);
+            }
+            return lease;
+        });
+        if (acquired != null) {
+            long period = TimeUnit.SECONDS.toMillis(TTL_SECONDS) / 3;
+            acquired.renewal = Timer.get().scheduleWithFixedDelay(acquired::renew, period, period,
+                    TimeUnit.MILLISECONDS);
+        }
+        return acquired;
+    }
+
+    /**
+     * Returns the lease held by the cleanup running on the current thread, if any.
+     */
+    static @CheckForNull CleanupLease current() {
+        return CURRENT.get();
+    }
+
+    void attach() {
+        CURRENT.set(this);
+    }
+
+    long getToken() {
+        return token;
+    }
+
+    /**
+     * Returns true if the given fingerprint is to be cleaned up by this process.
+     */
+    boolean owns(@NonNull String id) {
+        return Math.floorMod(id.hashCode(), holderCount) == holderIndex;
+    }
+
+    @NonNull List<String> filter(@NonNull List<String> ids) {
+        if (holderCount == 1) {
+            return ids;
+        }
+        List<String> ownedIds = new ArrayList<>();
+        for (String id : ids) {
+            if (owns(id)) {
+                ownedIds.add(id);
+            }
+        }
+        return ownedIds;
+    }
+
+    /**
+     * Checks that the lease has not been found taken over by its renewal, without talking to Redis.
+     *
+     * @throws CleanupLeaseLostException if the lease expired and was taken over meanwhile.
+     */
+    void checkHeld() {
+        if (lost) {
+            throw new CleanupLeaseLostException(token);
+        }
+    }
+
+    /**
+     * Throws {@link CleanupLeaseLostException} unless Redis still holds the lease of this process, so that a take over
+     * is noticed before the next renewal.
+     */
+    void verify() throws JedisException {
+        checkHeld();
+        byte[] held = JedisPoolManager.INSTANCE.withJedis(storage, JedisPoolManager.Pool.BACKGROUND,
+                jedis -> jedis.get(key));
+        if (!Arrays.equals(held, value)) {
+            lost = true;
+            renewal.cancel(false);
+            throw new CleanupLeaseLostException(token);
+        }
+    }
+
+    /**
+     * Renews the lease, on the timer. Stops renewing it once it was taken over. A failed renewal is retried by the
+     * next one, and writes are fenced meanwhile anyway.
+     */
+    private void renew() {
+        try {
+            boolean renewed = JedisPoolManager.INSTANCE.withJedis(storage, JedisPoolManager.Pool.BACKGROUND, jedis -> {
+                boolean held = MutationScript.runIfDigest(jedis, this::queueGet, getDigest(),
+                        pipeline -> pipeline.pexpire(key, TimeUnit.SECONDS.toMillis(TTL_SECONDS)));
+                if (held && shared) {
+                    updateHolders(jedis);
+                }
+                return held;
+            });
+            if (!renewed) {
+                lost = true;
+                renewal.cancel(false);
+            }
+        } catch (JedisException e) {
+            LOGGER.log(Level.WARNING, "Failed to renew the cleanup lease, retrying", e);
+        }
+    }
+
+    /**
+     * Queues the read of the lease, to fence a mutation with {@link MutationScript#runIfDigest}.
+     */
+    void queueGet(MultiKeyPipelineBase pipeline) {
+        pipeline.get(key);
+    }
+
+    /**
+     * Returns the digest of the value of the lease while it is held by this process.
+     */
+    @NonNull String getDigest() {
+        return MutationScript.sha1Hex(value);
+    }
+
+    /**
+     * Releases the lease if it is still held by this process.
+     */
+    void release() {
+        CURRENT.remove();
+        renewal.cancel(false);
+        try {
+            JedisPoolManager.INSTANCE.withJedis(storage, jedis -> {
+                MutationScript.runIfDigest(jedis, this::queueGet, getDigest(), pipeline -> pipeline.del(key));
+                if (shared) {
+                    jedis.zrem(getKey(instanceId, "cleanup:holders"), HOLDER_ID.getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        } catch (JedisException e) {
+            LOGGER.log(Level.WARNING, "Failed to release the cleanup lease, it expires in " + TTL_SECONDS + " s", e);
+        }
+    }
+
+    /**
+     * Records the renewal of this holder, drops the holders which have not renewed their lease in time, and takes the
+     * share of the fingerprints given by the rank of this holder among the live ones.
+     */
+    private void updateHolders(Jedis jedis) {
+        byte[] holdersKey = getKey(instanceId, "cleanup:holders");
+        long now = System.currentTimeMillis();
+        jedis.zadd(holdersKey, now, HOLDER_ID.getBytes(StandardCharsets.UTF_8));
+        jedis.zremrangeByScore(holdersKey, Double.NEGATIVE_INFINITY, now - TimeUnit.SECONDS.toMillis(TTL_SECONDS));
+        List<String> holders = new ArrayList<>();
+        for (byte[] holder : jedis.zrange(holdersKey, 0, -1)) {
+            holders.add(new String(holder, StandardCharsets.UTF_8));
+        }
+        // Ranked by id rather than by score, which changes with every renewal.
+        Collections.sort(holders);
+        int index = holders.indexOf(HOLDER_ID);
+        if (index >= 0) {
+            holderIndex = index;
+            holderCount = holders.size();
+        }
+    }
+
+}
@@ -0,0 +1,756 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compressed, append-only archive on local disk holding the fingerprints moved out of Redis because they have not
+ * been saved for a while, see {@link RedisFingerprintStorage#archiveColdFingerprints}.
+ *
+ * Fingerprints are deflated and appended to segment files, each record forced to disk as it is written. A segment is
+ * sealed once it grows past {@link #MAX_SEGMENT_SIZE}, by writing an index file next to it, holding the MD5 digest of
+ * the id of each of its fingerprints and the location of its record, sorted by digest, so that a fingerprint is looked
+ * up in a sealed segment by a binary search of its index file. Only the fingerprints of the segment being written are
+ * indexed in memory. Each sealed segment keeps a Bloom filter of its digests in memory, of about 10 bits per
+ * fingerprint, so that looking up a fingerprint which is not archived, as done for every saved fingerprint, seldom
+ * touches the disk.
+ *
+ * Removing a fingerprint appends the digest and location of its record to the removal log of its segment. Segments
+ * whose fingerprints have all been removed are deleted. A segment left without index by a crash is read through and
+ * sealed when the archive is opened, a torn record ending it.
+ */
+final class ColdArchive {
+
+    private static final Logger LOGGER = Logger.getLogger(ColdArchive.class.getName());
+
+    static final long MAX_SEGMENT_SIZE = SystemProperties.getLong(
+            ColdArchive.class.getName() + ".maxSegmentSize", 64L * 1024 * 1024);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".archive";
+    private static final String INDEX_SUFFIX = ".index";
+    private static final String REMOVALS_SUFFIX = ".removed";
+    private static final String DIRECTORY_NAME = "redis-fingerprint-storage" + File.separator + "archive";
+    private static final int KEY_LENGTH = 16;
+    // Digest of the id, offset and length of the record.
+    private static final int INDEX_ENTRY_LENGTH = KEY_LENGTH + 8 + 4;
+    // Digest of the id and offset of the record, followed by their CRC32.
+    private static final int REMOVAL_LENGTH = KEY_LENGTH + 8 + 4;
+    private static final int BLOOM_BITS_PER_ENTRY = 10;
+    private static final int BLOOM_HASHES = 7;
+
+    private static ColdArchive instance;
+
+    /**
+     * Receives the archived fingerprints handed over by {@link #forEach}.
+     */
+    interface FingerprintConsumer {
+        void accept(@NonNull String id, @NonNull String fingerprintBlob) throws IOException;
+    }
+
+    /**
+     * Position of an archived fingerprint record in its segment, and of its entry in the index of the segment, or -1
+     * if the segment is being written.
+     */
+    private static final class Location {
+
+        final long segment;
+        final long offset;
+        final int length;
+        final int position;
+
+        Location(long segment, long offset, int length, int position) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.position = position;
+        }
+
+    }
+
+    /**
+     * Sealed segment, with the Bloom filter of the digests in its index and the positions of its removed entries.
+     */
+    private static final class Segment {
+
+        final long number;
+        final int entries;
+        final long[] bloom;
+        final BitSet removed = new BitSet();
+
+        Segment(long number, int entries) {
+            this.number = number;
+            this.entries = entries;
+            this.bloom = new long[(int) Math.max(1, ((long) entries * BLOOM_BITS_PER_ENTRY + 63) / 64)];
+        }
+
+        int getLiveCount() {
+            return entries - removed.cardinality();
+        }
+
+        void addToBloom(@NonNull byte[] key) {
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = getBloomBit(key, i);
+                bloom[bit >>> 6] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(@NonNull byte[] key) {
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = getBloomBit(key, i);
+                if ((bloom[bit >>> 6] & 1L << bit) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // The digest is uniformly distributed already, so its halves are used as the two hashes of double hashing.
+        private int getBloomBit(byte[] key, int i) {
+            ByteBuffer buffer = ByteBuffer.wrap(key);
+            return (int) Math.floorMod(buffer.getLong(0) + i * buffer.getLong(8), (long) bloom.length * 64);
+        }
+
+    }
+
+    private final File directory;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final Map<String, Location> activeLocations = new HashMap<>();
+    private FileChannel activeSegment;
+    private long activeSegmentNumber = -1;
+    private long nextSegmentNumber;
+
+    /**
+     * Returns the archive stored under {@code JENKINS_HOME}.
+     */
+    static synchronized @NonNull ColdArchive get() throws IOException {
+        File directory = new File(Jenkins.get().getRootDir(), DIRECTORY_NAME);
+        if (instance == null || !instance.directory.equals(directory)) {
+            instance = new ColdArchive(directory);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns whether the archive stored under {@code JENKINS_HOME} holds segments, without opening it.
+     */
+    static boolean exists() {
+        return !listSegments(new File(Jenkins.get().getRootDir(), DIRECTORY_NAME)).isEmpty();
+    }
+
+    ColdArchive(@NonNull File directory) throws IOException {
+        this.directory = directory;
+        open();
+    }
+
+    synchronized int size() {
+        int size = activeLocations.size();
+        for (Segment segment : segments.values()) {
+            size += segment.getLiveCount();
+        }
+        return size;
+    }
+
+    synchronized boolean contains(@NonNull String id) throws IOException {
+        return find(id, getKey(id)) != null;
+    }
+
+    /**
+     * Returns the archived serialized fingerprint with the given id, or null if it is not archived. The record is
+     * read without holding the archive, as records are never modified.
+     */
+    @CheckForNull String get(@NonNull String id) throws IOException {
+        Location location;
+        synchronized (this) {
+            location = find(id, getKey(id));
+        }
+        if (location == null) {
+            return null;
+        }
+        String[] record;
+        try {
+            record = readRecord(location);
+        } catch (NoSuchFileException e) {
+            // The segment was deleted meanwhile, once all its fingerprints were removed.
+            return null;
+        }
+        if (!id.equals(record[0])) {
+            throw new IOException("Archived fingerprint " + id + " is corrupted");
+        }
+        return record[1];
+    }
+
+    /**
+     * Hands over the archived fingerprints, one segment at a time, without holding the archive while they are read,
+     * so that they can be removed as they are handed over. Fingerprints archived meanwhile may not be handed over.
+     */
+    void forEach(@NonNull FingerprintConsumer consumer) throws IOException {
+        List<Long> segmentNumbers;
+        synchronized (this) {
+            segmentNumbers = new ArrayList<>(segments.keySet());
+            if (activeSegmentNumber >= 0) {
+                segmentNumbers.add(activeSegmentNumber);
+            }
+        }
+        for (long segmentNumber : segmentNumbers) {
+            List<Location> locations;
+            synchronized (this) {
+                locations = getLiveLocations(segmentNumber);
+            }
+            try {
+                for (Location location : locations) {
+                    String[] record = readRecord(location);
+                    consumer.accept(record[0], record[1]);
+                }
+            } catch (NoSuchFileException e) {
+                LOGGER.log(Level.FINE, "Archive segment deleted while reading it", e);
+            }
+        }
+    }
+
+    /**
+     * Archives the given serialized fingerprint, replacing any archived one with the same id.
+     */
+    synchronized void put(@NonNull String id, @NonNull String fingerprintBlob) throws IOException {
+        if (activeSegment == null) {
+            Files.createDirectories(directory.toPath());
+            activeSegmentNumber = nextSegmentNumber++;
+            activeSegment = FileChannel.open(getFile(activeSegmentNumber, SEGMENT_SUFFIX).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        ByteBuffer record = encodeRecord(id, deflate(fingerprintBlob.getBytes(StandardCharsets.UTF_8)));
+        long offset = activeSegment.size();
+        int length = record.remaining();
+        while (record.hasRemaining()) {
+            activeSegment.write(record);
+        }
+        activeSegment.force(false);
+        // A record superseded in the segment being written is also superseded when the segment is read through.
+        activeLocations.put(id, new Location(activeSegmentNumber, offset, length, -1));
+        removeSealed(getKey(id));
+        if (activeSegment.size() >= MAX_SEGMENT_SIZE) {
+            seal();
+        }
+    }
+
+    /**
+     * Removes the fingerprint with the given id from the archive, if archived.
+     */
+    synchronized void remove(@NonNull String id) throws IOException {
+        byte[] key = getKey(id);
+        Location location = activeLocations.remove(id);
+        if (location != null) {
+            appendRemoval(activeSegmentNumber, key, location.offset);
+        }
+        removeSealed(key);
+    }
+
+    synchronized void close() throws IOException {
+        seal();
+    }
+
+    /**
+     * Returns the location of the fingerprint with the given id and digest, looked up from the most recent segment.
+     */
+    private @CheckForNull Location find(@NonNull String id, @NonNull byte[] key) throws IOException {
+        Location location = activeLocations.get(id);
+        if (location != null) {
+            return location;
+        }
+        for (Segment segment : segments.descendingMap().values()) {
+            if (segment.mightContain(key)) {
+                location = lookup(segment, key);
+                if (location != null) {
+                    return location;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the fingerprint with the given digest from the sealed segments, deleting those left empty.
+     */
+    private void removeSealed(@NonNull byte[] key) throws IOException {
+        Iterator<Segment> iterator = segments.values().iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            Location location = segment.mightContain(key) ? lookup(segment, key) : null;
+            if (location == null) {
+                continue;
+            }
+            appendRemoval(segment.number, key, location.offset);
+            segment.removed.set(location.position);
+            if (segment.getLiveCount() == 0) {
+                iterator.remove();
+                deleteSegment(segment.number);
+            }
+        }
+    }
+
+    /**
+     * Binary searches the index of the given segment for the given digest, and returns its location unless removed.
+     */
+    private @CheckForNull Location lookup(@NonNull Segment segment, @NonNull byte[] key) throws IOException {
+        try (FileChannel index = FileChannel.open(getFile(segment.number, INDEX_SUFFIX).toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_LENGTH);
+            int low = 0;
+            int high = segment.entries - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                entry.clear();
+                readFully(index, entry, (long) middle * INDEX_ENTRY_LENGTH);
+                int comparison = compare(entry.array(), key);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else if (segment.removed.get(middle)) {
+                    return null;
+                } else {
+                    return new Location(segment.number, entry.getLong(KEY_LENGTH), entry.getInt(KEY_LENGTH + 8),
+                            middle);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the locations of the fingerprints of the given segment which have not been removed.
+     */
+    private @NonNull List<Location> getLiveLocations(long segmentNumber) throws IOException {
+        Segment segment = segments.get(segmentNumber);
+        if (segment == null) {
+            return segmentNumber == activeSegmentNumber ? new ArrayList<>(activeLocations.values())
+                    : Collections.emptyList();
+        }
+        List<Location> locations = new ArrayList<>();
+        try (DataInputStream index = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(getFile(segmentNumber, INDEX_SUFFIX).toPath())))) {
+            byte[] key = new byte[KEY_LENGTH];
+            for (int position = 0; position < segment.entries; position++) {
+                index.readFully(key);
+                long offset = index.readLong();
+                int length = index.readInt();
+                if (!segment.removed.get(position)) {
+                    locations.add(new Location(segmentNumber, offset, length, position));
+                }
+            }
+        }
+        return locations;
+    }
+
+    private void seal() throws IOException {
+        if (activeSegment == null) {
+            return;
+        }
+        activeSegment.close();
+        activeSegment = null;
+        long segmentNumber = activeSegmentNumber;
+        activeSegmentNumber = -1;
+        Map<String, Location> locations = new HashMap<>(activeLocations);
+        activeLocations.clear();
+        seal(segmentNumber, locations);
+    }
+
+    /**
+     * Writes the index of the given segment, holding the given locations, which supersedes its removal log. Deletes
+     * the segment instead if there are none.
+     */
+    private void seal(long segmentNumber, @NonNull Map<String, Location> locations) throws IOException {
+        if (locations.isEmpty()) {
+            deleteSegment(segmentNumber);
+            return;
+        }
+        List<byte[]> entries = new ArrayList<>();
+        for (Map.Entry<String, Location> location : locations.entrySet()) {
+            entries.add(ByteBuffer.allocate(INDEX_ENTRY_LENGTH)
+                    .put(getKey(location.getKey()))
+                    .putLong(location.getValue().offset)
+                    .putInt(location.getValue().length)
+                    .array());
+        }
+        entries.sort(ColdArchive::compare);
+        ByteBuffer buffer = ByteBuffer.allocate(entries.size() * INDEX_ENTRY_LENGTH);
+        Segment segment = new Segment(segmentNumber, entries.size());
+        for (byte[] entry : entries) {
+            buffer.put(entry);
+            segment.addToBloom(entry);
+        }
+        buffer.flip();
+        File indexFile = getFile(segmentNumber, INDEX_SUFFIX);
+        File newIndexFile = new File(directory, indexFile.getName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(newIndexFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(newIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(getFile(segmentNumber, REMOVALS_SUFFIX).toPath());
+        segments.put(segmentNumber, segment);
+    }
+
+    private void deleteSegment(long segmentNumber) throws IOException {
+        // The records go first, so that a crash cannot leave them without the index and removals superseding them.
+        Files.deleteIfExists(getFile(segmentNumber, SEGMENT_SUFFIX).toPath());
+        Files.deleteIfExists(getFile(segmentNumber, INDEX_SUFFIX).toPath());
+        Files.deleteIfExists(getFile(segmentNumber, REMOVALS_SUFFIX).toPath());
+    }
+
+    private void appendRemoval(long segmentNumber, @NonNull byte[] key, long offset) throws IOException {
+        ByteBuffer removal = ByteBuffer.allocate(REMOVAL_LENGTH);
+        removal.put(key);
+        removal.putLong(offset);
+        CRC32 crc = new CRC32();
+        crc.update(removal.array(), 0, KEY_LENGTH + 8);
+        removal.putInt((int) crc.getValue());
+        removal.flip();
+        try (FileChannel channel = FileChannel.open(getFile(segmentNumber, REMOVALS_SUFFIX).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (removal.hasRemaining()) {
+                channel.write(removal);
+            }
+            channel.force(false);
+        }
+    }
+
+    private synchronized void open() throws IOException {
+        long maxSegmentNumber = -1;
+        Set<Long> segmentNumbers = new HashSet<>();
+        for (File segmentFile : listSegments(directory)) {
+            long segmentNumber;
+            try {
+                segmentNumber = getSegmentNumber(segmentFile.getName(), SEGMENT_SUFFIX);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            maxSegmentNumber = Math.max(maxSegmentNumber, segmentNumber);
+            segmentNumbers.add(segmentNumber);
+            File indexFile = getFile(segmentNumber, INDEX_SUFFIX);
+            if (!indexFile.exists()) {
+                seal(segmentNumber, readThrough(segmentFile, segmentNumber));
+                continue;
+            }
+            Segment segment = readIndex(segmentNumber, indexFile);
+            if (segment.getLiveCount() == 0) {
+                deleteSegment(segmentNumber);
+            } else {
+                segments.put(segmentNumber, segment);
+            }
+        }
+        nextSegmentNumber = maxSegmentNumber + 1;
+        // Indexes and removal logs left behind by a crash while deleting their segment.
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX)
+                && !name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                String suffix = name.endsWith(INDEX_SUFFIX) ? INDEX_SUFFIX
+                        : name.endsWith(REMOVALS_SUFFIX) ? REMOVALS_SUFFIX : null;
+                try {
+                    if (suffix == null || !segmentNumbers.contains(getSegmentNumber(name, suffix))) {
+                        Files.delete(file.toPath());
+                    }
+                } catch (NumberFormatException e) {
+                    LOGGER.log(Level.FINE, "Not an archive file: " + file, e);
+                }
+            }
+        }
+        if (!segments.isEmpty()) {
+            LOGGER.log(Level.FINE, "Opened {0} archived fingerprints from {1}", new Object[] {size(), directory});
+        }
+    }
+
+    /**
+     * Reads the index of a sealed segment into its Bloom filter, and applies its removal log.
+     */
+    private @NonNull Segment readIndex(long segmentNumber, @NonNull File indexFile) throws IOException {
+        long length = indexFile.length();
+        if (length % INDEX_ENTRY_LENGTH != 0) {
+            throw new IOException("Fingerprint archive index " + indexFile + " is corrupted");
+        }
+        Segment segment = new Segment(segmentNumber, (int) (length / INDEX_ENTRY_LENGTH));
+        try (DataInputStream index = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(indexFile.toPath())))) {
+            byte[] entry = new byte[INDEX_ENTRY_LENGTH];
+            for (int position = 0; position < segment.entries; position++) {
+                index.readFully(entry);
+                segment.addToBloom(entry);
+            }
+        }
+        for (ByteBuffer removal : readRemovals(segmentNumber)) {
+            byte[] key = Arrays.copyOf(removal.array(), KEY_LENGTH);
+            Location location = lookup(segment, key);
+            if (location != null && location.offset == removal.getLong(KEY_LENGTH)) {
+                segment.removed.set(location.position);
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * Reads through a segment left without index by a crash, and returns the latest location of each fingerprint it
+     * holds which has not been removed since. A torn or corrupted record, as left by a crash in the middle of a write,
+     * ends the segment and is truncated away.
+     */
+    private @NonNull Map<String, Location> readThrough(@NonNull File segmentFile, long segmentNumber)
+            throws IOException {
+        Map<String, Location> locations = new HashMap<>();
+        long validLength = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(segmentFile.toPath()));
+             DataInputStream data = new DataInputStream(in)) {
+            while (true) {
+                int payloadLength;
+                try {
+                    payloadLength = data.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (payloadLength < 4 || payloadLength > segmentFile.length()) {
+                    break;
+                }
+                byte[] payload = new byte[payloadLength];
+                int storedCrc;
+                try {
+                    data.readFully(payload);
+                    storedCrc = data.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                int idLength = ByteBuffer.wrap(payload).getInt();
+                if ((int) crc.getValue() != storedCrc || idLength < 0 || idLength > payloadLength - 4) {
+                    break;
+                }
+                int length = 4 + payloadLength + 4;
+                locations.put(new String(payload, 4, idLength, StandardCharsets.UTF_8),
+                        new Location(segmentNumber, validLength, length, -1));
+                validLength += length;
+            }
+        }
+        if (validLength < segmentFile.length()) {
+            LOGGER.log(Level.WARNING, "Truncating corrupted tail of fingerprint archive segment {0}", segmentFile);
+            try (FileChannel channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+        Set<ByteBuffer> removals = new HashSet<>(readRemovals(segmentNumber));
+        locations.entrySet().removeIf(location -> removals.contains(ByteBuffer.allocate(KEY_LENGTH + 8)
+                .put(getKey(location.getKey()))
+                .putLong(location.getValue().offset)
+                .flip()));
+        return locations;
+    }
+
+    /**
+     * Returns the digest and offset of the records removed from the given segment. A torn or corrupted entry ends the
+     * removal log and is truncated away.
+     */
+    private @NonNull List<ByteBuffer> readRemovals(long segmentNumber) throws IOException {
+        File removalsFile = getFile(segmentNumber, REMOVALS_SUFFIX);
+        if (!removalsFile.exists()) {
+            return Collections.emptyList();
+        }
+        byte[] bytes = Files.readAllBytes(removalsFile.toPath());
+        List<ByteBuffer> removals = new ArrayList<>();
+        int validLength = 0;
+        while (validLength + REMOVAL_LENGTH <= bytes.length) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes, validLength, KEY_LENGTH + 8);
+            if ((int) crc.getValue() != ByteBuffer.wrap(bytes).getInt(validLength + KEY_LENGTH + 8)) {
+                break;
+            }
+            removals.add(ByteBuffer.wrap(Arrays.copyOfRange(bytes, validLength, validLength + KEY_LENGTH + 8)));
+            validLength += REMOVAL_LENGTH;
+        }
+        if (validLength < bytes.length) {
+            LOGGER.log(Level.WARNING, "Truncating corrupted tail of fingerprint archive removals {0}", removalsFile);
+            try (FileChannel channel = FileChannel.open(removalsFile.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+        return removals;
+    }
+
+    /**
+     * Reads the record at the given location, and returns the fingerprint id and the serialized fingerprint it holds.
+     */
+    private @NonNull String[] readRecord(@NonNull Location location) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(location.length);
+        try (FileChannel channel = FileChannel.open(getFile(location.segment, SEGMENT_SUFFIX).toPath(),
+                StandardOpenOption.READ)) {
+            readFully(channel, record, location.offset);
+        }
+        int payloadLength = record.getInt(0);
+        if (payloadLength != location.length - 8) {
+            throw new IOException("Archived fingerprint record is corrupted");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, payloadLength);
+        if ((int) crc.getValue() != record.getInt(4 + payloadLength)) {
+            throw new IOException("Archived fingerprint record is corrupted");
+        }
+        int idLength = record.getInt(4);
+        String id = new String(record.array(), 8, idLength, StandardCharsets.UTF_8);
+        return new String[] {id, new String(inflate(record.array(), 8 + idLength, payloadLength - 4 - idLength),
+                StandardCharsets.UTF_8)};
+    }
+
+    private static void readFully(@NonNull FileChannel channel, @NonNull ByteBuffer buffer, long position)
+            throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new EOFException("Fingerprint archive file is truncated");
+            }
+        }
+    }
+
+    private @NonNull File getFile(long segmentNumber, @NonNull String suffix) {
+        return new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, segmentNumber, suffix));
+    }
+
+    private static long getSegmentNumber(@NonNull String name, @NonNull String suffix) {
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - suffix.length()));
+    }
+
+    private static @NonNull List<File> listSegments(@NonNull File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX)
+                && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /**
+     * Returns the MD5 digest of the given fingerprint id, by which it is indexed.
+     */
+    private static @NonNull byte[] getKey(@NonNull String id) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(id.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Compares the digests starting the given arrays as unsigned bytes.
+     */
+    private static int compare(@NonNull byte[] a, @NonNull byte[] b) {
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            int comparison = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Layout of a segment record: payload length, payload, CRC32 of the payload. The payload holds the fingerprint
+     * id and the deflated serialized fingerprint.
+     */
+    private static @NonNull ByteBuffer encodeRecord(@NonNull String id, @NonNull byte[] deflatedBlob) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        int payloadLength = 4 + idBytes.length + deflatedBlob.length;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + payloadLength + 4);
+        buffer.putInt(payloadLength);
+        buffer.putInt(idBytes.length);
+        buffer.put(idBytes);
+        buffer.put(deflatedBlob);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 4, payloadLength);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    private static @NonNull byte[] deflate(@NonNull byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static @NonNull byte[] inflate(@NonNull byte[] bytes, int offset, int length) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream inflater = new InflaterInputStream(new ByteArrayInputStream(bytes, offset, length))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inflater.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -59,6 +59,9 @@ public class CredentialHelper {
     }
 
     static @CheckForNull StandardUsernamePasswordCredentials getCredential(String id) {
+        if (id == null || id.isEmpty()) {
+            return null;
+        }
         List<StandardUsernamePasswordCredentials> credentials = CredentialsProvider.lookupCredentials(
                 StandardUsernamePasswordCredentials.class, Jenkins.get(), ACL.SYSTEM, Collections.emptyList());
         CredentialsMatcher matcher = CredentialsMatchers.withId(id);
@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.ReaderWrapper;
+import com.thoughtworks.xstream.io.WriterWrapper;
+import com.thoughtworks.xstream.io.xml.CompactWriter;
+import com.thoughtworks.xstream.io.xml.StaxDriver;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Fingerprint;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Serializes fingerprints without indentation, with the job names of the original build and of the usages replaced
+ * by their id in the {@link JobNameDictionary}. Encoded blobs start with {@link #FORMAT}, while plain XML blobs start
+ * with {@code <}.
+ */
+final class DictionaryCodec {
+
+    static final char FORMAT = 'D';
+
+    private static final List<List<String>> JOB_NAME_PATHS = Arrays.asList(
+            Arrays.asList("fingerprint", "original", "name"),
+            Arrays.asList("fingerprint", "usages", "entry", "string"));
+
+    private DictionaryCodec() {
+    }
+
+    static boolean isEncoded(@NonNull String blob) {
+        return !blob.isEmpty() && blob.charAt(0) == FORMAT;
+    }
+
+    static @NonNull String encode(RedisFingerprintStorage redisFingerprintStorage, @NonNull Fingerprint fp)
+            throws JedisException {
+        StringWriter writer = new StringWriter();
+        writer.write(FORMAT);
+        HierarchicalStreamWriter wrapper = new WriterWrapper(new CompactWriter(writer)) {
+            private final Deque<String> path = new ArrayDeque<>();
+
+            @Override
+            public void startNode(String name) {
+                path.addLast(name);
+                super.startNode(name);
+            }
+
+            @Override
+            public void setValue(String text) {
+                super.setValue(isJobNamePath(path)
+                        ? JobNameDictionary.INSTANCE.intern(redisFingerprintStorage, text) : text);
+            }
+
+            @Override
+            public void endNode() {
+                path.removeLast();
+                super.endNode();
+            }
+        };
+        try {
+            Fingerprint.getXStream().marshal(fp, wrapper);
+        } catch (RuntimeException e) {
+            throw unwrap(e);
+        }
+        return writer.toString();
+    }
+
+    static @NonNull Object decode(RedisFingerprintStorage redisFingerprintStorage, @NonNull String blob)
+            throws JedisException {
+        HierarchicalStreamReader reader = new StaxDriver().createReader(new StringReader(blob.substring(1)));
+        HierarchicalStreamReader wrapper = new ReaderWrapper(reader) {
+            private final Deque<String> path = new ArrayDeque<>();
+
+            {
+                path.addLast(reader.getNodeName());
+            }
+
+            @Override
+            public void moveDown() {
+                super.moveDown();
+                path.addLast(super.getNodeName());
+            }
+
+            @Override
+            public void moveUp() {
+                path.removeLast();
+                super.moveUp();
+            }
+
+            @Override
+            public String getValue() {
+                String value = super.getValue();
+                return isJobNamePath(path) ? JobNameDictionary.INSTANCE.lookup(redisFingerprintStorage, value) : value;
+            }
+        };
+        try {
+            return Fingerprint.getXStream().unmarshal(wrapper);
+        } catch (RuntimeException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * XStream wraps the exceptions thrown while converting. Failures to reach the dictionary are unwrapped, so that
+     * they are reported as such rather than as malformed fingerprints.
+     */
+    private static RuntimeException unwrap(RuntimeException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof JedisException) {
+                return (JedisException) cause;
+            }
+        }
+        return e;
+    }
+
+    private static boolean isJobNamePath(Deque<String> path) {
+        for (List<String> jobNamePath : JOB_NAME_PATHS) {
+            if (path.size() == jobNamePath.size()) {
+                Iterator<String> names = path.iterator();
+                Iterator<String> jobNameNames = jobNamePath.iterator();
+                boolean matches = true;
+                while (matches && names.hasNext()) {
+                    matches = names.next().equals(jobNameNames.next());
+                }
+                if (matches) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+}
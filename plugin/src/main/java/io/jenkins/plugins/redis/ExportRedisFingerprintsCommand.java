@@ -0,0 +1,56 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import hudson.Extension;
+import hudson.cli.CLICommand;
+import jenkins.fingerprints.FingerprintStorage;
+import jenkins.model.Jenkins;
+
+/**
+ * Writes a {@link FingerprintArchive} of all fingerprints stored in Redis to the standard output.
+ */
+@Extension
+public class ExportRedisFingerprintsCommand extends CLICommand {
+
+    @Override
+    public String getShortDescription() {
+        return "Exports all fingerprints stored in Redis as a compressed archive to the standard output.";
+    }
+
+    @Override
+    protected int run() throws Exception {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        FingerprintStorage fingerprintStorage = FingerprintStorage.get();
+        if (!(fingerprintStorage instanceof RedisFingerprintStorage)) {
+            stderr.println("Redis is not the configured fingerprint storage.");
+            return 1;
+        }
+        long exported = FingerprintArchive.export((RedisFingerprintStorage) fingerprintStorage, stdout);
+        stdout.flush();
+        stderr.println("Exported " + exported + " fingerprints");
+        return 0;
+    }
+
+}
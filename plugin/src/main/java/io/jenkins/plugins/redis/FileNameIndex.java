@@ -0,0 +1,195 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.MultiKeyPipelineBase;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Secondary index of the fingerprints of an instance by file name, whatever the {@link KeyScheme}.
+ *
+ * The index is a sorted set whose members all have the same score, so that they are sorted lexicographically and
+ * a prefix lookup is a ZRANGEBYLEX, which takes milliseconds whatever the number of fingerprints. Each member is the
+ * normalized file name, a zero byte and the fingerprint id. File names with a directory are also indexed by their
+ * base name.
+ *
+ * The file name of each fingerprint is also kept in a hash by fingerprint id, empty if it has none, so that the index
+ * entries of a fingerprint can be removed without reading it.
+ */
+final class FileNameIndex {
+
+    private static final Pattern FILE_NAME = Pattern.compile("<fileName>([^<]*)</fileName>");
+    private static final Pattern CHARACTER_REFERENCE = Pattern.compile("&(#x[0-9a-fA-F]+|#[0-9]+|[a-z]+);");
+    private static final byte SEPARATOR = 0;
+    // Never part of UTF-8, so it sorts after any member starting with the prefix.
+    private static final byte MAX_BYTE = (byte) 0xff;
+
+    private FileNameIndex() {
+    }
+
+    static byte[] getKey(String instanceId) {
+        return KeyScheme.getKey('n', instanceId, new byte[0]);
+    }
+
+    static byte[] getFileNamesKey(String instanceId) {
+        return KeyScheme.getKey('m', instanceId, new byte[0]);
+    }
+
+    static @NonNull String normalize(@NonNull String fileName) {
+        return fileName.trim().replace('\\', '/').replace("\0", "").toLowerCase(Locale.ENGLISH);
+    }
+
+    static void queueAdd(MultiKeyPipelineBase pipeline, String instanceId, @CheckForNull String fileName, String id) {
+        pipeline.hset(getFileNamesKey(instanceId), id.getBytes(StandardCharsets.UTF_8),
+                (fileName == null ? "" : fileName).getBytes(StandardCharsets.UTF_8));
+        if (fileName == null) {
+            return;
+        }
+        byte[] key = getKey(instanceId);
+        for (byte[] member : getMembers(fileName, id)) {
+            pipeline.zadd(key, 0, member);
+        }
+    }
+
+    static void queueRemove(MultiKeyPipelineBase pipeline, String instanceId, @CheckForNull String fileName,
+                            String id) {
+        pipeline.hdel(getFileNamesKey(instanceId), id.getBytes(StandardCharsets.UTF_8));
+        if (fileName == null || fileName.isEmpty()) {
+            return;
+        }
+        List<byte[]> members = getMembers(fileName, id);
+        pipeline.zrem(getKey(instanceId), members.toArray(new byte[members.size()][]));
+    }
+
+    /**
+     * Returns the file names indexing the fingerprints whose file name, or base name, starts with the given prefix,
+     * mapped to the ids of these fingerprints, up to the given number of index entries.
+     */
+    static @NonNull Map<String, String> search(Jedis jedis, String instanceId, @NonNull String prefix, int limit) {
+        byte[] min = ("[" + normalize(prefix)).getBytes(StandardCharsets.UTF_8);
+        byte[] max = Arrays.copyOf(min, min.length + 1);
+        max[min.length] = MAX_BYTE;
+        Map<String, String> fileNamesById = new LinkedHashMap<>();
+        for (byte[] member : jedis.zrangeByLex(getKey(instanceId), min, max, 0, limit)) {
+            int separator = lastIndexOf(member, SEPARATOR);
+            if (separator < 0) {
+                continue;
+            }
+            String id = new String(member, separator + 1, member.length - separator - 1, StandardCharsets.UTF_8);
+            fileNamesById.putIfAbsent(id, new String(member, 0, separator, StandardCharsets.UTF_8));
+        }
+        return fileNamesById;
+    }
+
+    /**
+     * Returns the file name kept for the given fingerprint, empty if it has none, or null if none was kept, as for
+     * fingerprints saved before file names were kept.
+     */
+    static @CheckForNull String getFileName(Jedis jedis, String instanceId, String id) {
+        byte[] fileName = jedis.hget(getFileNamesKey(instanceId), id.getBytes(StandardCharsets.UTF_8));
+        return fileName == null ? null : new String(fileName, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Extracts the file name of a fingerprint from its serialized form, in plain XML or {@link DictionaryCodec}
+     * encoded, without deserializing it.
+     */
+    static @CheckForNull String getFileName(@NonNull String fingerprintBlob) {
+        Matcher matcher = FILE_NAME.matcher(fingerprintBlob);
+        return matcher.find() ? unescape(matcher.group(1)) : null;
+    }
+
+    private static List<byte[]> getMembers(String fileName, String id) {
+        String normalized = normalize(fileName);
+        List<byte[]> members = new ArrayList<>();
+        members.add(getMember(normalized, id));
+        int slash = normalized.lastIndexOf('/');
+        if (slash >= 0 && slash < normalized.length() - 1) {
+            members.add(getMember(normalized.substring(slash + 1), id));
+        }
+        return members;
+    }
+
+    private static byte[] getMember(String normalizedFileName, String id) {
+        return (normalizedFileName + (char) SEPARATOR + id).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int lastIndexOf(byte[] bytes, byte b) {
+        for (int i = bytes.length - 1; i >= 0; i--) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String unescape(String text) {
+        if (text.indexOf('&') < 0) {
+            return text;
+        }
+        Matcher matcher = CHARACTER_REFERENCE.matcher(text);
+        StringBuffer unescaped = new StringBuffer();
+        while (matcher.find()) {
+            String reference = matcher.group(1);
+            String replacement;
+            if (reference.startsWith("#")) {
+                try {
+                    int codePoint = reference.startsWith("#x") ? Integer.parseInt(reference.substring(2), 16)
+                            : Integer.parseInt(reference.substring(1));
+                    replacement = new String(Character.toChars(codePoint));
+                } catch (IllegalArgumentException e) {
+                    replacement = matcher.group();
+                }
+            } else if (reference.equals("lt")) {
+                replacement = "<";
+            } else if (reference.equals("gt")) {
+                replacement = ">";
+            } else if (reference.equals("amp")) {
+                replacement = "&";
+            } else if (reference.equals("quot")) {
+                replacement = "\"";
+            } else if (reference.equals("apos")) {
+                replacement = "'";
+            } else {
+                replacement = matcher.group();
+            }
+            matcher.appendReplacement(unescaped, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(unescaped);
+        return unescaped.toString();
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams all fingerprints of this instance, including those moved to its {@link ColdArchive}, to and from a
+ * compressed archive. Restored fingerprints are all saved to Redis.
+ *
+ * The archive is a GZIP stream holding {@link #MAGIC}, the {@link #VERSION}, then one record per fingerprint made of
+ * the length prefixed UTF-8 id and the length prefixed UTF-8 XML blob, and finally a zero length marking the end.
+ * Fingerprints are exported page by page while the next pages are prefetched, and restored in batches of
+ * {@link #BATCH_SIZE}, so memory use does not depend on the number of stored fingerprints. Blobs are always archived
+ * as plain XML, so an archive can be restored into an instance with a different key scheme, dictionary or instance id.
+ */
+final class FingerprintArchive {
+
+    static final int BATCH_SIZE = 100;
+
+    private static final byte[] MAGIC = "JRFA".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+
+    private FingerprintArchive() {
+    }
+
+    /**
+     * Writes all stored fingerprints to the given stream, which is left open.
+     *
+     * @return the number of fingerprints exported.
+     */
+    static long export(@NonNull RedisFingerprintStorage storage, @NonNull OutputStream out)
+            throws IOException, JedisException {
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(gzip));
+        data.write(MAGIC);
+        data.writeInt(VERSION);
+        // Archived fingerprints go first, so that the copy of a fingerprint loaded back into Redis meanwhile is
+        // restored over the archived one.
+        AtomicLong archived = new AtomicLong();
+        storage.exportArchivedFingerprintBlobs((id, fingerprintBlob) -> {
+            writeRecord(data, id);
+            writeRecord(data, fingerprintBlob);
+            archived.incrementAndGet();
+        });
+        long exported = archived.get();
+        try (FingerprintPageIterator<String> pages = new FingerprintPageIterator<>(storage,
+                storage::exportFingerprintBlobs)) {
+            while (pages.hasNext()) {
+                FingerprintPageIterator.Page<String> page = pages.next();
+                for (int i = 0; i < page.getIds().size(); i++) {
+                    // Missing blobs were deleted since the scan, or were migrated and are exported with the current
+                    // key scheme.
+                    String fingerprintBlob = page.getValues().get(i);
+                    if (fingerprintBlob != null) {
+                        writeRecord(data, page.getIds().get(i));
+                        writeRecord(data, fingerprintBlob);
+                        exported++;
+                    }
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        data.writeInt(0);
+        data.flush();
+        gzip.finish();
+        return exported;
+    }
+
+    /**
+     * Saves all fingerprints of the archive read from the given stream, overwriting the ones already stored.
+     *
+     * @return the number of fingerprints restored.
+     */
+    static long restore(@NonNull RedisFingerprintStorage storage, @NonNull InputStream in)
+            throws IOException, JedisException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)));
+        byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a fingerprint archive");
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported fingerprint archive version: " + version);
+        }
+        long restored = 0;
+        List<String> ids = new ArrayList<>();
+        List<String> fingerprintBlobs = new ArrayList<>();
+        String id;
+        while ((id = readRecord(data)) != null) {
+            if (!id.matches("[0-9a-f]{32}")) {
+                throw new IOException("Corrupted fingerprint archive, invalid fingerprint id: " + id);
+            }
+            String fingerprintBlob = readRecord(data);
+            if (fingerprintBlob == null) {
+                throw new IOException("Truncated fingerprint archive");
+            }
+            ids.add(id);
+            fingerprintBlobs.add(fingerprintBlob);
+            if (ids.size() == BATCH_SIZE) {
+                storage.restoreFingerprintBlobs(ids, fingerprintBlobs);
+                restored += ids.size();
+                ids.clear();
+                fingerprintBlobs.clear();
+            }
+        }
+        if (!ids.isEmpty()) {
+            storage.restoreFingerprintBlobs(ids, fingerprintBlobs);
+            restored += ids.size();
+        }
+        return restored;
+    }
+
+    private static void writeRecord(DataOutputStream data, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readRecord(DataInputStream data) throws IOException {
+        int length;
+        try {
+            length = data.readInt();
+        } catch (EOFException e) {
+            throw new IOException("Truncated fingerprint archive", e);
+        }
+        if (length == 0) {
+            return null;
+        }
+        if (length < 0 || length > MAX_RECORD_LENGTH) {
+            throw new IOException("Corrupted fingerprint archive, invalid record length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        try {
+            data.readFully(bytes);
+        } catch (EOFException e) {
+            throw new IOException("Truncated fingerprint archive", e);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
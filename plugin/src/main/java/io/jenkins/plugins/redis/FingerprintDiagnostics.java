@@ -0,0 +1,276 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.Fingerprint;
+import jenkins.fingerprints.FingerprintStorage;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Singleton estimating the size distribution of the stored fingerprints, the largest ones and the jobs using the most
+ * of them, from a random sample, and recording the estimated size of the store over time.
+ *
+ * Sampling is meant to be safe on a production keyspace: fingerprints are picked with SRANDMEMBER and measured with
+ * MEMORY USAGE, which both run in time proportional to the sample size, in small batches on a pooled connection
+ * released and followed by a pause after each batch. If MEMORY USAGE is not available, as with some managed Redis
+ * services, the length of the stored fingerprints is used instead. Only the configured key scheme is sampled.
+ */
+public enum FingerprintDiagnostics {
+
+    INSTANCE;
+
+    private static final Logger LOGGER = Logger.getLogger(FingerprintDiagnostics.class.getName());
+
+    static final int SAMPLE_SIZE = SystemProperties.getInteger(FingerprintDiagnostics.class.getName() + ".sampleSize",
+            500);
+    static final int BATCH_SIZE = 50;
+    static final long BATCH_PAUSE_MILLIS = 20;
+    static final int HISTORY_CAPACITY = 365;
+    private static final String HISTORY_FILE_NAME = "redis-fingerprint-storage" + File.separator + "growth.csv";
+
+    private volatile FingerprintSizeReport report;
+    private volatile String status;
+    private boolean sampling;
+
+    public @CheckForNull FingerprintSizeReport getReport() {
+        return report;
+    }
+
+    public @CheckForNull String getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the estimated size of the store recorded by each sample, most recent first.
+     */
+    public @NonNull List<FingerprintSizeReport.Growth> getGrowth() {
+        List<FingerprintSizeReport.Growth> growth = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(getHistoryFile(), StandardCharsets.UTF_8)) {
+                FingerprintSizeReport.Growth sample = FingerprintSizeReport.Growth.parse(line);
+                if (sample != null) {
+                    growth.add(sample);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return growth;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read the growth history of the Redis fingerprint storage", e);
+        }
+        Collections.reverse(growth);
+        return growth.subList(0, Math.min(HISTORY_CAPACITY, growth.size()));
+    }
+
+    public synchronized boolean isSampling() {
+        return sampling;
+    }
+
+    /**
+     * Starts sampling in the background, so that the request does not wait for the sample to be taken.
+     */
+    @RequirePOST
+    public HttpResponse doSample() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        FingerprintStorage fingerprintStorage = FingerprintStorage.get();
+        if (fingerprintStorage instanceof RedisFingerprintStorage && !isSampling()) {
+            status = "Sampling";
+            Computer.threadPoolForRemoting.submit(() -> sampleInBackground(
+                    (RedisFingerprintStorage) fingerprintStorage));
+        }
+        return HttpResponses.redirectToDot();
+    }
+
+    private void sampleInBackground(RedisFingerprintStorage redisFingerprintStorage) {
+        try {
+            sample(redisFingerprintStorage);
+        } catch (IOException | RuntimeException e) {
+            status = "Sampling failed: " + e.getMessage();
+            LOGGER.log(Level.WARNING, "Failed to sample the fingerprints stored in Redis", e);
+        } catch (InterruptedException e) {
+            status = "Sampling interrupted";
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Samples the stored fingerprints and records the estimated size of the store, unless a sample is already being
+     * taken.
+     */
+    void sample(@NonNull RedisFingerprintStorage redisFingerprintStorage)
+            throws IOException, InterruptedException, JedisException {
+        synchronized (this) {
+            if (sampling) {
+                return;
+            }
+            sampling = true;
+        }
+        try {
+            FingerprintSizeReport sampled = takeSample(redisFingerprintStorage);
+            report = sampled;
+            status = null;
+            appendHistory(sampled.getGrowth());
+        } finally {
+            synchronized (this) {
+                sampling = false;
+            }
+        }
+    }
+
+    private FingerprintSizeReport takeSample(RedisFingerprintStorage redisFingerprintStorage)
+            throws IOException, InterruptedException, JedisException {
+        JedisPoolManager jedisPoolManager = JedisPoolManager.INSTANCE;
+        KeyScheme keyScheme = redisFingerprintStorage.getKeyScheme();
+        String instanceId = redisFingerprintStorage.getInstanceId();
+        long setSize = jedisPoolManager.withJedis(redisFingerprintStorage, JedisPoolManager.Pool.BACKGROUND,
+                jedis -> jedis.scard(keyScheme.getSetKey(instanceId)));
+        List<String> ids = jedisPoolManager.withJedis(redisFingerprintStorage, JedisPoolManager.Pool.BACKGROUND,
+                jedis -> keyScheme.sample(jedis, instanceId, SAMPLE_SIZE));
+
+        Map<String, byte[]> blobs = new LinkedHashMap<>();
+        Map<String, byte[]> chunkedBlobs = new HashMap<>();
+        Map<String, Long> memoryUsageByKey = new HashMap<>();
+        boolean[] memoryUsageAvailable = {true};
+        for (int start = 0; start < ids.size(); start += BATCH_SIZE) {
+            List<String> batch = ids.subList(start, Math.min(ids.size(), start + BATCH_SIZE));
+            jedisPoolManager.withJedis(redisFingerprintStorage, JedisPoolManager.Pool.BACKGROUND, jedis -> {
+                List<byte[]> batchBlobs = keyScheme.getAll(jedis, instanceId, batch);
+                for (int i = 0; i < batch.size(); i++) {
+                    if (batchBlobs.get(i) == null) {
+                        continue;
+                    }
+                    if (ChunkedBlobs.isManifest(batchBlobs.get(i))) {
+                        byte[] chunkedBlob = ChunkedBlobs.read(jedis, instanceId, batch.get(i), batchBlobs.get(i));
+                        if (chunkedBlob == null) {
+                            continue;
+                        }
+                        chunkedBlobs.put(batch.get(i), chunkedBlob);
+                        measureMemoryUsage(jedis, ChunkedBlobs.getKey(instanceId, batch.get(i)), memoryUsageByKey,
+                                memoryUsageAvailable);
+                    }
+                    blobs.put(batch.get(i), batchBlobs.get(i));
+                    measureMemoryUsage(jedis, keyScheme.getFingerprintKey(instanceId, batch.get(i)),
+                            memoryUsageByKey, memoryUsageAvailable);
+                }
+                return null;
+            });
+            TimeUnit.MILLISECONDS.sleep(BATCH_PAUSE_MILLIS);
+        }
+
+        // Share the memory used by each key among the fingerprints it holds, in proportion of their length.
+        Map<String, Long> lengthByKey = new HashMap<>();
+        for (Map.Entry<String, byte[]> blob : blobs.entrySet()) {
+            lengthByKey.merge(Util.toHexString(keyScheme.getFingerprintKey(instanceId, blob.getKey())),
+                    (long) blob.getValue().length, Long::sum);
+        }
+        List<FingerprintSizeReport.SampledFingerprint> fingerprints = new ArrayList<>();
+        for (Map.Entry<String, byte[]> blob : blobs.entrySet()) {
+            String key = Util.toHexString(keyScheme.getFingerprintKey(instanceId, blob.getKey()));
+            long length = blob.getValue().length;
+            long size = memoryUsageAvailable[0] && lengthByKey.get(key) > 0
+                    ? memoryUsageByKey.get(key) * length / lengthByKey.get(key) : length;
+            byte[] chunkedBlob = chunkedBlobs.get(blob.getKey());
+            if (chunkedBlob != null) {
+                size += memoryUsageAvailable[0]
+                        ? memoryUsageByKey.get(Util.toHexString(ChunkedBlobs.getKey(instanceId, blob.getKey())))
+                        : chunkedBlob.length;
+            }
+            Fingerprint fingerprint;
+            try {
+                fingerprint = redisFingerprintStorage.blobToFingerprint(new String(
+                        chunkedBlob != null ? chunkedBlob : blob.getValue(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to read sampled fingerprint " + blob.getKey(), e);
+                fingerprint = null;
+            }
+            fingerprints.add(new FingerprintSizeReport.SampledFingerprint(blob.getKey(), size, fingerprint));
+        }
+        // Buckets hold several fingerprints, so the set of the instance indexes fewer keys than fingerprints.
+        long estimatedFingerprints = lengthByKey.isEmpty() ? 0 : setSize * blobs.size() / lengthByKey.size();
+        return new FingerprintSizeReport(System.currentTimeMillis(), keyScheme, memoryUsageAvailable[0],
+                estimatedFingerprints, fingerprints);
+    }
+
+    /**
+     * Records the memory used by the given key, unless already known, or the memory usage is not available.
+     */
+    private static void measureMemoryUsage(Jedis jedis, byte[] key, Map<String, Long> memoryUsageByKey,
+                                           boolean[] memoryUsageAvailable) {
+        String hexKey = Util.toHexString(key);
+        if (!memoryUsageAvailable[0] || memoryUsageByKey.containsKey(hexKey)) {
+            return;
+        }
+        try {
+            Long memoryUsage = jedis.memoryUsage(key);
+            memoryUsageByKey.put(hexKey, memoryUsage == null ? 0 : memoryUsage);
+        } catch (JedisDataException e) {
+            LOGGER.log(Level.FINE, "MEMORY USAGE is not available, using the stored length", e);
+            memoryUsageAvailable[0] = false;
+        }
+    }
+
+    private synchronized void appendHistory(FingerprintSizeReport.Growth growth) throws IOException {
+        Path historyFile = getHistoryFile();
+        Files.createDirectories(historyFile.getParent());
+        Files.write(historyFile, Collections.singletonList(growth.toString()), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        List<String> lines = Files.readAllLines(historyFile, StandardCharsets.UTF_8);
+        if (lines.size() > 2 * HISTORY_CAPACITY) {
+            Files.write(historyFile, lines.subList(lines.size() - HISTORY_CAPACITY, lines.size()),
+                    StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Path getHistoryFile() {
+        return Jenkins.get().getRootDir().toPath().resolve(HISTORY_FILE_NAME);
+    }
+
+}
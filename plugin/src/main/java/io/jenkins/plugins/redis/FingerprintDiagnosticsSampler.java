@@ -0,0 +1,69 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import jenkins.fingerprints.FingerprintStorage;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Samples the stored fingerprints daily, so that the {@link FingerprintDiagnostics} track the growth of the store.
+ */
+@Extension
+public class FingerprintDiagnosticsSampler extends AsyncPeriodicWork {
+
+    public FingerprintDiagnosticsSampler() {
+        super("Redis fingerprint storage diagnostics");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.DAYS.toMillis(1);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws InterruptedException {
+        FingerprintStorage fingerprintStorage = FingerprintStorage.get();
+        if (!(fingerprintStorage instanceof RedisFingerprintStorage)) {
+            return;
+        }
+        try {
+            FingerprintDiagnostics.INSTANCE.sample((RedisFingerprintStorage) fingerprintStorage);
+        } catch (IOException | JedisException e) {
+            listener.error("Failed to sample fingerprints, will retry later: " + e.getMessage());
+        }
+    }
+
+    @Override
+    protected Level getNormalLoggingLevel() {
+        return Level.FINE;
+    }
+
+}
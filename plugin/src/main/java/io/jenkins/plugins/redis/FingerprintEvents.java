@@ -0,0 +1,188 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Emits a Java Flight Recorder event for every fingerprint operation, named {@value #NAME}, with the operation, the
+ * fingerprint id, the payload size, and the phase times of its {@link OperationTrace}.
+ *
+ * The event is disabled by default, and can be enabled in the settings of a recording. As long as no recording enables
+ * it, the only cost is checking whether it is enabled. The plugin is built for Java 8, so the event is defined at
+ * runtime with the {@code jdk.jfr.EventFactory} API through reflection, and nothing is emitted on Java runtimes
+ * without Flight Recorder.
+ */
+final class FingerprintEvents {
+
+    static final String NAME = "io.jenkins.plugins.redis.FingerprintOperation";
+
+    private static final Logger LOGGER = Logger.getLogger(FingerprintEvents.class.getName());
+
+    private static final Jfr JFR = Jfr.create();
+
+    private FingerprintEvents() {
+    }
+
+    /**
+     * Returns a new event whose duration has begun, or null if the event is not enabled.
+     */
+    static @CheckForNull Object begin() {
+        if (JFR == null || !JFR.isEnabled()) {
+            return null;
+        }
+        return JFR.newEvent();
+    }
+
+    static void commit(@CheckForNull Object event, @NonNull OperationTrace trace) {
+        if (event == null) {
+            return;
+        }
+        JFR.commit(event, trace.getOperation().name().toLowerCase(Locale.ENGLISH), trace.getId(),
+                trace.getPayloadSize(), trace.getPoolWaitNanos(), trace.getRedisNanos(), trace.getEncodeNanos(),
+                trace.getDecodeNanos());
+    }
+
+    /**
+     * Reflective access to the event type created with {@code jdk.jfr.EventFactory}.
+     */
+    private static final class Jfr {
+
+        private final Object factory;
+        private final Object eventType;
+        private final Method newEvent;
+        private final Method isEnabled;
+        private final Method begin;
+        private final Method commit;
+        private final Method set;
+
+        private Jfr(Object factory, Object eventType, Method newEvent, Method isEnabled, Method begin, Method commit,
+                    Method set) {
+            this.factory = factory;
+            this.eventType = eventType;
+            this.newEvent = newEvent;
+            this.isEnabled = isEnabled;
+            this.begin = begin;
+            this.commit = commit;
+            this.set = set;
+        }
+
+        static @CheckForNull Jfr create() {
+            try {
+                ClassLoader loader = ClassLoader.getSystemClassLoader();
+                Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement", true, loader);
+                Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor", true, loader);
+                Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory", true, loader);
+                Class<?> eventClass = Class.forName("jdk.jfr.Event", true, loader);
+                Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType", true, loader);
+                Constructor<?> annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+                Constructor<?> valueDescriptor = valueDescriptorClass.getConstructor(Class.class, String.class,
+                        List.class);
+
+                List<Object> eventAnnotations = Arrays.asList(
+                        annotationElement.newInstance(annotation(loader, "Name"), NAME),
+                        annotationElement.newInstance(annotation(loader, "Label"), "Redis Fingerprint Operation"),
+                        annotationElement.newInstance(annotation(loader, "Category"),
+                                new String[] {"Jenkins", "Redis Fingerprint Storage"}),
+                        annotationElement.newInstance(annotation(loader, "Enabled"), false),
+                        annotationElement.newInstance(annotation(loader, "StackTrace"), false));
+                List<Object> bytes = Collections.singletonList(
+                        annotationElement.newInstance(annotation(loader, "DataAmount"), "BYTES"));
+                List<Object> nanos = Collections.singletonList(
+                        annotationElement.newInstance(annotation(loader, "Timespan"), "NANOSECONDS"));
+                List<Object> fields = new ArrayList<>();
+                fields.add(valueDescriptor.newInstance(String.class, "operation", Collections.emptyList()));
+                fields.add(valueDescriptor.newInstance(String.class, "fingerprintId", Collections.emptyList()));
+                fields.add(valueDescriptor.newInstance(long.class, "payloadSize", bytes));
+                fields.add(valueDescriptor.newInstance(long.class, "poolWaitTime", nanos));
+                fields.add(valueDescriptor.newInstance(long.class, "redisTime", nanos));
+                fields.add(valueDescriptor.newInstance(long.class, "encodeTime", nanos));
+                fields.add(valueDescriptor.newInstance(long.class, "decodeTime", nanos));
+
+                Object factory = eventFactoryClass.getMethod("create", List.class, List.class)
+                        .invoke(null, eventAnnotations, fields);
+                Object eventType = eventFactoryClass.getMethod("getEventType").invoke(factory);
+                return new Jfr(factory, eventType, eventFactoryClass.getMethod("newEvent"),
+                        eventTypeClass.getMethod("isEnabled"), eventClass.getMethod("begin"),
+                        eventClass.getMethod("commit"), eventClass.getMethod("set", int.class, Object.class));
+            } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Java Flight Recorder is not available, fingerprint events are disabled", e);
+                return null;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Class<? extends Annotation> annotation(ClassLoader loader, String name)
+                throws ClassNotFoundException {
+            return (Class<? extends Annotation>) Class.forName("jdk.jfr." + name, true, loader);
+        }
+
+        boolean isEnabled() {
+            try {
+                return (Boolean) isEnabled.invoke(eventType);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Returns a new event whose duration has begun, or null if it cannot be created.
+         */
+        @CheckForNull Object newEvent() {
+            try {
+                Object event = newEvent.invoke(factory);
+                begin.invoke(event);
+                return event;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Failed to create fingerprint event", e);
+                return null;
+            }
+        }
+
+        void commit(Object event, Object... values) {
+            try {
+                for (int i = 0; i < values.length; i++) {
+                    set.invoke(event, i, values[i]);
+                }
+                commit.invoke(event);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Failed to commit fingerprint event", e);
+            }
+        }
+
+    }
+
+}
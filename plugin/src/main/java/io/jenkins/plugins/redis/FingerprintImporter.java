@@ -0,0 +1,362 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Computer;
+import hudson.model.Fingerprint;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Singleton importing the fingerprints stored as XML files under {@code JENKINS_HOME/fingerprints} into Redis, rather
+ * than waiting for Jenkins to migrate each of them when it is next accessed.
+ *
+ * The top level directories of the fingerprint tree are read in parallel, and fingerprints are written to Redis in
+ * pipelined batches, skipping the ones already in Redis, whose files are kept. Each completed top level directory is
+ * recorded in a checkpoint file, so that an interrupted import resumes where it stopped.
+ */
+public enum FingerprintImporter {
+
+    INSTANCE;
+
+    private static final Logger LOGGER = Logger.getLogger(FingerprintImporter.class.getName());
+
+    static final int BATCH_SIZE = 100;
+    private static final String CHECKPOINT_FILE_NAME = "redis-fingerprint-storage" + File.separator
+            + "import-checkpoint.txt";
+
+    private volatile boolean running;
+    private volatile boolean cancelled;
+    private volatile String status = "Not started";
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile int totalDirectories;
+    private final AtomicLong completedDirectories = new AtomicLong();
+    private final AtomicLong read = new AtomicLong();
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Starts importing in the background, unless an import is already running.
+     *
+     * @param threads number of directories read in parallel
+     * @param maxRate maximum number of fingerprints written to Redis per second, or 0 for no limit
+     * @param deleteImported whether to delete the files of fingerprints once written to Redis by the import
+     */
+    synchronized boolean start(@NonNull RedisFingerprintStorage redisFingerprintStorage, int threads, int maxRate,
+                               boolean deleteImported) {
+        if (running) {
+            return false;
+        }
+        running = true;
+        cancelled = false;
+        status = "Running";
+        startedAt = System.currentTimeMillis();
+        finishedAt = 0;
+        totalDirectories = 0;
+        completedDirectories.set(0);
+        read.set(0);
+        imported.set(0);
+        skipped.set(0);
+        failed.set(0);
+        File rootDir = Jenkins.get().getRootDir();
+        Computer.threadPoolForRemoting.submit(() -> run(redisFingerprintStorage, rootDir, Math.max(1, threads),
+                new Throttle(maxRate), deleteImported));
+        return true;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    private void run(RedisFingerprintStorage redisFingerprintStorage, File rootDir, int threads, Throttle throttle,
+                     boolean deleteImported) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new NamingThreadFactory(new DaemonThreadFactory(), "RedisFingerprintStorage.import"));
+        try {
+            Path checkpoint = rootDir.toPath().resolve(CHECKPOINT_FILE_NAME);
+            Set<String> done = readCheckpoint(checkpoint);
+            List<Path> directories = listDirectories(rootDir.toPath().resolve("fingerprints"));
+            totalDirectories = directories.size();
+            completedDirectories.set(0);
+            List<Future<?>> futures = new ArrayList<>();
+            for (Path directory : directories) {
+                if (done.contains(directory.getFileName().toString())) {
+                    completedDirectories.incrementAndGet();
+                    continue;
+                }
+                futures.add(executor.submit(() -> {
+                    importDirectory(redisFingerprintStorage, directory, throttle, deleteImported);
+                    if (!cancelled) {
+                        appendCheckpoint(checkpoint, directory.getFileName().toString());
+                        completedDirectories.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            if (cancelled) {
+                status = "Cancelled, will resume where it stopped";
+            } else {
+                Files.deleteIfExists(checkpoint);
+                status = "Completed";
+            }
+        } catch (ExecutionException e) {
+            cancelled = true;
+            status = "Failed, will resume where it stopped: " + e.getCause().getMessage();
+            LOGGER.log(Level.WARNING, "Failed to import fingerprints into Redis", e.getCause());
+        } catch (IOException e) {
+            status = "Failed, will resume where it stopped: " + e.getMessage();
+            LOGGER.log(Level.WARNING, "Failed to import fingerprints into Redis", e);
+        } catch (InterruptedException e) {
+            status = "Interrupted, will resume where it stopped";
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+            finishedAt = System.currentTimeMillis();
+            running = false;
+            LOGGER.log(Level.INFO, "Import of fingerprints into Redis {0}: {1} read, {2} imported, {3} already in "
+                    + "Redis, {4} failed", new Object[] {status, read.get(), imported.get(), skipped.get(),
+                    failed.get()});
+        }
+    }
+
+    private void importDirectory(RedisFingerprintStorage redisFingerprintStorage, Path directory, Throttle throttle,
+                                 boolean deleteImported) throws IOException, InterruptedException, JedisException {
+        List<Fingerprint> batch = new ArrayList<>();
+        List<Path> batchFiles = new ArrayList<>();
+        for (Path file : listFingerprintFiles(directory)) {
+            if (cancelled) {
+                return;
+            }
+            Fingerprint fingerprint = readFingerprint(file);
+            read.incrementAndGet();
+            if (fingerprint == null) {
+                failed.incrementAndGet();
+                continue;
+            }
+            batch.add(fingerprint);
+            batchFiles.add(file);
+            if (batch.size() == BATCH_SIZE) {
+                importBatch(redisFingerprintStorage, batch, batchFiles, throttle, deleteImported);
+            }
+        }
+        if (!batch.isEmpty() && !cancelled) {
+            importBatch(redisFingerprintStorage, batch, batchFiles, throttle, deleteImported);
+        }
+    }
+
+    private void importBatch(RedisFingerprintStorage redisFingerprintStorage, List<Fingerprint> batch,
+                             List<Path> batchFiles, Throttle throttle, boolean deleteImported)
+            throws IOException, InterruptedException, JedisException {
+        throttle.acquire(batch.size());
+        boolean[] saved = redisFingerprintStorage.importFingerprints(batch);
+        for (int i = 0; i < saved.length; i++) {
+            if (saved[i]) {
+                imported.incrementAndGet();
+                if (deleteImported) {
+                    Files.deleteIfExists(batchFiles.get(i));
+                }
+            } else {
+                skipped.incrementAndGet();
+                LOGGER.log(Level.FINE, "Fingerprint already in Redis, keeping its file: {0}", batchFiles.get(i));
+            }
+        }
+        batch.clear();
+        batchFiles.clear();
+    }
+
+    /**
+     * Lists the fingerprint files under the given directory, ignoring the ones concurrently migrated and deleted by
+     * Jenkins.
+     */
+    private static List<Path> listFingerprintFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (file.getFileName().toString().endsWith(".xml")) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                if (e instanceof NoSuchFileException) {
+                    return FileVisitResult.CONTINUE;
+                }
+                throw e;
+            }
+        });
+        return files;
+    }
+
+    private static @CheckForNull Fingerprint readFingerprint(Path file) {
+        try (InputStream in = Files.newInputStream(file)) {
+            Object loaded = Fingerprint.getXStream().fromXML(in);
+            if (loaded instanceof Fingerprint) {
+                return (Fingerprint) loaded;
+            }
+            LOGGER.log(Level.WARNING, "Not a fingerprint: {0}", file);
+        } catch (NoSuchFileException e) {
+            LOGGER.log(Level.FINE, "Fingerprint already migrated by Jenkins: {0}", file);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to read fingerprint " + file, e);
+        }
+        return null;
+    }
+
+    private static List<Path> listDirectories(Path fingerprintsDir) throws IOException {
+        if (!Files.isDirectory(fingerprintsDir)) {
+            return Collections.emptyList();
+        }
+        List<Path> directories = new ArrayList<>();
+        try (Stream<Path> children = Files.list(fingerprintsDir)) {
+            children.filter(Files::isDirectory).sorted().forEach(directories::add);
+        }
+        return directories;
+    }
+
+    private static Set<String> readCheckpoint(Path checkpoint) throws IOException {
+        if (!Files.exists(checkpoint)) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(Files.readAllLines(checkpoint, StandardCharsets.UTF_8));
+    }
+
+    private static synchronized void appendCheckpoint(Path checkpoint, String directoryName) throws IOException {
+        Files.createDirectories(checkpoint.getParent());
+        Files.write(checkpoint, Collections.singletonList(directoryName), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public @NonNull String getStatus() {
+        return status;
+    }
+
+    public int getTotalDirectories() {
+        return totalDirectories;
+    }
+
+    public long getCompletedDirectories() {
+        return completedDirectories.get();
+    }
+
+    public long getRead() {
+        return read.get();
+    }
+
+    public long getImported() {
+        return imported.get();
+    }
+
+    /**
+     * Returns the number of fingerprints left untouched because Redis already stored them. Their files are kept.
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Returns the number of fingerprints read per second since the import started.
+     */
+    public long getRate() {
+        long elapsed = (running ? System.currentTimeMillis() : finishedAt) - startedAt;
+        return startedAt == 0 || elapsed <= 0 ? 0 : read.get() * 1000 / elapsed;
+    }
+
+    public int getDefaultThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Spreads the writes of all readers so that they do not exceed a maximum rate.
+     */
+    private static final class Throttle {
+
+        private final long intervalNanos;
+        private final AtomicLong nextSlot = new AtomicLong(System.nanoTime());
+
+        Throttle(int maxRate) {
+            this.intervalNanos = maxRate > 0 ? TimeUnit.SECONDS.toNanos(1) / maxRate : 0;
+        }
+
+        void acquire(int permits) throws InterruptedException {
+            if (intervalNanos == 0) {
+                return;
+            }
+            long now = System.nanoTime();
+            long slot = nextSlot.getAndAccumulate(permits * intervalNanos,
+                    (next, delta) -> Math.max(next, now) + delta);
+            long wait = Math.max(slot, now) - now;
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Iterates over the pages of all fingerprints stored with every key scheme, or of the ids listed by another
+ * {@link IdSource}, keeping the next pages in flight while the caller processes the current one.
+ *
+ * A background task lists the fingerprint ids and loads each page of ids, and hands the loaded pages over through a
+ * queue holding at most {@link #LOOKAHEAD} pages. Once the queue is full, the task waits for the caller, so that memory
+ * use stays bounded however slow the caller is. The iterator must be closed to stop the task when it is not exhausted.
+ * The task borrows its connections from the {@link JedisPoolManager.Pool#BACKGROUND} pool. Whatever the task throws
+ * is thrown to the caller in place of the next page.
+ */
+final class FingerprintPageIterator<T> implements Iterator<FingerprintPageIterator.Page<T>>, Closeable {
+
+    static final int LOOKAHEAD = SystemProperties.getInteger(FingerprintPageIterator.class.getName() + ".lookahead", 2);
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(
+            new NamingThreadFactory(new DaemonThreadFactory(), "RedisFingerprintStorage.prefetch"));
+
+    /**
+     * Loads the values of a page of fingerprint ids.
+     */
+    interface PageLoader<T> {
+        @NonNull List<T> load(@NonNull List<String> ids) throws IOException, JedisException;
+    }
+
+    /**
+     * Lists fingerprint ids, handing them over one page at a time.
+     */
+    interface IdSource {
+        void forEachPage(@NonNull IdConsumer consumer) throws IOException, InterruptedException, JedisException;
+    }
+
+    /**
+     * Receives a page of fingerprint ids.
+     */
+    interface IdConsumer {
+        void accept(@NonNull List<String> ids) throws IOException, InterruptedException, JedisException;
+    }
+
+    /**
+     * Fingerprint ids and their loaded values, in the same order.
+     */
+    static final class Page<T> {
+
+        private final List<String> ids;
+        private final List<T> values;
+        private final Throwable failure;
+
+        private Page(List<String> ids, List<T> values, Throwable failure) {
+            this.ids = ids;
+            this.values = values;
+            this.failure = failure;
+        }
+
+        @NonNull List<String> getIds() {
+            return ids;
+        }
+
+        @NonNull List<T> getValues() {
+            return values;
+        }
+
+    }
+
+    private final Page<T> end = new Page<>(Collections.emptyList(), Collections.emptyList(), null);
+    private final BlockingQueue<Page<T>> pages = new ArrayBlockingQueue<>(Math.max(1, LOOKAHEAD));
+    private final Future<?> prefetch;
+    private Page<T> next;
+
+    FingerprintPageIterator(@NonNull RedisFingerprintStorage storage, @NonNull PageLoader<T> loader) {
+        this(consumer -> {
+            for (KeyScheme keyScheme : storage.getStoredKeySchemes()) {
+                String currentPointer = ScanParams.SCAN_POINTER_START;
+                do {
+                    ScanResult<String> scanResult = storage.getFingerprintIdsForCleanup(keyScheme, currentPointer);
+                    consumer.accept(scanResult.getResult());
+                    currentPointer = scanResult.getCursor();
+                } while (!currentPointer.equals(ScanParams.SCAN_POINTER_START));
+            }
+        }, loader);
+    }
+
+    FingerprintPageIterator(@NonNull IdSource idSource, @NonNull PageLoader<T> loader) {
+        prefetch = EXECUTOR.submit(() -> JedisPoolManager.INSTANCE.withPool(JedisPoolManager.Pool.BACKGROUND, () -> {
+            try {
+                idSource.forEachPage(ids -> {
+                    if (!ids.isEmpty()) {
+                        pages.put(new Page<>(ids, loader.load(ids), null));
+                    }
+                });
+                pages.put(end);
+            } catch (InterruptedException e) {
+                // Closed by the caller
+            } catch (Throwable e) {
+                try {
+                    pages.put(new Page<>(Collections.emptyList(), Collections.emptyList(), e));
+                } catch (InterruptedException ignored) {
+                    // Closed by the caller
+                }
+            }
+            return null;
+        }));
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = pages.take();
+            } catch (InterruptedException e) {
+                close();
+                Thread.currentThread().interrupt();
+                throw new JedisException("Interrupted while iterating over fingerprints", e);
+            }
+        }
+        // Failures are thrown as is, so that callers can tell subclasses such as CleanupLeaseLostException apart.
+        if (next.failure instanceof RuntimeException) {
+            throw (RuntimeException) next.failure;
+        } else if (next.failure instanceof Error) {
+            throw (Error) next.failure;
+        } else if (next.failure instanceof IOException) {
+            throw new UncheckedIOException((IOException) next.failure);
+        } else if (next.failure != null) {
+            throw new UncheckedIOException(new IOException(next.failure));
+        }
+        return next != end;
+    }
+
+    @Override
+    public Page<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Page<T> page = next;
+        next = null;
+        return page;
+    }
+
+    @Override
+    public void close() {
+        prefetch.cancel(true);
+        pages.clear();
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import hudson.model.Api;
+import hudson.model.Fingerprint;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Search of the stored fingerprints by file name prefix, through the {@link FileNameIndex}, also available through
+ * the remote access API.
+ */
+@ExportedBean
+public final class FingerprintSearch {
+
+    private static final Logger LOGGER = Logger.getLogger(FingerprintSearch.class.getName());
+
+    static final int MAX_RESULTS = 100;
+
+    private final String fileName;
+    private final List<Result> results;
+    private final String error;
+
+    private FingerprintSearch(@CheckForNull String fileName, @NonNull List<Result> results,
+                              @CheckForNull String error) {
+        this.fileName = fileName;
+        this.results = Collections.unmodifiableList(results);
+        this.error = error;
+    }
+
+    /**
+     * Searches the fingerprints whose file name, or base name, starts with the given prefix, if any, when Redis is
+     * the configured fingerprint storage.
+     */
+    static @NonNull FingerprintSearch search(@CheckForNull RedisFingerprintStorage redisFingerprintStorage,
+                                             @CheckForNull String fileName) {
+        if (redisFingerprintStorage == null || Util.fixEmptyAndTrim(fileName) == null) {
+            return new FingerprintSearch(null, Collections.emptyList(), null);
+        }
+        try {
+            List<Result> results = new ArrayList<>();
+            for (Fingerprint fingerprint : redisFingerprintStorage.searchByFileName(fileName, MAX_RESULTS)) {
+                results.add(new Result(fingerprint));
+            }
+            return new FingerprintSearch(fileName, results, null);
+        } catch (IOException | JedisException e) {
+            LOGGER.log(Level.WARNING, "Failed to search fingerprints by file name: " + fileName, e);
+            return new FingerprintSearch(fileName, Collections.emptyList(), "Search failed: " + e.getMessage());
+        }
+    }
+
+    @Exported
+    public @CheckForNull String getFileName() {
+        return fileName;
+    }
+
+    @Exported
+    public @NonNull List<Result> getResults() {
+        return results;
+    }
+
+    public @CheckForNull String getError() {
+        return error;
+    }
+
+    public int getMaxResults() {
+        return MAX_RESULTS;
+    }
+
+    public Api getApi() {
+        return new Api(this);
+    }
+
+    /**
+     * Fingerprint found by a search.
+     */
+    @ExportedBean
+    public static final class Result {
+
+        private final String id;
+        private final String fileName;
+        private final long timestamp;
+        private final String originalJob;
+        private final int originalBuild;
+        private final List<String> jobs;
+
+        Result(@NonNull Fingerprint fingerprint) {
+            this.id = fingerprint.getHashString();
+            this.fileName = fingerprint.getFileName();
+            this.timestamp = fingerprint.getTimestamp().getTime();
+            Fingerprint.BuildPtr original = fingerprint.getOriginal();
+            this.originalJob = original == null ? null : original.getName();
+            this.originalBuild = original == null ? 0 : original.getNumber();
+            this.jobs = Collections.unmodifiableList(new ArrayList<>(fingerprint.getJobs()));
+        }
+
+        @Exported
+        public @NonNull String getId() {
+            return id;
+        }
+
+        @Exported
+        public String getFileName() {
+            return fileName;
+        }
+
+        @Exported
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public @NonNull Date getDate() {
+            return new Date(timestamp);
+        }
+
+        /**
+         * Returns the full name of the job whose build produced the file, or null if it was produced outside of
+         * Jenkins.
+         */
+        @Exported
+        public @CheckForNull String getOriginalJob() {
+            return originalJob;
+        }
+
+        @Exported
+        public int getOriginalBuild() {
+            return originalBuild;
+        }
+
+        /**
+         * Returns the full names of the jobs whose builds used the file.
+         */
+        @Exported
+        public @NonNull List<String> getJobs() {
+            return jobs;
+        }
+
+    }
+
+}
@@ -0,0 +1,356 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Fingerprint;
+import hudson.util.RangeSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates of the {@link FingerprintDiagnostics} drawn from a random sample of the stored fingerprints. Sizes are in
+ * bytes.
+ */
+public final class FingerprintSizeReport {
+
+    static final int TOP = 10;
+    private static final long[] SIZE_RANGE_BOUNDS = {1 << 10, 4 << 10, 16 << 10, 64 << 10, 256 << 10, 1 << 20};
+
+    private final long timestamp;
+    private final KeyScheme keyScheme;
+    private final boolean memoryUsageAvailable;
+    private final int sampledFingerprints;
+    private final long estimatedFingerprints;
+    private final long meanSize;
+    private final long[] percentiles;
+    private final List<SizeRange> sizeRanges = new ArrayList<>();
+    private final List<SampledFingerprint> largestFingerprints;
+    private final List<JobUsage> mostUsedJobs = new ArrayList<>();
+
+    FingerprintSizeReport(long timestamp, @NonNull KeyScheme keyScheme, boolean memoryUsageAvailable,
+                          long estimatedFingerprints, @NonNull List<SampledFingerprint> fingerprints) {
+        this.timestamp = timestamp;
+        this.keyScheme = keyScheme;
+        this.memoryUsageAvailable = memoryUsageAvailable;
+        this.sampledFingerprints = fingerprints.size();
+        this.estimatedFingerprints = estimatedFingerprints;
+
+        List<SampledFingerprint> bySize = new ArrayList<>(fingerprints);
+        bySize.sort(Comparator.comparingLong(SampledFingerprint::getSize).reversed());
+        largestFingerprints = Collections.unmodifiableList(new ArrayList<>(bySize.subList(0,
+                Math.min(TOP, bySize.size()))));
+        long totalSize = 0;
+        for (SampledFingerprint fingerprint : bySize) {
+            totalSize += fingerprint.getSize();
+        }
+        meanSize = bySize.isEmpty() ? 0 : totalSize / bySize.size();
+        percentiles = new long[] {percentile(bySize, 50), percentile(bySize, 90), percentile(bySize, 99),
+                bySize.isEmpty() ? 0 : bySize.get(0).getSize()};
+
+        long lowerBound = 0;
+        for (int i = 0; i <= SIZE_RANGE_BOUNDS.length; i++) {
+            long upperBound = i < SIZE_RANGE_BOUNDS.length ? SIZE_RANGE_BOUNDS[i] : Long.MAX_VALUE;
+            int count = 0;
+            for (SampledFingerprint fingerprint : bySize) {
+                if ((i == 0 || fingerprint.getSize() > lowerBound) && fingerprint.getSize() <= upperBound) {
+                    count++;
+                }
+            }
+            sizeRanges.add(new SizeRange(lowerBound, upperBound, count, sampledFingerprints));
+            lowerBound = upperBound;
+        }
+
+        Map<String, Integer> fingerprintsByJob = new HashMap<>();
+        for (SampledFingerprint fingerprint : fingerprints) {
+            for (String job : fingerprint.getJobs()) {
+                fingerprintsByJob.merge(job, 1, Integer::sum);
+            }
+        }
+        List<Map.Entry<String, Integer>> jobs = new ArrayList<>(fingerprintsByJob.entrySet());
+        jobs.sort(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        for (Map.Entry<String, Integer> job : jobs.subList(0, Math.min(TOP, jobs.size()))) {
+            mostUsedJobs.add(new JobUsage(job.getKey(), job.getValue(),
+                    estimatedFingerprints * job.getValue() / sampledFingerprints));
+        }
+    }
+
+    /**
+     * Returns the given percentile of the sizes sorted by decreasing size.
+     */
+    private static long percentile(List<SampledFingerprint> bySize, int percentile) {
+        if (bySize.isEmpty()) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(bySize.size() * (100 - percentile) / 100.0);
+        return bySize.get(Math.max(0, Math.min(bySize.size() - 1, rank - 1))).getSize();
+    }
+
+    public @NonNull Date getDate() {
+        return new Date(timestamp);
+    }
+
+    public @NonNull String getKeyScheme() {
+        return keyScheme.getDisplayName();
+    }
+
+    /**
+     * Returns whether sizes include the overhead of Redis, as reported by MEMORY USAGE, rather than only the length of
+     * the stored fingerprints.
+     */
+    public boolean isMemoryUsageAvailable() {
+        return memoryUsageAvailable;
+    }
+
+    public int getSampledFingerprints() {
+        return sampledFingerprints;
+    }
+
+    public long getEstimatedFingerprints() {
+        return estimatedFingerprints;
+    }
+
+    public long getEstimatedSize() {
+        return estimatedFingerprints * meanSize;
+    }
+
+    public long getMeanSize() {
+        return meanSize;
+    }
+
+    public long getMedianSize() {
+        return percentiles[0];
+    }
+
+    public long getPercentile90Size() {
+        return percentiles[1];
+    }
+
+    public long getPercentile99Size() {
+        return percentiles[2];
+    }
+
+    public long getMaxSize() {
+        return percentiles[3];
+    }
+
+    public @NonNull List<SizeRange> getSizeRanges() {
+        return Collections.unmodifiableList(sizeRanges);
+    }
+
+    public @NonNull List<SampledFingerprint> getLargestFingerprints() {
+        return largestFingerprints;
+    }
+
+    public @NonNull List<JobUsage> getMostUsedJobs() {
+        return Collections.unmodifiableList(mostUsedJobs);
+    }
+
+    @NonNull Growth getGrowth() {
+        return new Growth(timestamp, estimatedFingerprints, getEstimatedSize());
+    }
+
+    /**
+     * Fingerprint of the sample.
+     */
+    public static final class SampledFingerprint {
+
+        private final String id;
+        private final long size;
+        private final String fileName;
+        private final List<String> jobs;
+        private final long builds;
+
+        /**
+         * @param fingerprint the sampled fingerprint, or null if it could not be read
+         */
+        SampledFingerprint(@NonNull String id, long size, @CheckForNull Fingerprint fingerprint) {
+            this.id = id;
+            this.size = size;
+            this.fileName = fingerprint == null ? null : fingerprint.getFileName();
+            this.jobs = fingerprint == null ? Collections.emptyList() : new ArrayList<>(fingerprint.getJobs());
+            long builds = 0;
+            if (fingerprint != null) {
+                for (RangeSet rangeSet : fingerprint.getUsages().values()) {
+                    for (Fingerprint.Range range : rangeSet.getRanges()) {
+                        builds += range.getEnd() - range.getStart();
+                    }
+                }
+            }
+            this.builds = builds;
+        }
+
+        public @NonNull String getId() {
+            return id;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public @CheckForNull String getFileName() {
+            return fileName;
+        }
+
+        public @NonNull List<String> getJobs() {
+            return jobs;
+        }
+
+        /**
+         * Returns the number of builds using the fingerprint.
+         */
+        public long getBuilds() {
+            return builds;
+        }
+
+    }
+
+    /**
+     * Number of sampled fingerprints whose size is within a range.
+     */
+    public static final class SizeRange {
+
+        private final long lowerBound;
+        private final long upperBound;
+        private final int count;
+        private final int percentage;
+
+        SizeRange(long lowerBound, long upperBound, int count, int total) {
+            this.lowerBound = lowerBound;
+            this.upperBound = upperBound;
+            this.count = count;
+            this.percentage = total == 0 ? 0 : Math.round(100f * count / total);
+        }
+
+        /**
+         * Returns the lower bound of the range, exclusive.
+         */
+        public long getLowerBound() {
+            return lowerBound;
+        }
+
+        /**
+         * Returns the upper bound of the range, inclusive, or {@link Long#MAX_VALUE} for the last range.
+         */
+        public long getUpperBound() {
+            return upperBound;
+        }
+
+        public boolean isLast() {
+            return upperBound == Long.MAX_VALUE;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getPercentage() {
+            return percentage;
+        }
+
+    }
+
+    /**
+     * Job using some of the sampled fingerprints.
+     */
+    public static final class JobUsage {
+
+        private final String name;
+        private final int sampledFingerprints;
+        private final long estimatedFingerprints;
+
+        JobUsage(@NonNull String name, int sampledFingerprints, long estimatedFingerprints) {
+            this.name = name;
+            this.sampledFingerprints = sampledFingerprints;
+            this.estimatedFingerprints = estimatedFingerprints;
+        }
+
+        public @NonNull String getName() {
+            return name;
+        }
+
+        public int getSampledFingerprints() {
+            return sampledFingerprints;
+        }
+
+        public long getEstimatedFingerprints() {
+            return estimatedFingerprints;
+        }
+
+    }
+
+    /**
+     * Estimated size of the store at the time of a sample, stored as a line of comma separated values.
+     */
+    public static final class Growth {
+
+        private final long timestamp;
+        private final long fingerprints;
+        private final long size;
+
+        Growth(long timestamp, long fingerprints, long size) {
+            this.timestamp = timestamp;
+            this.fingerprints = fingerprints;
+            this.size = size;
+        }
+
+        static @CheckForNull Growth parse(@NonNull String line) {
+            String[] values = line.split(",");
+            if (values.length != 3) {
+                return null;
+            }
+            try {
+                return new Growth(Long.parseLong(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        public @NonNull Date getDate() {
+            return new Date(timestamp);
+        }
+
+        public long getFingerprints() {
+            return fingerprints;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return timestamp + "," + fingerprints + "," + size;
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Fingerprint;
+import hudson.util.RangeSet;
+import jenkins.util.SystemProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Singleton holding the version of recently used fingerprints as last read from or written to Redis by this
+ * controller, for versioned writes.
+ *
+ * The version of a fingerprint is the SHA-1 digest of what is stored with the {@link KeyScheme}, so that it needs no
+ * additional storage and can be computed by scripts. A fingerprint is only written if Redis still stores the version
+ * it was read at. Otherwise, the usages stored meanwhile are merged into it, and the write is tried again.
+ */
+public enum FingerprintVersions {
+
+    INSTANCE;
+
+    static final int MAX_ENTRIES = SystemProperties.getInteger(
+            FingerprintVersions.class.getName() + ".maxEntries", 10000);
+    static final int MAX_WRITE_ATTEMPTS = SystemProperties.getInteger(
+            FingerprintVersions.class.getName() + ".maxWriteAttempts", 5);
+
+    private final Map<String, String> versions = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Returns the version of the given fingerprint, or null if it is unknown, in which case the fingerprint is
+     * expected to be missing from Redis.
+     */
+    synchronized @CheckForNull String get(@NonNull String id) {
+        return versions.get(id);
+    }
+
+    synchronized void put(@NonNull String id, @NonNull String version) {
+        versions.put(id, version);
+    }
+
+    synchronized void remove(@NonNull String id) {
+        versions.remove(id);
+    }
+
+    synchronized void clear() {
+        versions.clear();
+    }
+
+    static @NonNull String getVersion(@NonNull String fingerprintBlob) {
+        return MutationScript.sha1Hex(ChunkedBlobs.getStoredBlob(fingerprintBlob.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Adds the usages of a fingerprint written concurrently to the given fingerprint. Usages removed by either writer
+     * may come back, until the fingerprint is next trimmed.
+     */
+    static void mergeUsages(@NonNull Fingerprint fingerprint, @NonNull Fingerprint concurrentFingerprint) {
+        // Merged range by range rather than build by build, since a range may span thousands of builds.
+        synchronized (fingerprint) {
+            Map<String, RangeSet> usages = fingerprint.getUsages();
+            for (Map.Entry<String, RangeSet> usage : concurrentFingerprint.getUsages().entrySet()) {
+                usages.computeIfAbsent(usage.getKey(), job -> new RangeSet()).add(usage.getValue());
+            }
+        }
+    }
+
+}
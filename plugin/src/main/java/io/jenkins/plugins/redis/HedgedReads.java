@@ -0,0 +1,319 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Singleton responsible for hedged reads: when a read has not completed after the 95th percentile of recent read
+ * latencies, the same read is sent again on another pooled connection, and whichever reply arrives first is used.
+ *
+ * The first read runs on the thread of the caller, so that concurrent reads are not limited by the hedging threads.
+ * Hedges run on a bounded number of threads, on behalf of the operation of the caller, see {@link OperationContext},
+ * and are only sent when one of them is idle. The connection of the read which lost, or of both reads once the latency
+ * budget is exceeded, is closed, so that it goes back to its pool without waiting for the reply.
+ */
+public enum HedgedReads {
+
+    INSTANCE;
+
+    private static final Logger LOGGER = Logger.getLogger(HedgedReads.class.getName());
+
+    private final int maxThreads = SystemProperties.getInteger(HedgedReads.class.getName() + ".maxThreads", 32);
+    private final ThreadPoolExecutor executor = createExecutor(maxThreads);
+    private final LatencyTracker latencyTracker = new LatencyTracker();
+
+    // Hedges are handed over to an idle thread or rejected, as a hedge waiting for a thread would be too late anyway.
+    private static ThreadPoolExecutor createExecutor(int maxThreads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "RedisFingerprintStorage.hedgedReads"),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Runs the given read, hedging it if it is slow, and waits for at most the given latency budget. The read must
+     * guard the connection it borrows with {@link Attempt#guard}.
+     *
+     * @param latencyBudgetMillis time after which the caller stops waiting, or 0 for no budget.
+     */
+    <T> T read(Function<Attempt, T> read, long latencyBudgetMillis) throws JedisException {
+        long deadline = latencyBudgetMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(latencyBudgetMillis)
+                : Long.MAX_VALUE;
+        HedgedRead<T> hedgedRead = new HedgedRead<>(read, OperationContext.capture());
+        long hedgeDelay = latencyTracker.getP95();
+        ScheduledFuture<?> hedgeTimer = hedgeDelay < 0 ? null
+                : Timer.get().schedule(hedgedRead::hedge, hedgeDelay, TimeUnit.NANOSECONDS);
+        ScheduledFuture<?> budgetTimer = latencyBudgetMillis <= 0 ? null
+                : Timer.get().schedule(hedgedRead::exceedBudget, latencyBudgetMillis, TimeUnit.MILLISECONDS);
+        try {
+            return hedgedRead.primary.run(read);
+        } catch (CancellationException e) {
+            // Abandoned, once the hedge replied first or the budget was exceeded.
+            if (hedgedRead.isBudgetExceeded()) {
+                throw budgetExceeded(latencyBudgetMillis);
+            }
+            return hedgedRead.getHedge(deadline, latencyBudgetMillis, null);
+        } catch (JedisException e) {
+            if (!hedgedRead.isHedged()) {
+                throw e;
+            }
+            return hedgedRead.getHedge(deadline, latencyBudgetMillis, e);
+        } finally {
+            if (hedgeTimer != null) {
+                hedgeTimer.cancel(false);
+            }
+            if (budgetTimer != null) {
+                budgetTimer.cancel(false);
+            }
+            hedgedRead.finish();
+        }
+    }
+
+    private static JedisConnectionException budgetExceeded(long latencyBudgetMillis) {
+        return new JedisConnectionException("Read exceeded its latency budget of " + latencyBudgetMillis + " ms");
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    /**
+     * State of a hedged read, shared by the caller running the first read and the timers hedging it and enforcing its
+     * latency budget.
+     */
+    private final class HedgedRead<T> {
+
+        private final Function<Attempt, T> read;
+        private final OperationContext context;
+        private final Attempt primary = new Attempt();
+        private final CompletableFuture<T> hedgeResult = new CompletableFuture<>();
+        private @CheckForNull Attempt hedge;
+        private boolean finished;
+        private boolean budgetExceeded;
+
+        HedgedRead(Function<Attempt, T> read, OperationContext context) {
+            this.read = read;
+            this.context = context;
+        }
+
+        /**
+         * Sends the hedge, unless the read completed meanwhile or no hedging thread is idle. The first read is
+         * abandoned once the hedge replied.
+         */
+        synchronized void hedge() {
+            if (finished) {
+                return;
+            }
+            Attempt attempt = new Attempt();
+            try {
+                executor.execute(() -> {
+                    try {
+                        hedgeResult.complete(context.run(() -> attempt.run(read)));
+                        primary.abandon();
+                    } catch (Throwable e) {
+                        hedgeResult.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                LOGGER.log(Level.FINE, "Not hedging a read while all hedging threads are busy", e);
+                return;
+            }
+            hedge = attempt;
+            StorageMetrics.INSTANCE.hedgedReads.increment();
+        }
+
+        synchronized void exceedBudget() {
+            if (finished) {
+                return;
+            }
+            budgetExceeded = true;
+            primary.abandon();
+            if (hedge != null) {
+                hedge.abandon();
+            }
+        }
+
+        synchronized boolean isBudgetExceeded() {
+            return budgetExceeded;
+        }
+
+        synchronized boolean isHedged() {
+            return hedge != null;
+        }
+
+        /**
+         * Waits for the hedge within the budget, and returns its reply. Throws the given failure of the first read
+         * instead, if any, when the hedge fails too.
+         */
+        T getHedge(long deadline, long latencyBudgetMillis, @CheckForNull JedisException primaryFailure)
+                throws JedisException {
+            T result;
+            try {
+                result = hedgeResult.get(remaining(deadline), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                throw budgetExceeded(latencyBudgetMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JedisConnectionException("Interrupted while waiting for Redis", e);
+            } catch (ExecutionException e) {
+                if (primaryFailure != null) {
+                    throw primaryFailure;
+                }
+                Throwable cause = e.getCause();
+                if (cause instanceof CancellationException && isBudgetExceeded()) {
+                    throw budgetExceeded(latencyBudgetMillis);
+                }
+                if (cause instanceof JedisException) {
+                    throw (JedisException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new JedisException(cause);
+            }
+            StorageMetrics.INSTANCE.hedgedReadWins.increment();
+            return result;
+        }
+
+        /**
+         * Stops hedging, and abandons the hedge still running, if any, so that its connection is closed.
+         */
+        synchronized void finish() {
+            finished = true;
+            if (hedge != null) {
+                hedge.abandon();
+            }
+        }
+
+    }
+
+    /**
+     * One of the reads of a hedged read. The latency of every read feeds the hedging delay, with the reads abandoned
+     * before completing counting for the time they ran.
+     */
+    final class Attempt {
+
+        private final long start = System.nanoTime();
+        private @CheckForNull Jedis jedis;
+        private boolean completed;
+        private boolean abandoned;
+
+        private <T> T run(Function<Attempt, T> read) {
+            boolean succeeded = false;
+            try {
+                T result = read.apply(this);
+                succeeded = true;
+                return result;
+            } finally {
+                complete(succeeded);
+            }
+        }
+
+        /**
+         * Returns a callback running the given one with a connection which is closed if this read is abandoned.
+         */
+        <T> JedisPoolManager.JedisCallback<T> guard(@NonNull JedisPoolManager.JedisCallback<T> callback) {
+            return jedis -> {
+                bind(jedis);
+                try {
+                    return callback.doWithJedis(jedis);
+                } catch (JedisConnectionException e) {
+                    if (isAbandoned()) {
+                        throw new CancellationException("Abandoned hedged read");
+                    }
+                    throw e;
+                } finally {
+                    bind(null);
+                }
+            };
+        }
+
+        private synchronized void bind(@CheckForNull Jedis jedis) {
+            if (jedis != null && abandoned) {
+                throw new CancellationException("Abandoned hedged read");
+            }
+            this.jedis = jedis;
+        }
+
+        private synchronized boolean isAbandoned() {
+            return abandoned;
+        }
+
+        private synchronized void complete(boolean succeeded) {
+            if (abandoned) {
+                return;
+            }
+            completed = true;
+            if (succeeded) {
+                latencyTracker.record(System.nanoTime() - start);
+            }
+        }
+
+        private synchronized void abandon() {
+            if (completed || abandoned) {
+                return;
+            }
+            abandoned = true;
+            latencyTracker.record(System.nanoTime() - start);
+            if (jedis != null) {
+                Socket socket = jedis.getClient().getSocket();
+                if (socket != null) {
+                    try {
+                        socket.close();
+                    } catch (IOException e) {
+                        LOGGER.log(Level.FINE, "Failed to close the connection of an abandoned read", e);
+                    }
+                }
+            }
+        }
+
+    }
+
+}
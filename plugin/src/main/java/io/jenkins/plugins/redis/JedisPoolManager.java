@@ -23,44 +23,233 @@
  */
 package io.jenkins.plugins.redis;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisExhaustedPoolException;
 import redis.clients.jedis.exceptions.JedisException;
 
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Singleton Responsible for managing {@link JedisPool}. Creates the connection with Redis and manages resources.
+ *
+ * Connections are borrowed from one of two pools, so that background work cannot take up the connections needed by
+ * builds. The pool is selected per thread, see {@link #withPool}, so that the saves and deletes made by a background
+ * task, such as the cleanup, also use the background pool.
  */
 public enum JedisPoolManager {
 
     INSTANCE;
 
-    private volatile JedisPool jedisPool;
+    /**
+     * Connection pools, each with its own size and socket timeout.
+     */
+    enum Pool {
+        /**
+         * Saves, loads and deletes made by builds and the user interface.
+         */
+        INTERACTIVE,
+        /**
+         * Cleanup, key migration, indexing, diagnostics, spool replay, import, export and restore.
+         */
+        BACKGROUND
+    }
+
+    private static final ThreadLocal<Pool> CURRENT_POOL = ThreadLocal.withInitial(() -> Pool.INTERACTIVE);
+
+    private volatile Map<Pool, JedisPool> jedisPools;
+    private final Map<Pool, Integer> poolSizes = new ConcurrentHashMap<>();
+    private volatile CircuitBreaker circuitBreaker;
+    private final Map<KeyScheme, Boolean> keyMigrationPending = new ConcurrentHashMap<>();
+    private volatile Boolean scriptingAvailable;
 
     void createJedisPoolFromConfig(RedisFingerprintStorage redisFingerprintStorage) {
-        createJedisPool(redisFingerprintStorage.getHost(), redisFingerprintStorage.getPort(),
-                redisFingerprintStorage.getConnectionTimeout(), redisFingerprintStorage.getSocketTimeout(),
-                redisFingerprintStorage.getUsername(), redisFingerprintStorage.getPassword(),
-                redisFingerprintStorage.getDatabase(), redisFingerprintStorage.getSsl());
+        createCircuitBreakerFromConfig(redisFingerprintStorage);
+        resetKeyMigrationPending();
+        scriptingAvailable = null;
+        JobNameDictionary.INSTANCE.clear();
+        SaveDigestCache.INSTANCE.clear();
+        FingerprintVersions.INSTANCE.clear();
+        Map<Pool, JedisPool> pools = new EnumMap<>(Pool.class);
+        pools.put(Pool.INTERACTIVE, createJedisPool(redisFingerprintStorage, "Jenkins",
+                redisFingerprintStorage.getPoolSize(), redisFingerprintStorage.getSocketTimeout()));
+        pools.put(Pool.BACKGROUND, createJedisPool(redisFingerprintStorage, "Jenkins-background",
+                redisFingerprintStorage.getBackgroundPoolSize(), redisFingerprintStorage.getBackgroundSocketTimeout()));
+        poolSizes.put(Pool.INTERACTIVE, redisFingerprintStorage.getPoolSize());
+        poolSizes.put(Pool.BACKGROUND, redisFingerprintStorage.getBackgroundPoolSize());
+        replaceJedisPools(pools);
     }
 
-    private synchronized void createJedisPool(
-            String host, int port, int connectionTimeout, int socketTimeout, String username, String password,
-            int database, boolean ssl) {
+    private static JedisPool createJedisPool(RedisFingerprintStorage redisFingerprintStorage, String clientName,
+                                             int size, int socketTimeout) {
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(size);
+        config.setMaxIdle(size);
+        return new JedisPool(config, redisFingerprintStorage.getHost(), redisFingerprintStorage.getPort(),
+                redisFingerprintStorage.getConnectionTimeout(), socketTimeout, redisFingerprintStorage.getUsername(),
+                redisFingerprintStorage.getPassword(), redisFingerprintStorage.getDatabase(), clientName,
+                redisFingerprintStorage.getSsl());
+    }
 
-        if (jedisPool != null) {
-            jedisPool.close();
+    private synchronized void replaceJedisPools(Map<Pool, JedisPool> pools) {
+        Map<Pool, JedisPool> previousPools = jedisPools;
+        jedisPools = pools;
+        if (previousPools != null) {
+            for (JedisPool jedisPool : previousPools.values()) {
+                jedisPool.close();
+            }
         }
-        jedisPool = new JedisPool(new JedisPoolConfig(), host, port, connectionTimeout, socketTimeout, username,
-                password, database, "Jenkins", ssl);
     }
 
+    void createCircuitBreakerFromConfig(RedisFingerprintStorage redisFingerprintStorage) {
+        circuitBreaker = new CircuitBreaker(redisFingerprintStorage.getCircuitBreakerEnabled(),
+                redisFingerprintStorage.getCircuitBreakerFailureRateThreshold(),
+                redisFingerprintStorage.getCircuitBreakerWaitDuration());
+    }
+
+    /**
+     * Borrows a {@link Jedis} from the pool selected for the current thread.
+     */
     @NonNull Jedis getJedis(RedisFingerprintStorage redisFingerprintStorage) throws JedisException {
-        if (jedisPool == null) {
+        if (jedisPools == null) {
             createJedisPoolFromConfig(redisFingerprintStorage);
         }
-        return jedisPool.getResource();
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            Jedis jedis = jedisPools.get(CURRENT_POOL.get()).getResource();
+            succeeded = true;
+            return jedis;
+        } finally {
+            StorageMetrics.INSTANCE.record(StorageMetrics.Operation.BORROW, start, succeeded);
+            OperationTrace.addPoolWait(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the pool selected for the current thread.
+     */
+    @NonNull Pool getCurrentPool() {
+        return CURRENT_POOL.get();
+    }
+
+    @CheckForNull JedisPool getJedisPool(Pool pool) {
+        Map<Pool, JedisPool> pools = jedisPools;
+        return pools == null ? null : pools.get(pool);
+    }
+
+    int getPoolSize(Pool pool) {
+        return poolSizes.getOrDefault(pool, 0);
+    }
+
+    /**
+     * Runs the given call with the connections borrowed by the current thread taken from the given pool.
+     */
+    <T, E extends Exception> T withPool(Pool pool, PooledCall<T, E> call) throws E {
+        Pool previousPool = CURRENT_POOL.get();
+        CURRENT_POOL.set(pool);
+        try {
+            return call.call();
+        } finally {
+            CURRENT_POOL.set(previousPool);
+        }
+    }
+
+    @NonNull CircuitBreaker getCircuitBreaker(RedisFingerprintStorage redisFingerprintStorage) {
+        if (circuitBreaker == null) {
+            createCircuitBreakerFromConfig(redisFingerprintStorage);
+        }
+        return circuitBreaker;
+    }
+
+    /**
+     * Returns whether fingerprints stored with another key scheme than the given one remain to be migrated in the
+     * current Redis database, or null if it is not known yet.
+     */
+    @CheckForNull Boolean isKeyMigrationPending(KeyScheme keyScheme) {
+        return keyMigrationPending.get(keyScheme);
+    }
+
+    void setKeyMigrationPending(KeyScheme keyScheme, boolean pending) {
+        keyMigrationPending.put(keyScheme, pending);
+    }
+
+    void resetKeyMigrationPending() {
+        keyMigrationPending.clear();
+    }
+
+    /**
+     * Returns whether Lua scripts can be run by the current Redis server, see {@link MutationScript}, or null if it is
+     * not known yet.
+     */
+    @CheckForNull Boolean isScriptingAvailable() {
+        return scriptingAvailable;
+    }
+
+    void setScriptingAvailable(boolean scriptingAvailable) {
+        this.scriptingAvailable = scriptingAvailable;
+    }
+
+    /**
+     * Borrows a {@link Jedis} from the pool and runs the given callback with it, guarded by the {@link CircuitBreaker}.
+     * Connection failures, an exhausted pool and {@link Error}s count against the circuit breaker, while errors
+     * replied by Redis do not. The permission is settled in every case, so that a half open circuit breaker does not
+     * run out of permissions.
+     */
+    <T> T withJedis(RedisFingerprintStorage redisFingerprintStorage, JedisCallback<T> callback)
+            throws JedisException {
+        CircuitBreaker breaker = getCircuitBreaker(redisFingerprintStorage);
+        if (!breaker.tryAcquirePermission()) {
+            throw new CircuitBreakerOpenException();
+        }
+        boolean failed = true;
+        try {
+            T result;
+            try (Jedis jedis = getJedis(redisFingerprintStorage)) {
+                long start = System.nanoTime();
+                try {
+                    result = callback.doWithJedis(jedis);
+                } finally {
+                    OperationTrace.addRedisTime(System.nanoTime() - start);
+                }
+            }
+            failed = false;
+            return result;
+        } catch (RuntimeException e) {
+            failed = e instanceof JedisConnectionException || e instanceof JedisExhaustedPoolException;
+            throw e;
+        } finally {
+            if (failed) {
+                breaker.onError();
+            } else {
+                breaker.onSuccess();
+            }
+        }
+    }
+
+    /**
+     * Borrows a {@link Jedis} from the given pool and runs the given callback with it, see
+     * {@link #withJedis(RedisFingerprintStorage, JedisCallback)}.
+     */
+    <T> T withJedis(RedisFingerprintStorage redisFingerprintStorage, Pool pool, JedisCallback<T> callback)
+            throws JedisException {
+        return withPool(pool, () -> withJedis(redisFingerprintStorage, callback));
+    }
+
+    @FunctionalInterface
+    interface JedisCallback<T> {
+        T doWithJedis(Jedis jedis) throws JedisException;
+    }
+
+    @FunctionalInterface
+    interface PooledCall<T, E extends Exception> {
+        T call() throws E;
     }
 
 }
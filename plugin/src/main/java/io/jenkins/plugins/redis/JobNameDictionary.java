@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.SystemProperties;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Singleton interning the full names of jobs referenced by fingerprints into small integer ids, stored in Redis in
+ * a name to id hash and an id to name hash per instance, and cached locally.
+ *
+ * Ids are never reused. The id to name mapping is written before the name to id mapping, so that an id is always
+ * resolvable once a fingerprint may reference it.
+ */
+public enum JobNameDictionary {
+
+    INSTANCE;
+
+    static final int MAX_ENTRIES = SystemProperties.getInteger(
+            JobNameDictionary.class.getName() + ".maxEntries", 10000);
+
+    private final Map<String, String> idsByName = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private final Map<String, String> namesById = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Returns the id of the given job name, assigning it one if needed.
+     */
+    @NonNull String intern(RedisFingerprintStorage redisFingerprintStorage, @NonNull String name)
+            throws JedisException {
+        synchronized (this) {
+            String id = idsByName.get(name);
+            if (id != null) {
+                return id;
+            }
+        }
+        String prefix = getKeyPrefix(redisFingerprintStorage);
+        String id = JedisPoolManager.INSTANCE.withJedis(redisFingerprintStorage, jedis -> {
+            String existingId = jedis.hget(prefix + "names", name);
+            if (existingId != null) {
+                return existingId;
+            }
+            String newId = Long.toString(jedis.incr(prefix + "sequence"));
+            jedis.hset(prefix + "ids", newId, name);
+            if (jedis.hsetnx(prefix + "names", name, newId) == 0) {
+                return jedis.hget(prefix + "names", name);
+            }
+            return newId;
+        });
+        cache(name, id);
+        return id;
+    }
+
+    /**
+     * Returns the job name with the given id.
+     *
+     * @throws IllegalArgumentException if the id is unknown
+     */
+    @NonNull String lookup(RedisFingerprintStorage redisFingerprintStorage, @NonNull String id)
+            throws JedisException {
+        synchronized (this) {
+            String name = namesById.get(id);
+            if (name != null) {
+                return name;
+            }
+        }
+        String prefix = getKeyPrefix(redisFingerprintStorage);
+        String name = JedisPoolManager.INSTANCE.withJedis(redisFingerprintStorage,
+                jedis -> jedis.hget(prefix + "ids", id));
+        if (name == null) {
+            throw new IllegalArgumentException("Unknown job name id: " + id);
+        }
+        synchronized (this) {
+            namesById.put(id, name);
+        }
+        return name;
+    }
+
+    /**
+     * Makes the id of a renamed job resolve to its new name, so that the fingerprints referencing it follow the
+     * rename without being rewritten. If the new name already has its own id, both ids resolve to the new name.
+     */
+    void rename(RedisFingerprintStorage redisFingerprintStorage, @NonNull String oldName, @NonNull String newName)
+            throws JedisException {
+        String prefix = getKeyPrefix(redisFingerprintStorage);
+        JedisPoolManager.INSTANCE.withJedis(redisFingerprintStorage, jedis -> {
+            String id = jedis.hget(prefix + "names", oldName);
+            if (id == null) {
+                return null;
+            }
+            Transaction transaction = jedis.multi();
+            transaction.hset(prefix + "ids", id, newName);
+            transaction.hdel(prefix + "names", oldName);
+            transaction.hsetnx(prefix + "names", newName, id);
+            return transaction.exec();
+        });
+        synchronized (this) {
+            idsByName.remove(oldName);
+            idsByName.remove(newName);
+            namesById.values().removeIf(oldName::equals);
+        }
+    }
+
+    private synchronized void cache(String name, String id) {
+        idsByName.put(name, id);
+        namesById.put(id, name);
+    }
+
+    synchronized void clear() {
+        idsByName.clear();
+        namesById.clear();
+    }
+
+    private static String getKeyPrefix(RedisFingerprintStorage redisFingerprintStorage) {
+        return redisFingerprintStorage.getInstanceId() + ":dictionary:";
+    }
+
+}
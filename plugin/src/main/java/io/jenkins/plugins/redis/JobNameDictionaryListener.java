@@ -0,0 +1,61 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.listeners.ItemListener;
+import jenkins.fingerprints.FingerprintStorage;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the {@link JobNameDictionary} in sync with renamed and moved jobs.
+ */
+@Extension
+public class JobNameDictionaryListener extends ItemListener {
+
+    private static final Logger LOGGER = Logger.getLogger(JobNameDictionaryListener.class.getName());
+
+    @Override
+    public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+        if (!(item instanceof Job)) {
+            return;
+        }
+        FingerprintStorage fingerprintStorage = FingerprintStorage.get();
+        if (!(fingerprintStorage instanceof RedisFingerprintStorage)) {
+            return;
+        }
+        try {
+            JobNameDictionary.INSTANCE.rename((RedisFingerprintStorage) fingerprintStorage, oldFullName, newFullName);
+        } catch (JedisException e) {
+            LOGGER.log(Level.WARNING, "Failed to rename job " + oldFullName + " to " + newFullName
+                    + " in the job name dictionary", e);
+        }
+    }
+
+}
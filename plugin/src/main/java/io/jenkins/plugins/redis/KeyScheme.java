@@ -0,0 +1,475 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.MultiKeyPipelineBase;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.PipelineBase;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.params.SetParams;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * How fingerprints, and the set indexing the fingerprints of an instance, are laid out in Redis.
+ */
+public enum KeyScheme {
+
+    /**
+     * The hexadecimal instance id followed by the hexadecimal fingerprint id, with hexadecimal set members.
+     */
+    LEGACY("Legacy (hexadecimal)") {
+        @Override
+        byte[] getFingerprintKey(String instanceId, String id) {
+            return (instanceId + id).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        byte[] getSetKey(String instanceId) {
+            return instanceId.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        byte[] getMember(String id) {
+            return id.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        ScanPage scan(Jedis jedis, String instanceId, String cursor, int count) {
+            return scanMembers(jedis, getSetKey(instanceId), cursor, count,
+                    member -> new String(member, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        List<String> sample(Jedis jedis, String instanceId, int count) {
+            return sampleMembers(jedis, getSetKey(instanceId), count,
+                    member -> new String(member, StandardCharsets.UTF_8));
+        }
+    },
+
+    /**
+     * A one byte key type and the first {@link #NAMESPACE_LENGTH} bytes of the instance id digest, followed by the raw
+     * fingerprint digest for fingerprint keys. Set members are the raw fingerprint digests.
+     */
+    COMPACT("Compact (binary)") {
+        @Override
+        byte[] getFingerprintKey(String instanceId, String id) {
+            return getKey('f', instanceId, getMember(id));
+        }
+
+        @Override
+        byte[] getSetKey(String instanceId) {
+            return getKey('s', instanceId, new byte[0]);
+        }
+
+        @Override
+        byte[] getMember(String id) {
+            return getDigest(id);
+        }
+
+        @Override
+        ScanPage scan(Jedis jedis, String instanceId, String cursor, int count) {
+            return scanMembers(jedis, getSetKey(instanceId), cursor, count, Util::toHexString);
+        }
+
+        @Override
+        List<String> sample(Jedis jedis, String instanceId, int count) {
+            return sampleMembers(jedis, getSetKey(instanceId), count, Util::toHexString);
+        }
+    },
+
+    /**
+     * Fingerprints grouped by the first {@link #BUCKET_LENGTH} bytes of their digest into hashes, keyed like
+     * {@link #COMPACT} fingerprint keys, with the rest of the digest as field. Small hashes are stored by Redis in a
+     * compact encoding, saving the overhead of a top level key per fingerprint. The set of an instance indexes its
+     * buckets rather than its fingerprints.
+     */
+    BUCKETED("Compact bucketed hashes") {
+        @Override
+        byte[] getFingerprintKey(String instanceId, String id) {
+            return getKey('h', instanceId, getMember(id));
+        }
+
+        @Override
+        byte[] getSetKey(String instanceId) {
+            return getKey('b', instanceId, new byte[0]);
+        }
+
+        @Override
+        byte[] getMember(String id) {
+            return Arrays.copyOf(getDigest(id), BUCKET_LENGTH);
+        }
+
+        private byte[] getField(String id) {
+            byte[] digest = getDigest(id);
+            return Arrays.copyOfRange(digest, BUCKET_LENGTH, digest.length);
+        }
+
+        @Override
+        Response<?> queueSave(MultiKeyPipelineBase pipeline, String instanceId, String id, byte[] fingerprintBlob,
+                              boolean ifAbsent) {
+            Response<Long> response = ifAbsent
+                    ? pipeline.hsetnx(getFingerprintKey(instanceId, id), getField(id), fingerprintBlob)
+                    : pipeline.hset(getFingerprintKey(instanceId, id), getField(id), fingerprintBlob);
+            pipeline.sadd(getSetKey(instanceId), getMember(id));
+            return response;
+        }
+
+        /**
+         * Empty buckets are left in the set of buckets of the instance, and removed from it when scanned.
+         */
+        @Override
+        void queueDelete(MultiKeyPipelineBase pipeline, String instanceId, String id) {
+            pipeline.hdel(getFingerprintKey(instanceId, id), getField(id));
+        }
+
+        @Override
+        Response<byte[]> queueGet(PipelineBase pipeline, String instanceId, String id) {
+            return pipeline.hget(getFingerprintKey(instanceId, id), getField(id));
+        }
+
+        @Override
+        byte[] get(Jedis jedis, String instanceId, String id) {
+            return jedis.hget(getFingerprintKey(instanceId, id), getField(id));
+        }
+
+        @Override
+        List<byte[]> getAll(Jedis jedis, String instanceId, List<String> ids) {
+            Map<ByteArrayKey, List<Integer>> indexesByBucket = new LinkedHashMap<>();
+            for (int i = 0; i < ids.size(); i++) {
+                indexesByBucket.computeIfAbsent(new ByteArrayKey(getFingerprintKey(instanceId, ids.get(i))),
+                        bucket -> new ArrayList<>()).add(i);
+            }
+            Pipeline pipeline = jedis.pipelined();
+            Map<ByteArrayKey, Response<List<byte[]>>> responses = new LinkedHashMap<>();
+            for (Map.Entry<ByteArrayKey, List<Integer>> bucket : indexesByBucket.entrySet()) {
+                byte[][] fields = new byte[bucket.getValue().size()][];
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = getField(ids.get(bucket.getValue().get(i)));
+                }
+                responses.put(bucket.getKey(), pipeline.hmget(bucket.getKey().bytes, fields));
+            }
+            pipeline.sync();
+            byte[][] fingerprintBlobs = new byte[ids.size()][];
+            for (Map.Entry<ByteArrayKey, List<Integer>> bucket : indexesByBucket.entrySet()) {
+                List<byte[]> bucketBlobs = responses.get(bucket.getKey()).get();
+                for (int i = 0; i < bucketBlobs.size(); i++) {
+                    fingerprintBlobs[bucket.getValue().get(i)] = bucketBlobs.get(i);
+                }
+            }
+            return Arrays.asList(fingerprintBlobs);
+        }
+
+        @Override
+        List<byte[]> getWatchedKeys(String instanceId, List<String> ids) {
+            Set<ByteArrayKey> buckets = new LinkedHashSet<>();
+            for (String id : ids) {
+                buckets.add(new ByteArrayKey(getFingerprintKey(instanceId, id)));
+            }
+            List<byte[]> watchedKeys = new ArrayList<>();
+            for (ByteArrayKey bucket : buckets) {
+                watchedKeys.add(bucket.bytes);
+            }
+            return watchedKeys;
+        }
+
+        /**
+         * Scans the set of buckets of the instance, and lists the fingerprints of each bucket. Buckets found empty are
+         * returned with the page, to be removed from the set once the scan is done.
+         */
+        @Override
+        ScanPage scan(Jedis jedis, String instanceId, String cursor, int count) {
+            byte[] setKey = getSetKey(instanceId);
+            ScanParams scanParams = new ScanParams().count(Math.max(1, count / FINGERPRINTS_PER_BUCKET));
+            ScanResult<byte[]> scanResult = jedis.sscan(setKey, cursor.getBytes(StandardCharsets.UTF_8), scanParams);
+            List<byte[]> emptyBuckets = new ArrayList<>();
+            List<String> ids = getIds(jedis, instanceId, scanResult.getResult(), emptyBuckets);
+            return new ScanPage(scanResult.getCursor(), ids, setKey, emptyBuckets);
+        }
+
+        /**
+         * Samples whole buckets, so that all the fingerprints sharing a key are sampled together.
+         */
+        @Override
+        List<String> sample(Jedis jedis, String instanceId, int count) {
+            List<byte[]> buckets = jedis.srandmember(getSetKey(instanceId),
+                    Math.max(1, count / FINGERPRINTS_PER_BUCKET));
+            return getIds(jedis, instanceId, buckets, new ArrayList<>());
+        }
+
+        /**
+         * Returns the ids of the fingerprints of the given buckets, adding the buckets found empty to the given list.
+         */
+        private List<String> getIds(Jedis jedis, String instanceId, List<byte[]> buckets, List<byte[]> emptyBuckets) {
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<Set<byte[]>>> responses = new ArrayList<>();
+            for (byte[] bucket : buckets) {
+                responses.add(pipeline.hkeys(getKey('h', instanceId, bucket)));
+            }
+            pipeline.sync();
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < responses.size(); i++) {
+                byte[] bucket = buckets.get(i);
+                Set<byte[]> fields = responses.get(i).get();
+                if (fields.isEmpty()) {
+                    emptyBuckets.add(bucket);
+                }
+                for (byte[] field : fields) {
+                    byte[] digest = Arrays.copyOf(bucket, BUCKET_LENGTH + field.length);
+                    System.arraycopy(field, 0, digest, BUCKET_LENGTH, field.length);
+                    ids.add(Util.toHexString(digest));
+                }
+            }
+            return ids;
+        }
+    };
+
+    /**
+     * Number of bytes of the instance id digest used to tell apart the keys of instances sharing a Redis database.
+     */
+    static final int NAMESPACE_LENGTH = 8;
+    /**
+     * Number of bytes of the fingerprint digest selecting its bucket. With 65536 buckets, up to about 8 million
+     * fingerprints per instance fit in buckets of at most 128 fingerprints, the default limit of the compact hash
+     * encoding of Redis.
+     */
+    static final int BUCKET_LENGTH = 2;
+    private static final int FINGERPRINTS_PER_BUCKET = 16;
+    private static final int DIGEST_LENGTH = 16;
+
+    private final String displayName;
+
+    KeyScheme(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public @NonNull String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Returns the key holding the given fingerprint.
+     */
+    abstract byte[] getFingerprintKey(String instanceId, String id);
+
+    /**
+     * Returns the key of the set indexing the fingerprints of the given instance, which only exists if some
+     * fingerprints are stored with this key scheme.
+     */
+    abstract byte[] getSetKey(String instanceId);
+
+    /**
+     * Returns the member of the set of the instance indexing the given fingerprint.
+     */
+    abstract byte[] getMember(String id);
+
+    /**
+     * Queues the commands saving the given fingerprint, or only saving it if not stored yet. Returns the response
+     * of the command writing the fingerprint, see {@link #isSaved(Response)}.
+     */
+    Response<?> queueSave(MultiKeyPipelineBase pipeline, String instanceId, String id, byte[] fingerprintBlob,
+                          boolean ifAbsent) {
+        Response<String> response = ifAbsent
+                ? pipeline.set(getFingerprintKey(instanceId, id), fingerprintBlob, SetParams.setParams().nx())
+                : pipeline.set(getFingerprintKey(instanceId, id), fingerprintBlob);
+        pipeline.sadd(getSetKey(instanceId), getMember(id));
+        return response;
+    }
+
+    /**
+     * Returns true if a fingerprint queued to be saved only if absent was written, rather than left untouched because
+     * it was already stored.
+     */
+    static boolean isSaved(Response<?> response) {
+        Object reply = response.get();
+        return "OK".equals(reply) || Long.valueOf(1).equals(reply);
+    }
+
+    void queueDelete(MultiKeyPipelineBase pipeline, String instanceId, String id) {
+        pipeline.del(getFingerprintKey(instanceId, id));
+        pipeline.srem(getSetKey(instanceId), getMember(id));
+    }
+
+    Response<byte[]> queueGet(PipelineBase pipeline, String instanceId, String id) {
+        return pipeline.get(getFingerprintKey(instanceId, id));
+    }
+
+    byte[] get(Jedis jedis, String instanceId, String id) {
+        return jedis.get(getFingerprintKey(instanceId, id));
+    }
+
+    /**
+     * Returns the blobs of the given fingerprints, in the same order, with null for missing fingerprints.
+     */
+    List<byte[]> getAll(Jedis jedis, String instanceId, List<String> ids) {
+        return jedis.mget(getWatchedKeys(instanceId, ids).toArray(new byte[ids.size()][]));
+    }
+
+    /**
+     * Returns the keys to watch to detect concurrent writes of the given fingerprints.
+     */
+    List<byte[]> getWatchedKeys(String instanceId, List<String> ids) {
+        List<byte[]> fingerprintKeys = new ArrayList<>();
+        for (String id : ids) {
+            fingerprintKeys.add(getFingerprintKey(instanceId, id));
+        }
+        return fingerprintKeys;
+    }
+
+    /**
+     * Incrementally iterates over the ids of the fingerprints of the given instance. The scan only reads, so that it
+     * can be retried.
+     */
+    abstract ScanPage scan(Jedis jedis, String instanceId, String cursor, int count);
+
+    /**
+     * Returns the ids of a random sample of about the given number of fingerprints of the given instance. Like
+     * SRANDMEMBER, which picks the sampled set members, it runs in time proportional to the sample size, whatever the
+     * number of stored fingerprints.
+     */
+    abstract List<String> sample(Jedis jedis, String instanceId, int count);
+
+    /**
+     * Scans a set with one member per fingerprint, with the given way of reading fingerprint ids from set members.
+     */
+    private static ScanPage scanMembers(Jedis jedis, byte[] setKey, String cursor, int count,
+                                        Function<byte[], String> toId) {
+        ScanResult<byte[]> scanResult = jedis.sscan(setKey, cursor.getBytes(StandardCharsets.UTF_8),
+                new ScanParams().count(count));
+        List<String> ids = new ArrayList<>();
+        for (byte[] member : scanResult.getResult()) {
+            ids.add(toId.apply(member));
+        }
+        return new ScanPage(scanResult.getCursor(), ids, setKey, Collections.emptyList());
+    }
+
+    private static List<String> sampleMembers(Jedis jedis, byte[] setKey, int count, Function<byte[], String> toId) {
+        List<String> ids = new ArrayList<>();
+        for (byte[] member : jedis.srandmember(setKey, count)) {
+            ids.add(toId.apply(member));
+        }
+        return ids;
+    }
+
+    static byte[] getKey(char type, String instanceId, byte[] suffix) {
+        byte[] key = new byte[1 + NAMESPACE_LENGTH + suffix.length];
+        key[0] = (byte) type;
+        System.arraycopy(Util.fromHexString(instanceId.substring(0, 2 * NAMESPACE_LENGTH)), 0, key, 1,
+                NAMESPACE_LENGTH);
+        System.arraycopy(suffix, 0, key, 1 + NAMESPACE_LENGTH, suffix.length);
+        return key;
+    }
+
+    static byte[] getDigest(String id) {
+        if (id.length() != 2 * DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Not a fingerprint id: " + id);
+        }
+        return Util.fromHexString(id);
+    }
+
+    /**
+     * A page of the ids of the fingerprints of an instance, see {@link #scan}.
+     */
+    static final class ScanPage {
+
+        private final String cursor;
+        private final List<String> ids;
+        private final byte[] setKey;
+        private final List<byte[]> emptyBuckets;
+
+        ScanPage(String cursor, List<String> ids, byte[] setKey, List<byte[]> emptyBuckets) {
+            this.cursor = cursor;
+            this.ids = ids;
+            this.setKey = setKey;
+            this.emptyBuckets = emptyBuckets;
+        }
+
+        String getCursor() {
+            return cursor;
+        }
+
+        List<String> getIds() {
+            return ids;
+        }
+
+        boolean hasEmptyBuckets() {
+            return !emptyBuckets.isEmpty();
+        }
+
+        /**
+         * Removes the buckets found empty by the scan from the set of the instance, unless written to since. Unlike
+         * the scan, it must not be retried, since a bucket may be written to between the attempts.
+         */
+        void removeEmptyBuckets(Jedis jedis, String instanceId) {
+            for (byte[] bucket : emptyBuckets) {
+                byte[] bucketKey = getKey('h', instanceId, bucket);
+                jedis.watch(bucketKey);
+                if (jedis.exists(bucketKey)) {
+                    jedis.unwatch();
+                    continue;
+                }
+                Transaction transaction = jedis.multi();
+                transaction.srem(setKey, bucket);
+                transaction.exec();
+            }
+        }
+
+    }
+
+    private static final class ByteArrayKey {
+
+        private final byte[] bytes;
+
+        ByteArrayKey(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ByteArrayKey && Arrays.equals(bytes, ((ByteArrayKey) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bytes);
+        }
+
+    }
+
+}
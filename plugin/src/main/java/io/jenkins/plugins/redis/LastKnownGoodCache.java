@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import jenkins.fingerprints.FingerprintStorage;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Singleton holding the last known good serialized form of recently used fingerprints, so that loads can be served
+ * while the {@link CircuitBreaker} is open. Fingerprints are held as plain XML, so that they can be decoded without
+ * the job name dictionary stored in Redis.
+ *
+ * At startup, the most recently saved fingerprints are preloaded from the {@link RecencyIndex}, so that they can be
+ * served even if the circuit breaker opens before they are used.
+ */
+public enum LastKnownGoodCache {
+
+    INSTANCE;
+
+    static final int MAX_ENTRIES = SystemProperties.getInteger(
+            LastKnownGoodCache.class.getName() + ".maxEntries", 10000);
+    static final int PRELOAD_ENTRIES = SystemProperties.getInteger(
+            LastKnownGoodCache.class.getName() + ".preloadEntries", 1000);
+
+    private static final Logger LOGGER = Logger.getLogger(LastKnownGoodCache.class.getName());
+
+    private final Map<String, String> blobs = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    synchronized void put(@NonNull String id, @NonNull String blob) {
+        blobs.put(id, blob);
+    }
+
+    synchronized void putIfAbsent(@NonNull String id, @NonNull String blob) {
+        blobs.putIfAbsent(id, blob);
+    }
+
+    synchronized @CheckForNull String get(@NonNull String id) {
+        return blobs.get(id);
+    }
+
+    synchronized void remove(@NonNull String id) {
+        blobs.remove(id);
+    }
+
+    synchronized void clear() {
+        blobs.clear();
+    }
+
+    @Initializer(after = InitMilestone.JOB_CONFIG_ADAPTED)
+    public static void preload() {
+        FingerprintStorage fingerprintStorage = FingerprintStorage.get();
+        if (!(fingerprintStorage instanceof RedisFingerprintStorage) || PRELOAD_ENTRIES <= 0) {
+            return;
+        }
+        RedisFingerprintStorage redisFingerprintStorage = (RedisFingerprintStorage) fingerprintStorage;
+        if (!redisFingerprintStorage.getServeStaleOnOpenCircuit()) {
+            return;
+        }
+        Timer.get().submit(() -> {
+            try {
+                int preloaded = redisFingerprintStorage.preloadRecentFingerprints(Math.min(PRELOAD_ENTRIES,
+                        MAX_ENTRIES));
+                LOGGER.log(Level.FINE, "Preloaded {0} recently saved fingerprints", preloaded);
+            } catch (JedisException e) {
+                LOGGER.log(Level.WARNING, "Failed to preload recently saved fingerprints", e);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latency of the most recent calls to estimate their 95th percentile.
+ */
+class LatencyTracker {
+
+    static final int MIN_SAMPLES = 20;
+    private static final int CAPACITY = 1024;
+    private static final int RECOMPUTE_INTERVAL = 64;
+
+    private final long[] samples = new long[CAPACITY];
+    private int count;
+    private int nextIndex;
+    private int recordedSinceComputed;
+    private long p95 = -1;
+
+    synchronized void record(long nanos) {
+        samples[nextIndex] = nanos;
+        nextIndex = (nextIndex + 1) % CAPACITY;
+        if (count < CAPACITY) {
+            count++;
+        }
+        recordedSinceComputed++;
+    }
+
+    /**
+     * Returns the 95th percentile of the recorded latencies in nanoseconds, or -1 if too few were recorded.
+     */
+    synchronized long getP95() {
+        if (count < MIN_SAMPLES) {
+            return -1;
+        }
+        if (p95 < 0 || recordedSinceComputed >= RECOMPUTE_INTERVAL) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            p95 = sorted[(int) Math.ceil(count * 0.95) - 1];
+            recordedSinceComputed = 0;
+        }
+        return p95;
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coalesces the loads of single fingerprints made concurrently into batches, read from Redis by a single pipelined
+ * call, when the loads are coalesced, see {@link RedisFingerprintStorage#setCoalesceLoads(boolean)}.
+ *
+ * Loads are queued and the caller waits for its fingerprint. A background task drains the queue into a batch of up
+ * to {@link #MAX_BATCH_SIZE} distinct fingerprints, reads it, and hands the results over to the waiting callers.
+ * Loads queued while a batch is being read form the next batch, so that batches grow with the concurrency and the
+ * latency of Redis, while a lone load is read right away. A failed batch fails every load it holds.
+ *
+ * A batch is read with the pool and the {@link OperationTrace} of its first load, see {@link OperationContext}, so the
+ * other loads of the batch only see the time spent reading it in their duration. Callers wait for at most
+ * {@link #TIMEOUT_SECONDS}.
+ */
+final class LoadMultiplexer {
+
+    static final int MAX_BATCH_SIZE = SystemProperties.getInteger(
+            LoadMultiplexer.class.getName() + ".maxBatchSize", 100);
+    static final int TIMEOUT_SECONDS = SystemProperties.getInteger(
+            LoadMultiplexer.class.getName() + ".timeoutSeconds", 60);
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(
+            new NamingThreadFactory(new DaemonThreadFactory(), "RedisFingerprintStorage.multiplexer"));
+
+    /**
+     * Reads the serialized fingerprints with the given ids, in the same order, with null for missing fingerprints.
+     */
+    interface BatchLoader {
+        @NonNull List<String> load(@NonNull List<String> ids) throws JedisException;
+    }
+
+    private static final class Load {
+
+        final String id;
+        final OperationContext context = OperationContext.capture();
+        final CompletableFuture<String> result = new CompletableFuture<>();
+
+        Load(String id) {
+            this.id = id;
+        }
+
+    }
+
+    private final BatchLoader loader;
+    private final ConcurrentLinkedQueue<Load> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    LoadMultiplexer(@NonNull BatchLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Number of loads waiting for a batch to be read.
+     */
+    int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the serialized fingerprint with the given id, or null if it is missing, once read as part of a batch.
+     */
+    @CheckForNull String load(@NonNull String id) throws JedisException {
+        Load load = new Load(id);
+        queue.add(load);
+        if (draining.compareAndSet(false, true)) {
+            EXECUTOR.execute(this::drain);
+        }
+        try {
+            return load.result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JedisException("Interrupted while loading fingerprint " + id, e);
+        } catch (TimeoutException e) {
+            queue.remove(load);
+            throw new JedisException("Timed out after " + TIMEOUT_SECONDS + " s loading fingerprint " + id, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new JedisException("Failed to load fingerprint " + id, e.getCause());
+        }
+    }
+
+    private void drain() {
+        boolean drained = false;
+        try {
+            while (true) {
+                Map<String, List<Load>> batch = new LinkedHashMap<>();
+                Load load;
+                while (batch.size() < MAX_BATCH_SIZE && (load = queue.poll()) != null) {
+                    batch.computeIfAbsent(load.id, id -> new ArrayList<>()).add(load);
+                }
+                if (batch.isEmpty()) {
+                    draining.set(false);
+                    drained = true;
+                    // A load queued after the last poll and before the flag was cleared did not start a task.
+                    if (queue.isEmpty() || !draining.compareAndSet(false, true)) {
+                        return;
+                    }
+                    drained = false;
+                    continue;
+                }
+                read(batch);
+            }
+        } finally {
+            if (!drained) {
+                // An error escaped, fail the queued loads rather than leaving them to a task which is not running.
+                Load load;
+                while ((load = queue.poll()) != null) {
+                    load.result.completeExceptionally(new JedisException("Failed to load fingerprint " + load.id));
+                }
+                draining.set(false);
+                if (!queue.isEmpty() && draining.compareAndSet(false, true)) {
+                    EXECUTOR.execute(this::drain);
+                }
+            }
+        }
+    }
+
+    private void read(Map<String, List<Load>> batch) {
+        List<String> ids = new ArrayList<>(batch.keySet());
+        List<String> fingerprintBlobs;
+        try {
+            OperationContext context = batch.values().iterator().next().get(0).context;
+            fingerprintBlobs = context.run(() -> loader.load(ids));
+        } catch (RuntimeException | Error e) {
+            for (List<Load> loads : batch.values()) {
+                for (Load load : loads) {
+                    load.result.completeExceptionally(e);
+                }
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            return;
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            for (Load load : batch.get(ids.get(i))) {
+                load.result.complete(fingerprintBlobs.get(i));
+            }
+        }
+    }
+
+}
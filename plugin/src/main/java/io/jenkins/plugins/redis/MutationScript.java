@@ -0,0 +1,291 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.Util;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.MultiKeyPipelineBase;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.commands.ProtocolCommand;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the writes of a fingerprint mutation atomically as a single request, with a Lua script executed by EVALSHA.
+ *
+ * The writes are queued on a pipeline whose client records the commands instead of sending them, so that they are the
+ * same whether they are run by the script or by a transaction. The script runs the recorded commands in turn, with the
+ * key of each command passed in KEYS. It is loaded on the first NOSCRIPT error, which Redis replies after a restart or
+ * a SCRIPT FLUSH. If scripting is disabled, as with some managed Redis services, mutations fall back to MULTI and EXEC.
+ *
+ * A second script compares the digest of a stored value with an expected one, so that unchanged saves can be skipped
+ * without transferring the value. A third one only runs a mutation if the digests of one or more stored values
+ * match, which makes it a compare-and-set on these values. Without scripting, the stored values are watched and read
+ * before the transaction.
+ */
+final class MutationScript {
+
+    private static final Logger LOGGER = Logger.getLogger(MutationScript.class.getName());
+
+    // ARGV holds the name and the number of arguments of each command, followed by its arguments, except its key.
+    static final String SCRIPT = "local a = 1\n"
+            + "for k = 1, #KEYS do\n"
+            + "  local argc = tonumber(ARGV[a + 1])\n"
+            + "  redis.call(ARGV[a], KEYS[k], unpack(ARGV, a + 2, a + 1 + argc))\n"
+            + "  a = a + 2 + argc\n"
+            + "end\n"
+            + "return #KEYS\n";
+    private static final byte[] SCRIPT_BYTES = SCRIPT.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SHA1 = sha1Hex(SCRIPT_BYTES).getBytes(StandardCharsets.US_ASCII);
+
+    // ARGV holds the read command as above, followed by the expected SHA-1 digest of the value it reads.
+    static final String DIGEST_SCRIPT = "local argc = tonumber(ARGV[2])\n"
+            + "local value = redis.call(ARGV[1], KEYS[1], unpack(ARGV, 3, 2 + argc))\n"
+            + "if value and redis.sha1hex(value) == ARGV[#ARGV] then\n"
+            + "  return 1\n"
+            + "end\n"
+            + "return 0\n";
+    private static final byte[] DIGEST_SCRIPT_BYTES = DIGEST_SCRIPT.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DIGEST_SHA1 = sha1Hex(DIGEST_SCRIPT_BYTES).getBytes(StandardCharsets.US_ASCII);
+
+    // ARGV[1] holds the number of checks. The first KEYS and ARGV hold the read command of each check followed by its
+    // expected digest, empty if the value is expected to be missing, then the mutation, as above. Returns the number
+    // of the first check failing, or 0 once the mutation ran.
+    static final String CHECKED_SCRIPT = "local checks = tonumber(ARGV[1])\n"
+            + "local a = 2\n"
+            + "for k = 1, checks do\n"
+            + "  local argc = tonumber(ARGV[a + 1])\n"
+            + "  local value = redis.call(ARGV[a], KEYS[k], unpack(ARGV, a + 2, a + 1 + argc))\n"
+            + "  if (value and redis.sha1hex(value) or '') ~= ARGV[a + 2 + argc] then\n"
+            + "    return k\n"
+            + "  end\n"
+            + "  a = a + 3 + argc\n"
+            + "end\n"
+            + "for k = checks + 1, #KEYS do\n"
+            + "  local argc = tonumber(ARGV[a + 1])\n"
+            + "  redis.call(ARGV[a], KEYS[k], unpack(ARGV, a + 2, a + 1 + argc))\n"
+            + "  a = a + 2 + argc\n"
+            + "end\n"
+            + "return 0\n";
+    private static final byte[] CHECKED_SCRIPT_BYTES = CHECKED_SCRIPT.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CHECKED_SHA1 = sha1Hex(CHECKED_SCRIPT_BYTES).getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Queues the writes of a mutation, or the single read of a digest check.
+     */
+    @FunctionalInterface
+    interface Mutation {
+        void queue(MultiKeyPipelineBase pipeline);
+    }
+
+    private MutationScript() {
+    }
+
+    static void run(Jedis jedis, Mutation mutation) {
+        RecordingClient client = record(mutation);
+        if (eval(jedis, SCRIPT_BYTES, SHA1, client.keys, client.args) == null) {
+            runTransaction(jedis, mutation);
+        }
+    }
+
+    /**
+     * Returns true if the value read by the given command has the given SHA-1 digest, without transferring it.
+     * Returns false if it differs, is missing, or if scripting is not available.
+     */
+    static boolean hasDigest(Jedis jedis, Mutation read, String sha1Hex) {
+        RecordingClient client = recordRead(read);
+        client.args.add(sha1Hex.getBytes(StandardCharsets.US_ASCII));
+        Object result = eval(jedis, DIGEST_SCRIPT_BYTES, DIGEST_SHA1, client.keys, client.args);
+        return Long.valueOf(1).equals(result);
+    }
+
+    /**
+     * Runs the given mutation only if the value read by the given command has the given SHA-1 digest, or is missing
+     * if the digest is null. Returns false without running it otherwise.
+     */
+    static boolean runIfDigest(Jedis jedis, Mutation read, @CheckForNull String sha1Hex, Mutation mutation) {
+        return runIfDigests(jedis, Collections.singletonList(read), Collections.singletonList(sha1Hex), mutation) < 0;
+    }
+
+    /**
+     * Runs the given mutation only if the values read by each of the given commands have the given SHA-1 digests, or
+     * are missing for null digests. Returns -1 if the mutation ran, or the index of the first read whose value differs.
+     */
+    static int runIfDigests(Jedis jedis, List<Mutation> reads, List<String> sha1Hexes, Mutation mutation) {
+        RecordingClient client = new RecordingClient();
+        client.args.add(Integer.toString(reads.size()).getBytes(StandardCharsets.US_ASCII));
+        List<byte[]> expectedDigests = new ArrayList<>();
+        for (int i = 0; i < reads.size(); i++) {
+            reads.get(i).queue(client.pipeline);
+            if (client.keys.size() != i + 1) {
+                throw new IllegalArgumentException("Not a single read: " + (client.keys.size() - i) + " commands");
+            }
+            String sha1Hex = sha1Hexes.get(i);
+            expectedDigests.add((sha1Hex == null ? "" : sha1Hex).getBytes(StandardCharsets.US_ASCII));
+            client.args.add(expectedDigests.get(i));
+        }
+        mutation.queue(client.pipeline);
+        Object result = eval(jedis, CHECKED_SCRIPT_BYTES, CHECKED_SHA1, client.keys, client.args);
+        if (result != null) {
+            return ((Long) result).intValue() - 1;
+        }
+
+        // Watched values may change between the reads and the transaction, in which case they are read again.
+        while (true) {
+            jedis.watch(client.keys.subList(0, reads.size()).toArray(new byte[reads.size()][]));
+            for (int i = 0; i < reads.size(); i++) {
+                byte[] value = (byte[]) jedis.sendCommand(client.commands.get(i), client.arguments.get(i));
+                if (!Arrays.equals(value == null ? new byte[0] : sha1Hex(value).getBytes(StandardCharsets.US_ASCII),
+                        expectedDigests.get(i))) {
+                    jedis.unwatch();
+                    return i;
+                }
+            }
+            Transaction transaction = jedis.multi();
+            mutation.queue(transaction);
+            if (transaction.exec() != null) {
+                return -1;
+            }
+        }
+    }
+
+    private static RecordingClient recordRead(Mutation read) {
+        RecordingClient client = record(read);
+        if (client.keys.size() != 1) {
+            throw new IllegalArgumentException("Not a single read: " + client.keys.size() + " commands");
+        }
+        return client;
+    }
+
+    private static RecordingClient record(Mutation mutation) {
+        RecordingClient client = new RecordingClient();
+        mutation.queue(client.pipeline);
+        return client;
+    }
+
+    /**
+     * Runs a script by its digest, loading it first if Redis does not know it. Returns null without running it if
+     * scripting is not available.
+     */
+    private static Object eval(Jedis jedis, byte[] script, byte[] sha1, List<byte[]> keys, List<byte[]> args) {
+        JedisPoolManager jedisPoolManager = JedisPoolManager.INSTANCE;
+        Boolean scriptingAvailable = jedisPoolManager.isScriptingAvailable();
+        if (Boolean.FALSE.equals(scriptingAvailable)) {
+            return null;
+        }
+        try {
+            Object result;
+            try {
+                result = jedis.evalsha(sha1, keys, args);
+            } catch (JedisNoScriptException e) {
+                jedis.scriptLoad(script);
+                result = jedis.evalsha(sha1, keys, args);
+            }
+            if (scriptingAvailable == null) {
+                jedisPoolManager.setScriptingAvailable(true);
+            }
+            return result;
+        } catch (JedisDataException e) {
+            if (scriptingAvailable != null || !isScriptingDisabled(e)) {
+                throw e;
+            }
+            LOGGER.log(Level.INFO, "Scripting is not available in Redis, falling back to transactions", e);
+            jedisPoolManager.setScriptingAvailable(false);
+            return null;
+        }
+    }
+
+    private static void runTransaction(Jedis jedis, Mutation mutation) {
+        Transaction transaction = jedis.multi();
+        mutation.queue(transaction);
+        transaction.exec();
+    }
+
+    /**
+     * Returns true if the given error was replied because the scripting commands are renamed, disabled or denied,
+     * rather than by the script.
+     */
+    static boolean isScriptingDisabled(JedisDataException e) {
+        String message = String.valueOf(e.getMessage()).toLowerCase(Locale.ENGLISH);
+        return !message.contains("error running script") && (message.contains("unknown command")
+                || message.contains("noperm") || message.contains("not allowed") || message.contains("disabled"));
+    }
+
+    /**
+     * Returns the lowercase hexadecimal SHA-1 digest of the given bytes, as computed by scripts.
+     */
+    static String sha1Hex(byte[] bytes) {
+        try {
+            return Util.toHexString(MessageDigest.getInstance("SHA-1").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Records the commands queued on a pipeline, whose first argument is always a key, instead of sending them.
+     */
+    private static final class RecordingClient extends Client {
+
+        private final Pipeline pipeline = new Pipeline();
+        private final List<byte[]> keys = new ArrayList<>();
+        private final List<byte[]> args = new ArrayList<>();
+        private final List<ProtocolCommand> commands = new ArrayList<>();
+        private final List<byte[][]> arguments = new ArrayList<>();
+
+        private RecordingClient() {
+            pipeline.setClient(this);
+        }
+
+        @Override
+        public void sendCommand(ProtocolCommand cmd, byte[]... arguments) {
+            if (arguments.length == 0) {
+                throw new IllegalArgumentException("Not a command on a key: "
+                        + new String(cmd.getRaw(), StandardCharsets.US_ASCII));
+            }
+            keys.add(arguments[0]);
+            args.add(cmd.getRaw());
+            args.add(Integer.toString(arguments.length - 1).getBytes(StandardCharsets.US_ASCII));
+            args.addAll(Arrays.asList(arguments).subList(1, arguments.length));
+            commands.add(cmd);
+            this.arguments.add(arguments);
+        }
+
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * The per thread state of a storage operation, the pool its connections are borrowed from and its
+ * {@link OperationTrace}, captured so that the parts of the operation run on other threads keep it.
+ */
+final class OperationContext {
+
+    private final JedisPoolManager.Pool pool;
+    private final @CheckForNull OperationTrace trace;
+
+    private OperationContext(@NonNull JedisPoolManager.Pool pool, @CheckForNull OperationTrace trace) {
+        this.pool = pool;
+        this.trace = trace;
+    }
+
+    /**
+     * Captures the state of the operation running on the current thread.
+     */
+    static @NonNull OperationContext capture() {
+        return new OperationContext(JedisPoolManager.INSTANCE.getCurrentPool(), OperationTrace.current());
+    }
+
+    /**
+     * Runs the given call on the current thread on behalf of the captured operation.
+     */
+    <T, E extends Exception> T run(JedisPoolManager.PooledCall<T, E> call) throws E {
+        return JedisPoolManager.INSTANCE.withPool(pool, () -> OperationTrace.with(trace, call));
+    }
+
+}
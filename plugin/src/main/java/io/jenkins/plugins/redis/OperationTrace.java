@@ -0,0 +1,236 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.List;
+
+/**
+ * Time spent in each phase of a storage operation in progress on the current thread: waiting for a pooled connection,
+ * talking to Redis, serializing fingerprints, and deserializing them.
+ *
+ * Traces are only started while a consumer needs them, {@link FingerprintEvents} or the {@link SlowOperationLog}, and
+ * phases are accounted for on the thread running the operation, and on the threads running parts of it on its behalf,
+ * see {@link OperationContext}. Both connections of a hedged read thus count in the Redis time, and the job name
+ * dictionary lookups of the {@link DictionaryCodec} count in both the Redis and the encode or decode time. The phases
+ * of an operation traced while another one is, such as the pages loaded by a cleanup, also count in the phases of the
+ * enclosing operation once it ends.
+ */
+final class OperationTrace {
+
+    private static final ThreadLocal<OperationTrace> CURRENT = new ThreadLocal<>();
+
+    private final StorageMetrics.Operation operation;
+    private final List<String> ids;
+    private final String thread;
+    private final long timestamp;
+    private final long startNanos;
+    private final OperationTrace parent;
+    private long durationNanos;
+    private boolean succeeded;
+    private long payloadSize;
+    private long poolWaitNanos;
+    private long redisNanos;
+    private long encodeNanos;
+    private long decodeNanos;
+
+    private OperationTrace(StorageMetrics.Operation operation, List<String> ids, OperationTrace parent) {
+        this.operation = operation;
+        this.ids = ids;
+        this.thread = Thread.currentThread().getName();
+        this.timestamp = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.parent = parent;
+    }
+
+    /**
+     * Starts tracing an operation on the current thread, on the fingerprints with the given ids.
+     */
+    static @NonNull OperationTrace begin(@NonNull StorageMetrics.Operation operation, @NonNull List<String> ids) {
+        OperationTrace trace = new OperationTrace(operation, ids, CURRENT.get());
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * Returns the operation traced on the current thread, or null if none is.
+     */
+    static @CheckForNull OperationTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs the given call on the current thread on behalf of the operation of the given trace, if any.
+     */
+    static <T, E extends Exception> T with(@CheckForNull OperationTrace trace,
+            JedisPoolManager.PooledCall<T, E> call) throws E {
+        OperationTrace previous = CURRENT.get();
+        setCurrent(trace);
+        try {
+            return call.call();
+        } finally {
+            setCurrent(previous);
+        }
+    }
+
+    private static void setCurrent(@CheckForNull OperationTrace trace) {
+        if (trace == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(trace);
+        }
+    }
+
+    void end(boolean succeeded) {
+        this.durationNanos = System.nanoTime() - startNanos;
+        this.succeeded = succeeded;
+        if (parent == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(parent);
+            parent.addPhases(this);
+        }
+    }
+
+    private void addPhases(@NonNull OperationTrace child) {
+        long childPayloadSize;
+        long childPoolWaitNanos;
+        long childRedisNanos;
+        long childEncodeNanos;
+        long childDecodeNanos;
+        synchronized (child) {
+            childPayloadSize = child.payloadSize;
+            childPoolWaitNanos = child.poolWaitNanos;
+            childRedisNanos = child.redisNanos;
+            childEncodeNanos = child.encodeNanos;
+            childDecodeNanos = child.decodeNanos;
+        }
+        synchronized (this) {
+            payloadSize += childPayloadSize;
+            poolWaitNanos += childPoolWaitNanos;
+            redisNanos += childRedisNanos;
+            encodeNanos += childEncodeNanos;
+            decodeNanos += childDecodeNanos;
+        }
+    }
+
+    static void addPayloadSize(long bytes) {
+        OperationTrace trace = CURRENT.get();
+        if (trace != null) {
+            synchronized (trace) {
+                trace.payloadSize += bytes;
+            }
+        }
+    }
+
+    static void addPoolWait(long nanos) {
+        OperationTrace trace = CURRENT.get();
+        if (trace != null) {
+            synchronized (trace) {
+                trace.poolWaitNanos += nanos;
+            }
+        }
+    }
+
+    static void addRedisTime(long nanos) {
+        OperationTrace trace = CURRENT.get();
+        if (trace != null) {
+            synchronized (trace) {
+                trace.redisNanos += nanos;
+            }
+        }
+    }
+
+    static void addEncodeTime(long nanos) {
+        OperationTrace trace = CURRENT.get();
+        if (trace != null) {
+            synchronized (trace) {
+                trace.encodeNanos += nanos;
+            }
+        }
+    }
+
+    static void addDecodeTime(long nanos) {
+        OperationTrace trace = CURRENT.get();
+        if (trace != null) {
+            synchronized (trace) {
+                trace.decodeNanos += nanos;
+            }
+        }
+    }
+
+    @NonNull StorageMetrics.Operation getOperation() {
+        return operation;
+    }
+
+    @NonNull List<String> getIds() {
+        return ids;
+    }
+
+    /**
+     * Returns the id of the fingerprint if the operation is on a single one, null otherwise.
+     */
+    @CheckForNull String getId() {
+        return ids.size() == 1 ? ids.get(0) : null;
+    }
+
+    @NonNull String getThread() {
+        return thread;
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    long getDurationNanos() {
+        return durationNanos;
+    }
+
+    boolean isSucceeded() {
+        return succeeded;
+    }
+
+    synchronized long getPayloadSize() {
+        return payloadSize;
+    }
+
+    synchronized long getPoolWaitNanos() {
+        return poolWaitNanos;
+    }
+
+    synchronized long getRedisNanos() {
+        return redisNanos;
+    }
+
+    synchronized long getEncodeNanos() {
+        return encodeNanos;
+    }
+
+    synchronized long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.MultiKeyPipelineBase;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.params.ZAddParams;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Secondary index of the fingerprints of an instance by the time they were last saved, whatever the
+ * {@link KeyScheme}.
+ *
+ * The index is a sorted set of fingerprint ids scored by their last save time in milliseconds, updated in the same
+ * transaction as the fingerprint. Fingerprints stored before the index was introduced are scored by their creation
+ * time instead, which is as old or older.
+ */
+final class RecencyIndex {
+
+    private static final Pattern TIMESTAMP = Pattern.compile("<timestamp>([^<]*)</timestamp>");
+    // The format of dates serialized by XStream.
+    private static final String TIMESTAMP_FORMAT = "yyyy-MM-dd HH:mm:ss.S z";
+
+    private RecencyIndex() {
+    }
+
+    static byte[] getKey(String instanceId) {
+        return KeyScheme.getKey('r', instanceId, new byte[0]);
+    }
+
+    static void queueTouch(MultiKeyPipelineBase pipeline, String instanceId, String id, long timestamp) {
+        pipeline.zadd(getKey(instanceId), timestamp, id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Queues adding a fingerprint to the index with the given timestamp, unless it is already indexed with the time
+     * it was last saved.
+     */
+    static void queueAdd(MultiKeyPipelineBase pipeline, String instanceId, String id, long timestamp) {
+        pipeline.zadd(getKey(instanceId), timestamp, id.getBytes(StandardCharsets.UTF_8), ZAddParams.zAddParams().nx());
+    }
+
+    static void queueRemove(MultiKeyPipelineBase pipeline, String instanceId, String id) {
+        pipeline.zrem(getKey(instanceId), id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns up to the given number of fingerprints last saved between the given times, oldest first, skipping the
+     * given number of them.
+     */
+    static @NonNull List<Tuple> getOldest(Jedis jedis, String instanceId, double min, double max, int offset,
+                                          int count) {
+        return new ArrayList<>(jedis.zrangeByScoreWithScores(getKey(instanceId), min, max, offset, count));
+    }
+
+    /**
+     * Returns the ids of up to the given number of fingerprints, most recently saved first.
+     */
+    static @NonNull List<String> getMostRecent(Jedis jedis, String instanceId, int count) {
+        List<String> ids = new ArrayList<>();
+        for (byte[] member : jedis.zrevrange(getKey(instanceId), 0, count - 1)) {
+            ids.add(new String(member, StandardCharsets.UTF_8));
+        }
+        return ids;
+    }
+
+    /**
+     * Extracts the creation time of a fingerprint from its serialized form, in plain XML or {@link DictionaryCodec}
+     * encoded, without deserializing it. Returns 0 if it cannot be found, so that the fingerprint is considered the
+     * oldest.
+     */
+    static long getTimestamp(@NonNull String fingerprintBlob) {
+        Matcher matcher = TIMESTAMP.matcher(fingerprintBlob);
+        if (!matcher.find()) {
+            return 0;
+        }
+        SimpleDateFormat format = new SimpleDateFormat(TIMESTAMP_FORMAT, Locale.ENGLISH);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            return format.parse(matcher.group(1)).getTime();
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+
+}
@@ -31,6 +31,8 @@ import hudson.Extension;
 import hudson.ExtensionList;
 import hudson.model.TaskListener;
 import jenkins.fingerprints.FingerprintStorage;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 import hudson.model.Fingerprint;
 import hudson.Util;
 
@@ -38,12 +40,21 @@ import java.io.IOException;
 import java.io.ByteArrayInputStream;
 import java.io.StringWriter;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.logging.Level;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.jenkinsci.main.modules.instance_identity.InstanceIdentity;
 
@@ -51,10 +62,16 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.MultiKeyPipelineBase;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.ScanParams;
 import redis.clients.jedis.ScanResult;
 
 import redis.clients.jedis.Transaction;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
 import redis.clients.jedis.exceptions.JedisException;
 
 /**
@@ -69,161 +86,1366 @@ public class RedisFingerprintStorage extends FingerprintStorage {
     private final String instanceId;
     private static final Logger LOGGER = Logger.getLogger(Fingerprint.class.getName());
     private static final int MAX_FINGERPRINT_DELETES = 100;
+    static final long CLEANUP_MIN_AGE_MINUTES = SystemProperties.getLong(
+            RedisFingerprintStorage.class.getName() + ".cleanupMinAgeMinutes", 60L);
 
     public static RedisFingerprintStorage get() {
         return ExtensionList.lookupSingleton(RedisFingerprintStorage.class);
     }
 
+    @NonNull String getInstanceId() {
+        return instanceId;
+    }
+
     @DataBoundConstructor
     public RedisFingerprintStorage() throws IOException {
-        instanceId = Util.getDigestOf(new ByteArrayInputStream(InstanceIdentity.get().getPublic().getEncoded()));
+        this(Util.getDigestOf(new ByteArrayInputStream(InstanceIdentity.get().getPublic().getEncoded())));
+    }
+
+    /**
+     * Creates a storage for the given instance id, which can be used outside of a running Jenkins, by benchmarks.
+     */
+    RedisFingerprintStorage(@NonNull String instanceId) {
+        this.instanceId = instanceId;
+    }
+
+    /**
+     * Saves the given fingerprint.
+     *
+     * The fingerprint and its index entries are written by a single {@link MutationScript}. If spooling is enabled,
+     * the write goes to the local {@link WriteSpool} instead when Redis is unavailable or slower than the configured
+     * threshold, and is replayed to Redis later. Saves which would write the same content as this controller last wrote
+     * are skipped if configured, see {@link UnchangedSaves}. With versioned writes, fingerprints written concurrently
+     * by other controllers are merged rather than overwritten, see {@link FingerprintVersions}. A fingerprint moved
+     * to the {@link ColdArchive} is moved back to Redis.
+     *
+     * Saves of different fingerprints run concurrently, each on its own pooled connection. Saves of a fingerprint are
+     * serialized by {@link Fingerprint#save()}, which holds its lock.
+     */
+    public void save(Fingerprint fp) throws IOException, JedisException {
+        List<String> ids = Collections.singletonList(fp.getHashString());
+        StorageMetrics.INSTANCE.measure(StorageMetrics.Operation.SAVE, ids, () -> {
+            doSave(fp);
+            return null;
+        });
+    }
+
+    private void doSave(Fingerprint fp) throws IOException, JedisException {
+        String fingerprintBlob = fingerprintToBlob(fp);
+        StorageMetrics.INSTANCE.recordBytes(StorageMetrics.Operation.SAVE, fingerprintBlob);
+        String id = fp.getHashString();
+        UnchangedSaves unchangedSaves = this.unchangedSaves;
+        String digest = null;
+        if (unchangedSaves != UnchangedSaves.WRITE) {
+            byte[] bytes = fingerprintBlob.getBytes(StandardCharsets.UTF_8);
+            digest = MutationScript.sha1Hex(bytes);
+            if (SaveDigestCache.INSTANCE.isUnchanged(id, digest)
+                    && (unchangedSaves == UnchangedSaves.SKIP || isStoredUnchanged(id, bytes, digest))) {
+                StorageMetrics.INSTANCE.unchangedSavesSkipped.increment();
+                if (serveStaleOnOpenCircuit) {
+                    putLastKnownGood(id, fingerprintBlob, fp);
+                }
+                return;
+            }
+        }
+        SaveDigestCache.INSTANCE.remove(id);
+        String savedBlob = fingerprintBlob;
+        WriteSpool writeSpool = getWriteSpool();
+        if (shouldSpool(writeSpool, id)) {
+            FingerprintVersions.INSTANCE.remove(id);
+            writeSpool.append(WriteSpool.Operation.SAVE, id, fingerprintBlob);
+        } else {
+            long start = System.nanoTime();
+            try {
+                savedBlob = write(fp, fingerprintBlob);
+                if (digest != null) {
+                    SaveDigestCache.INSTANCE.put(id, savedBlob.equals(fingerprintBlob) ? digest
+                            : MutationScript.sha1Hex(savedBlob.getBytes(StandardCharsets.UTF_8)));
+                }
+            } catch (JedisConnectionException e) {
+                if (writeSpool == null || !spoolWrites) {
+                    LOGGER.log(Level.WARNING, "Jedis failed in saving fingerprint: " + fp.toString(), e);
+                    throw e;
+                }
+                LOGGER.log(Level.WARNING, "Jedis failed in saving fingerprint, spooling it: " + fp.toString(), e);
+                FingerprintVersions.INSTANCE.remove(id);
+                writeSpool.append(WriteSpool.Operation.SAVE, id, fingerprintBlob);
+            } catch (JedisException e) {
+                LOGGER.log(Level.WARNING, "Jedis failed in saving fingerprint: " + fp.toString(), e);
+                throw e;
+            }
+            if (writeSpool != null) {
+                writeSpool.recordWriteLatency(System.nanoTime() - start);
+            }
+        }
+        ColdArchive coldArchive = getColdArchive();
+        if (coldArchive != null) {
+            coldArchive.remove(id);
+        }
+        if (serveStaleOnOpenCircuit) {
+            putLastKnownGood(id, savedBlob, fp);
+        }
+    }
+
+    /**
+     * Writes the given fingerprint to Redis, versioned if configured, and fenced by the {@link CleanupLease} of the
+     * cleanup running on the current thread, if any. Returns the serialized form written.
+     */
+    private @NonNull String write(Fingerprint fp, String fingerprintBlob) throws IOException, JedisException {
+        if (versionedWrites) {
+            return saveVersioned(fp, fingerprintBlob);
+        }
+        String id = fp.getHashString();
+        JedisPoolManager.INSTANCE.withJedis(this, jedis -> {
+            List<KeyScheme> keySchemes = getKeySchemes(jedis);
+            runFenced(jedis, pipeline -> queueSave(pipeline, keySchemes, id, fingerprintBlob));
+            return null;
+        });
+        return fingerprintBlob;
+    }
+
+    /**
+     * Deletes the given fingerprint from Redis, and removes it from the indexes under the file name kept for it,
+     * fenced by the {@link CleanupLease} of the cleanup running on the current thread, if any.
+     */
+    private void writeDelete(String id) throws JedisException {
+        JedisPoolManager.INSTANCE.withJedis(this, jedis -> {
+            List<KeyScheme> keySchemes = getKeySchemes(jedis);
+            String fileName = getFileName(jedis, id);
+            runFenced(jedis, pipeline -> queueDelete(pipeline, keySchemes, id, fileName));
+            return null;
+        });
+    }
+
+    /**
+     * Caches the given fingerprint as last known good. Dictionary encoded fingerprints are cached as plain XML, since
+     * decoding them needs the job name dictionary stored in Redis, see {@link DictionaryCodec}.
+     */
+    private void putLastKnownGood(@NonNull String id, @NonNull String fingerprintBlob, @NonNull Fingerprint fp) {
+        LastKnownGoodCache.INSTANCE.put(id, DictionaryCodec.isEncoded(fingerprintBlob) ? toXml(fp) : fingerprintBlob);
+    }
+
+    /**
+     * Writes the given fingerprint if Redis still stores the version this controller last read or wrote, see
+     * {@link FingerprintVersions}. Otherwise, merges the usages stored meanwhile into the fingerprint and tries again.
+     * While keys are being migrated, the fingerprint is written unconditionally. Returns the serialized form written.
+     */
+    private @NonNull String saveVersioned(Fingerprint fp, String fingerprintBlob) throws IOException, JedisException {
+        String id = fp.getHashString();
+        JedisPoolManager jedisPoolManager = JedisPoolManager.INSTANCE;
+        String version = FingerprintVersions.INSTANCE.get(id);
+        for (int attempt = 1; ; attempt++) {
+            String blob = fingerprintBlob;
+            String expectedVersion = version;
+            boolean written = jedisPoolManager.withJedis(this, jedis -> {
+                List<KeyScheme> keySchemes = getKeySchemes(jedis);
+                MutationScript.Mutation mutation = pipeline -> queueSave(pipeline, keySchemes, id, blob);
+                if (keySchemes.size() > 1) {
+                    runFenced(jedis, mutation);
+                    return true;
+                }
+                MutationScript.Mutation read = pipeline -> keySchemes.get(0).queueGet(pipeline, instanceId, id);
+                CleanupLease lease = CleanupLease.current();
+                if (lease == null) {
+                    return MutationScript.runIfDigest(jedis, read, expectedVersion, mutation);
+                }
+                int changed = MutationScript.runIfDigests(jedis, Arrays.asList(lease::queueGet, read),
+                        Arrays.asList(lease.getDigest(), expectedVersion), mutation);
+                if (changed == 0) {
+                    throw new CleanupLeaseLostException(lease.getToken());
+                }
+                return changed < 0;
+            });
+            if (written) {
+                FingerprintVersions.INSTANCE.put(id, FingerprintVersions.getVersion(blob));
+                return blob;
+            }
+            StorageMetrics.INSTANCE.versionConflicts.increment();
+            if (attempt >= FingerprintVersions.MAX_WRITE_ATTEMPTS) {
+                throw new JedisDataException("Fingerprint " + id + " was written concurrently " + attempt + " times");
+            }
+            // The version is taken from what is stored, as manifests depend on the chunk size they were written with.
+            String[] storedVersion = new String[1];
+            String storedFingerprintBlob = jedisPoolManager.withJedis(this, jedis -> {
+                byte[] storedBlob = getStoredBlob(jedis, id);
+                if (storedBlob == null) {
+                    return null;
+                }
+                storedVersion[0] = MutationScript.sha1Hex(storedBlob);
+                return assemble(jedis, Collections.singletonList(id), Collections.singletonList(storedBlob)).get(0);
+            });
+            if (storedFingerprintBlob != null) {
+                FingerprintVersions.mergeUsages(fp, blobToFingerprint(storedFingerprintBlob));
+                fingerprintBlob = fingerprintToBlob(fp);
+            }
+            version = storedVersion[0];
+        }
+    }
+
+    /**
+     * Returns the fingerprint associated with the given unique id and the Jenkins instance ID, from the storage.
+     *
+     * Writes of the fingerprint still waiting in the spool take precedence over the content of Redis. While keys are
+     * being migrated to the configured {@link KeyScheme}, the fingerprint is looked up with every key scheme. The read
+     * is retried and hedged as configured. While the circuit breaker is open, the last known good fingerprint is
+     * returned instead if serving stale fingerprints is enabled. Fingerprints missing from Redis are looked up in the
+     * {@link ColdArchive}. When loads are coalesced, the read is batched with the concurrent loads by the
+     * {@link LoadMultiplexer}, and retried but not hedged.
+     */
+    public @CheckForNull Fingerprint load(@NonNull String id) throws IOException, JedisException {
+        return StorageMetrics.INSTANCE.measure(StorageMetrics.Operation.LOAD, Collections.singletonList(id),
+                () -> doLoad(id));
+    }
+
+    /**
+     * Returns true if Redis still stores the given serialized fingerprint with the configured key scheme, comparing
+     * digests with a script. Returns false if it cannot tell, for chunked fingerprints, whose manifest only holds a
+     * checksum, if scripting is not available, or if Redis fails, leaving the save to report the failure.
+     */
+    private boolean isStoredUnchanged(String id, byte[] fingerprintBlob, String digest) {
+        if (ChunkedBlobs.isChunked(fingerprintBlob)) {
+            return false;
+        }
+        try {
+            return JedisPoolManager.INSTANCE.withJedis(this, jedis -> {
+                KeyScheme keyScheme = getKeySchemes(jedis).get(0);
+                return MutationScript.hasDigest(jedis, pipeline -> keyScheme.queueGet(pipeline, instanceId, id),
+                        digest);
+            });
+        } catch (JedisException e) {
+            LOGGER.log(Level.FINE, "Jedis failed in checking fingerprint, saving it: " + id, e);
+            return false;
+        }
+    }
+
+    private @CheckForNull Fingerprint doLoad(@NonNull String id) throws IOException, JedisException {
+        WriteSpool writeSpool = getWriteSpool();
+        WriteSpool.Entry spooledEntry = writeSpool == null ? null : writeSpool.getPending(id);
+        if (spooledEntry != null) {
+            return spooledEntry.blob == null ? null : blobToFingerprint(spooledEntry.blob);
+        }
+
+        String loadedData;
+
+        try {
+            loadedData = coalesceLoads ? getLoadMultiplexer().load(id)
+                    : read(jedis -> getFingerprintBlob(jedis, id), hedgedReads);
+            StorageMetrics.INSTANCE.recordBytes(StorageMetrics.Operation.LOAD, loadedData);
+        } catch (CircuitBreakerOpenException e) {
+            String staleData = serveStaleOnOpenCircuit ? LastKnownGoodCache.INSTANCE.get(id) : null;
+            if (staleData == null) {
+                LOGGER.log(Level.WARNING, "Jedis failed in loading fingerprint: " + id, e);
+                throw e;
+            }
+            LOGGER.log(Level.FINE, "Circuit breaker is open, serving last known good fingerprint: " + id);
+            return blobToFingerprint(staleData);
+        } catch (JedisException e) {
+            LOGGER.log(Level.WARNING, "Jedis failed in loading fingerprint: " + id, e);
+            throw e;
+        }
+
+        if (loadedData == null) {
+            if (serveStaleOnOpenCircuit) {
+                LastKnownGoodCache.INSTANCE.remove(id);
+            }
+            FingerprintVersions.INSTANCE.remove(id);
+            ColdArchive coldArchive = getColdArchive();
+            String archivedData = coldArchive == null ? null : coldArchive.get(id);
+            return archivedData == null ? null : blobToFingerprint(archivedData);
+        }
+
+        Fingerprint fingerprint = blobToFingerprint(loadedData);
+        if (serveStaleOnOpenCircuit) {
+            putLastKnownGood(id, loadedData, fingerprint);
+        }
+        if (versionedWrites) {
+            FingerprintVersions.INSTANCE.put(id, FingerprintVersions.getVersion(loadedData));
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Returns the multiplexer of the loads of this storage. Multiplexers created concurrently on first use only split
+     * the first batches.
+     */
+    private @NonNull LoadMultiplexer getLoadMultiplexer() {
+        LoadMultiplexer loadMultiplexer = this.loadMultiplexer;
+        if (loadMultiplexer == null) {
+            loadMultiplexer = new LoadMultiplexer(ids -> read(jedis -> getFingerprintBlobs(jedis, ids), false));
+            this.loadMultiplexer = loadMultiplexer;
+        }
+        return loadMultiplexer;
+    }
+
+    private @CheckForNull String getFingerprintBlob(Jedis jedis, String id) {
+        List<String> ids = Collections.singletonList(id);
+        return assemble(jedis, ids, Collections.singletonList(getStoredBlob(jedis, id))).get(0);
+    }
+
+    /**
+     * Returns what is stored for the given fingerprint, which may be a {@link ChunkedBlobs} manifest.
+     */
+    private @CheckForNull byte[] getStoredBlob(Jedis jedis, String id) {
+        List<KeyScheme> keySchemes = getKeySchemes(jedis);
+        if (keySchemes.size() == 1) {
+            return keySchemes.get(0).get(jedis, instanceId, id);
+        }
+        Pipeline pipeline = jedis.pipelined();
+        List<Response<byte[]>> responses = new ArrayList<>();
+        for (KeyScheme keyScheme : keySchemes) {
+            responses.add(keyScheme.queueGet(pipeline, instanceId, id));
+        }
+        pipeline.sync();
+        for (Response<byte[]> response : responses) {
+            if (response.get() != null) {
+                return response.get();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decodes the given stored blobs, replacing the {@link ChunkedBlobs} manifests by the fingerprints they describe.
+     * Fingerprints rewritten while their chunks were being read are read again.
+     */
+    private List<String> assemble(Jedis jedis, List<String> ids, List<byte[]> storedBlobs) {
+        List<String> fingerprintBlobs = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            byte[] storedBlob = storedBlobs.get(i);
+            int attempts = 0;
+            while (ChunkedBlobs.isManifest(storedBlob)) {
+                byte[] fingerprintBlob = ChunkedBlobs.read(jedis, instanceId, id, storedBlob);
+                if (fingerprintBlob != null) {
+                    storedBlob = fingerprintBlob;
+                } else if (++attempts < ChunkedBlobs.MAX_READ_ATTEMPTS) {
+                    storedBlob = getStoredBlob(jedis, id);
+                } else {
+                    throw new JedisDataException("Fingerprint " + id + " kept being rewritten while being read");
+                }
+            }
+            fingerprintBlobs.add(decode(storedBlob));
+        }
+        return fingerprintBlobs;
+    }
+
+    private static @CheckForNull String decode(@CheckForNull byte[] fingerprintBlob) {
+        return fingerprintBlob == null ? null : new String(fingerprintBlob, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Serializes the given fingerprint, with the {@link DictionaryCodec} if enabled. Falls back to plain XML if the
+     * job name dictionary cannot be reached, so that the fingerprint can still be spooled.
+     */
+    String fingerprintToBlob(Fingerprint fp) {
+        long start = System.nanoTime();
+        try {
+            if (dictionaryEncoding) {
+                try {
+                    return DictionaryCodec.encode(this, fp);
+                } catch (JedisConnectionException e) {
+                    LOGGER.log(Level.FINE, "Failed to encode job names of fingerprint, saving it as plain XML: "
+                            + fp.toString(), e);
+                }
+            }
+            return toXml(fp);
+        } finally {
+            OperationTrace.addEncodeTime(System.nanoTime() - start);
+        }
+    }
+
+    Fingerprint blobToFingerprint(String blob) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return decodeFingerprint(blob);
+        } finally {
+            OperationTrace.addDecodeTime(System.nanoTime() - start);
+        }
+    }
+
+    private Fingerprint decodeFingerprint(String blob) throws IOException {
+        Object loadedObject = null;
+        Fingerprint loadedFingerprint;
+
+        try {
+            if (DictionaryCodec.isEncoded(blob)) {
+                loadedObject = DictionaryCodec.decode(this, blob);
+            } else {
+                try (InputStream in = new ByteArrayInputStream(blob.getBytes(StandardCharsets.UTF_8))) {
+                    loadedObject = Fingerprint.getXStream().fromXML(in);
+                }
+            }
+            loadedFingerprint = (Fingerprint) loadedObject;
+        } catch (JedisException e) {
+            LOGGER.log(Level.WARNING, "Failed to decode job names of fingerprint", e);
+            throw e;
+        } catch (RuntimeException e) {
+            throw new IOException("Unexpected Fingerprint type. Expected " + Fingerprint.class + " or subclass but got "
+                    + (loadedObject != null ? loadedObject.getClass() : "null"));
+        }
+
+        return loadedFingerprint;
+
+    }
+
+    /**
+     * Deletes the fingerprint with the given id. Deletes made by a cleanup are fenced by its {@link CleanupLease}.
+     */
+    public void delete(@NonNull String id) throws IOException, JedisException {
+        StorageMetrics.INSTANCE.measure(StorageMetrics.Operation.DELETE, Collections.singletonList(id), () -> {
+            doDelete(id);
+            return null;
+        });
+    }
+
+    private void doDelete(@NonNull String id) throws IOException, JedisException {
+        SaveDigestCache.INSTANCE.remove(id);
+        FingerprintVersions.INSTANCE.remove(id);
+        WriteSpool writeSpool = getWriteSpool();
+        if (shouldSpool(writeSpool, id)) {
+            writeSpool.append(WriteSpool.Operation.DELETE, id, null);
+        } else {
+            try {
+                writeDelete(id);
+            } catch (JedisConnectionException e) {
+                if (writeSpool == null || !spoolWrites) {
+                    LOGGER.log(Level.WARNING, "Jedis failed in deleting fingerprint: " + id, e);
+                    throw e;
+                }
+                LOGGER.log(Level.WARNING, "Jedis failed in deleting fingerprint, spooling it: " + id, e);
+                writeSpool.append(WriteSpool.Operation.DELETE, id, null);
+            } catch (JedisException e) {
+                LOGGER.log(Level.WARNING, "Jedis failed in deleting fingerprint: " + id, e);
+                throw e;
+            }
+        }
+        ColdArchive coldArchive = getColdArchive();
+        if (coldArchive != null) {
+            coldArchive.remove(id);
+        }
+        LastKnownGoodCache.INSTANCE.remove(id);
+    }
+
+    /**
+     * Runs the given mutation, fenced by the {@link CleanupLease} of the cleanup running on the current thread, if any.
+     *
+     * @throws CleanupLeaseLostException if the lease was taken over, in which case the mutation did not run.
+     */
+    private static void runFenced(Jedis jedis, MutationScript.Mutation mutation) {
+        CleanupLease lease = CleanupLease.current();
+        if (lease == null) {
+            MutationScript.run(jedis, mutation);
+        } else if (!MutationScript.runIfDigest(jedis, lease::queueGet, lease.getDigest(), mutation)) {
+            throw new CleanupLeaseLostException(lease.getToken());
+        }
+    }
+
+    /**
+     * Returns the file name of the given fingerprint, empty if it has none, from the {@link FileNameIndex}, or read
+     * from the fingerprint if it was saved before the index kept file names. Returns null if it is not stored.
+     */
+    private @CheckForNull String getFileName(Jedis jedis, String id) {
+        String fileName = FileNameIndex.getFileName(jedis, instanceId, id);
+        if (fileName != null) {
+            return fileName;
+        }
+        String fingerprintBlob = getFingerprintBlob(jedis, id);
+        return fingerprintBlob == null ? null : FileNameIndex.getFileName(fingerprintBlob);
+    }
+
+    /**
+     * Queues the commands saving a fingerprint with the first of the given key schemes, in {@link ChunkedBlobs} if it
+     * is large, removing it from the others, and indexing its file name and save time.
+     */
+    private void queueSave(MultiKeyPipelineBase pipeline, List<KeyScheme> keySchemes, String id,
+                           String fingerprintBlob) {
+        byte[] storedBlob = ChunkedBlobs.queueWrite(pipeline, instanceId, id,
+                fingerprintBlob.getBytes(StandardCharsets.UTF_8));
+        keySchemes.get(0).queueSave(pipeline, instanceId, id, storedBlob, false);
+        for (KeyScheme oldKeyScheme : keySchemes.subList(1, keySchemes.size())) {
+            oldKeyScheme.queueDelete(pipeline, instanceId, id);
+        }
+        FileNameIndex.queueAdd(pipeline, instanceId, FileNameIndex.getFileName(fingerprintBlob), id);
+        RecencyIndex.queueTouch(pipeline, instanceId, id, System.currentTimeMillis());
+    }
+
+    /**
+     * Queues the commands deleting a fingerprint and its chunks, and removing it from the recency index, and from the
+     * file name index if its file name is known. Otherwise, the file name index entry is removed when it is next found
+     * by a search.
+     */
+    private void queueDelete(MultiKeyPipelineBase pipeline, List<KeyScheme> keySchemes, String id,
+                             @CheckForNull String fileName) {
+        for (KeyScheme keyScheme : keySchemes) {
+            keyScheme.queueDelete(pipeline, instanceId, id);
+        }
+        ChunkedBlobs.queueDelete(pipeline, instanceId, id);
+        FileNameIndex.queueRemove(pipeline, instanceId, fileName, id);
+        RecencyIndex.queueRemove(pipeline, instanceId, id);
+    }
+
+    /**
+     * Returns the configured key scheme, followed by the other key schemes if fingerprints stored with them remain
+     * to be migrated.
+     */
+    private @NonNull List<KeyScheme> getKeySchemes(Jedis jedis) {
+        JedisPoolManager jedisPoolManager = JedisPoolManager.INSTANCE;
+        KeyScheme keyScheme = this.keyScheme;
+        Boolean keyMigrationPending = jedisPoolManager.isKeyMigrationPending(keyScheme);
+        if (keyMigrationPending == null) {
+            keyMigrationPending = false;
+            for (KeyScheme oldKeyScheme : KeyScheme.values()) {
+                if (oldKeyScheme != keyScheme && jedis.exists(oldKeyScheme.getSetKey(instanceId))) {
+                    keyMigrationPending = true;
+                }
+            }
+            jedisPoolManager.setKeyMigrationPending(keyScheme, keyMigrationPending);
+        }
+        if (!keyMigrationPending) {
+            return Collections.singletonList(keyScheme);
+        }
+        List<KeyScheme> keySchemes = new ArrayList<>();
+        keySchemes.add(keyScheme);
+        for (KeyScheme oldKeyScheme : KeyScheme.values()) {
+            if (oldKeyScheme != keyScheme) {
+                keySchemes.add(oldKeyScheme);
+            }
+        }
+        return keySchemes;
+    }
+
+    /**
+     * Moves the fingerprints stored with another key scheme than the configured one to the configured key scheme,
+     * in batches.
+     */
+    void migrateKeys(TaskListener listener) throws JedisException {
+        JedisPoolManager.INSTANCE.withPool(JedisPoolManager.Pool.BACKGROUND, () -> {
+            doMigrateKeys(listener);
+            return null;
+        });
+    }
+
+    private void doMigrateKeys(TaskListener listener) throws JedisException {
+        JedisPoolManager jedisPoolManager = JedisPoolManager.INSTANCE;
+        List<KeyScheme> keySchemes = read(this::getKeySchemes, false);
+        if (keySchemes.size() == 1) {
+            return;
+        }
+        KeyScheme keyScheme = keySchemes.get(0);
+        int migrated = 0;
+        for (KeyScheme oldKeyScheme : keySchemes.subList(1, keySchemes.size())) {
+            String currentPointer = ScanParams.SCAN_POINTER_START;
+            do {
+                ScanResult<String> scanResult = getFingerprintIdsForCleanup(oldKeyScheme, currentPointer);
+                List<String> ids = scanResult.getResult();
+                migrated += jedisPoolManager.withJedis(this,
+                        jedis -> migrateKeyBatch(jedis, oldKeyScheme, keyScheme, ids));
+                currentPointer = scanResult.getCursor();
+            } while (!currentPointer.equals(ScanParams.SCAN_POINTER_START));
+        }
+        boolean keyMigrationPending = jedisPoolManager.withJedis(this, jedis -> {
+            for (KeyScheme oldKeyScheme : keySchemes.subList(1, keySchemes.size())) {
+                if (jedis.exists(oldKeyScheme.getSetKey(instanceId))) {
+                    return true;
+                }
+            }
+            return false;
+        });
+        if (keyScheme == this.keyScheme) {
+            jedisPoolManager.setKeyMigrationPending(keyScheme, keyMigrationPending);
+        }
+        listener.getLogger().println("Migrated " + migrated + " fingerprints to the " + keyScheme.getDisplayName()
+                + " key scheme" + (keyMigrationPending ? ", some remain to be migrated" : ""));
+    }
+
+    /**
+     * Moves a batch of fingerprints from one key scheme to another. The old keys are watched, so that the batch is
+     * aborted and retried later if one of them is concurrently saved or deleted. Fingerprints already saved with the
+     * new key scheme are left untouched.
+     */
+    private int migrateKeyBatch(Jedis jedis, KeyScheme oldKeyScheme, KeyScheme keyScheme, List<String> ids) {
+        List<String> validIds = new ArrayList<>();
+        for (String id : ids) {
+            try {
+                keyScheme.getMember(id);
+                validIds.add(id);
+            } catch (IllegalArgumentException e) {
+                LOGGER.log(Level.WARNING, "Cannot migrate fingerprint with invalid id: " + id, e);
+            }
+        }
+        if (validIds.isEmpty()) {
+            return 0;
+        }
+        List<byte[]> watchedKeys = oldKeyScheme.getWatchedKeys(instanceId, validIds);
+        jedis.watch(watchedKeys.toArray(new byte[watchedKeys.size()][]));
+        List<byte[]> fingerprintBlobs = oldKeyScheme.getAll(jedis, instanceId, validIds);
+        Transaction transaction = jedis.multi();
+        for (int i = 0; i < validIds.size(); i++) {
+            String id = validIds.get(i);
+            if (fingerprintBlobs.get(i) != null) {
+                keyScheme.queueSave(transaction, instanceId, id, fingerprintBlobs.get(i), true);
+            }
+            oldKeyScheme.queueDelete(transaction, instanceId, id);
+        }
+        return transaction.exec() == null ? 0 : validIds.size();
+    }
+
+    /**
+     * Runs an idempotent read, retrying it on connection failures and optionally hedging it, within the configured
+     * latency budget.
+     */
+    private <T> T read(JedisPoolManager.JedisCallback<T> callback, boolean hedge) throws JedisException {
+        RetryPolicy retryPolicy = new RetryPolicy(maxReadRetries, readLatencyBudget);
+        if (hedge) {
+            return HedgedReads.INSTANCE.read(attempt -> retryPolicy.execute(
+                    () -> JedisPoolManager.INSTANCE.withJedis(this, attempt.guard(callback))), readLatencyBudget);
+        }
+        return retryPolicy.execute(() -> JedisPoolManager.INSTANCE.withJedis(this, callback));
+    }
+
+    /**
+     * Returns the spool of this controller, or null if it cannot be used outside of a running Jenkins or if spooling
+     * is disabled and no spooled write is left. Once opened, the spool is kept so that the writes spooled before
+     * spooling was disabled are still seen until they are replayed. Whether a spool was left over by a previous run
+     * is only checked once while spooling is disabled.
+     */
+    private @CheckForNull WriteSpool getWriteSpool() throws IOException {
+        WriteSpool writeSpool = this.writeSpool;
+        if (writeSpool != null || !spoolWrites && writeSpoolChecked) {
+            return writeSpool;
+        }
+        if (Jenkins.getInstanceOrNull() == null) {
+            return null;
+        }
+        if (spoolWrites || WriteSpool.exists()) {
+            writeSpool = WriteSpool.get();
+            this.writeSpool = writeSpool;
+        }
+        writeSpoolChecked = true;
+        return writeSpool;
+    }
+
+    /**
+     * Returns the cold archive of this controller, or null if it cannot be used outside of a running Jenkins or if
+     * archiving is disabled and no archived fingerprint is left. Once opened, the archive is kept so that the
+     * fingerprints archived before archiving was disabled remain available. Whether an archive was left over by a
+     * previous run is only checked once while archiving is disabled.
+     */
+    private @CheckForNull ColdArchive getColdArchive() throws IOException {
+        ColdArchive coldArchive = this.coldArchive;
+        if (coldArchive != null || coldArchiveAfterDays <= 0 && coldArchiveChecked) {
+            return coldArchive;
+        }
+        if (Jenkins.getInstanceOrNull() == null) {
+            return null;
+        }
+        if (coldArchiveAfterDays > 0 || ColdArchive.exists()) {
+            coldArchive = ColdArchive.get();
+            this.coldArchive = coldArchive;
+        }
+        coldArchiveChecked = true;
+        return coldArchive;
+    }
+
+    /**
+     * A write must be spooled if an earlier write of the same fingerprint is still in the spool, so that writes are
+     * replayed in order. Otherwise, it is spooled if spooling is enabled and Redis is either unavailable or slower
+     * than the configured threshold.
+     */
+    private boolean shouldSpool(@CheckForNull WriteSpool writeSpool, @NonNull String id) {
+        if (writeSpool == null) {
+            return false;
+        }
+        if (writeSpool.isPending(id)) {
+            return true;
+        }
+        if (!spoolWrites) {
+            return false;
+        }
+        if (JedisPoolManager.INSTANCE.getCircuitBreaker(this).isOpen()) {
+            return true;
+        }
+        return spoolLatencyThreshold > 0 && writeSpool.getWriteLatency() > spoolLatencyThreshold;
+    }
+
+    /**
+     * Writes the spooled fingerprint writes to Redis, one at a time, as {@link #save} and {@link #delete} write them,
+     * so that spooled saves are versioned if configured, and spooled deletes remove the file name index entries.
+     */
+    void replaySpool() throws IOException, JedisException {
+        JedisPoolManager.INSTANCE.withPool(JedisPoolManager.Pool.BACKGROUND, () -> {
+            doReplaySpool();
+            return null;
+        });
+    }
+
+    private void doReplaySpool() throws IOException, JedisException {
+        WriteSpool writeSpool = getWriteSpool();
+        if (writeSpool == null || writeSpool.isEmpty()) {
+            return;
+        }
+        JedisPoolManager jedisPoolManager = JedisPoolManager.INSTANCE;
+        if (jedisPoolManager.getCircuitBreaker(this).isOpen()) {
+            return;
+        }
+        int replayed = writeSpool.replay(batch -> {
+            for (WriteSpool.Entry entry : batch) {
+                // Each write is timed on its own, as saves are, since the average decides whether saves are spooled.
+                long start = System.nanoTime();
+                if (entry.operation == WriteSpool.Operation.SAVE) {
+                    write(blobToFingerprint(entry.blob), entry.blob);
+                } else {
+                    writeDelete(entry.id);
+                }
+                writeSpool.recordWriteLatency(System.nanoTime() - start);
+            }
+        });
+        if (replayed > 0) {
+            LOGGER.log(Level.FINE, "Replayed {0} spooled fingerprint writes", replayed);
+        }
+    }
+
+    /**
+     * Saves the given fingerprints in a single pipeline, skipping the ones already stored in Redis, which are at
+     * least as recent. Returns whether each of the fingerprints was saved, in the same order.
+     */
+    boolean[] importFingerprints(@NonNull List<Fingerprint> fingerprints) throws JedisException {
+        return JedisPoolManager.INSTANCE.withPool(JedisPoolManager.Pool.BACKGROUND,
+                () -> doImportFingerprints(fingerprints));
+    }
+
+    private boolean[] doImportFingerprints(@NonNull List<Fingerprint> fingerprints) throws JedisException {
+        List<String> ids = new ArrayList<>();
+        List<byte[]> fingerprintBlobs = new ArrayList<>();
+        List<String> fileNames = new ArrayList<>();
+        List<Long> timestamps = new ArrayList<>();
+        for (Fingerprint fingerprint : fingerprints) {
+            ids.add(fingerprint.getHashString());
+            fingerprintBlobs.add(fingerprintToBlob(fingerprint).getBytes(StandardCharsets.UTF_8));
+            fileNames.add(fingerprint.getFileName());
+            timestamps.add(fingerprint.getTimestamp().getTime());
+        }
+        return JedisPoolManager.INSTANCE.withJedis(this, jedis -> {
+            List<KeyScheme> keySchemes = getKeySchemes(jedis);
+            boolean[] stored = new boolean[ids.size()];
+            for (KeyScheme oldKeyScheme : keySchemes.subList(1, keySchemes.size())) {
+                List<byte[]> oldBlobs = oldKeyScheme.getAll(jedis, instanceId, ids);
+                for (int i = 0; i < stored.length; i++) {
+                    stored[i] |= oldBlobs.get(i) != null;
+                }
+            }
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<?>> responses = new ArrayList<>(Collections.nCopies(ids.size(), null));
+            for (int i = 0; i < ids.size(); i++) {
+                if (!stored[i] && !ChunkedBlobs.isChunked(fingerprintBlobs.get(i))) {
+                    responses.set(i, keySchemes.get(0).queueSave(pipeline, instanceId, ids.get(i),
+                            fingerprintBlobs.get(i), true));
+                    FileNameIndex.queueAdd(pipeline, instanceId, fileNames.get(i), ids.get(i));
+                    RecencyIndex.queueAdd(pipeline, instanceId, ids.get(i), timestamps.get(i));
+                }
+            }
+            pipeline.sync();
+            boolean[] saved = new boolean[ids.size()];
+            for (int i = 0; i < ids.size(); i++) {
+                if (responses.get(i) != null) {
+                    saved[i] = KeyScheme.isSaved(responses.get(i));
+                } else if (!stored[i]) {
+                    saved[i] = importChunked(jedis, keySchemes.get(0), ids.get(i), fingerprintBlobs.get(i),
+                            fileNames.get(i), timestamps.get(i));
+                }
+            }
+            return saved;
+        });
+    }
+
+    /**
+     * Saves a large fingerprint in {@link ChunkedBlobs} unless it is already stored. Unlike its manifest, its chunks
+     * cannot be written only if absent, so the fingerprint is watched instead, and left untouched if it is written
+     * concurrently. Returns true if the fingerprint was saved.
+     */
+    private boolean importChunked(Jedis jedis, KeyScheme keyScheme, String id, byte[] fingerprintBlob,
+                                  @CheckForNull String fileName, long timestamp) {
+        List<byte[]> watchedKeys = keyScheme.getWatchedKeys(instanceId, Collections.singletonList(id));
+        jedis.watch(watchedKeys.toArray(new byte[watchedKeys.size()][]));
+        if (keyScheme.get(jedis, instanceId, id) != null) {
+            jedis.unwatch();
+            return false;
+        }
+        Transaction transaction = jedis.multi();
+        byte[] manifest = ChunkedBlobs.queueWrite(transaction, instanceId, id, fingerprintBlob);
+        keyScheme.queueSave(transaction, instanceId, id, manifest, false);
+        FileNameIndex.queueAdd(transaction, instanceId, fileName, id);
+        RecencyIndex.queueAdd(transaction, instanceId, id, timestamp);
+        return transaction.exec() != null;
+    }
+
+    /**
+     * Returns true if there's some data in the fingerprint database.
+     */
+    public boolean isReady() {
+        return StorageMetrics.INSTANCE.measure(StorageMetrics.Operation.IS_READY, Collections.emptyList(),
+                this::doIsReady);
+    }
+
+    private boolean doIsReady() {
+        JedisPoolManager jedisPoolManager = JedisPoolManager.INSTANCE;
+        try {
+            return jedisPoolManager.withJedis(this, jedis -> {
+                for (KeyScheme keyScheme : getKeySchemes(jedis)) {
+                    if (jedis.exists(keyScheme.getSetKey(instanceId))) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+        } catch (JedisException e) {
+            LOGGER.log(Level.WARNING, "Failed to connect to Jedis", e);
+            throw e;
+        }
+    }
+
+    /**
+     * Cleans up the fingerprints last saved more than {@link #CLEANUP_MIN_AGE_MINUTES} ago, oldest first, as listed
+     * by the {@link RecencyIndex}. Fingerprints saved more recently reference builds which still exist, and are
+     * cleaned up by a later run. Until the fingerprints stored before the index was introduced have been indexed, all
+     * fingerprints are cleaned up, in no particular order.
+     *
+     * The cleanup only runs while holding the {@link CleanupLease} of the instance, so that processes sharing the
+     * instance identity do not clean up at the same time, unless the cleanup is shared, in which case the fingerprints
+     * are split among them. The fingerprints of the local {@link ColdArchive} are then removed from it once none of
+     * the builds they reference exist anymore.
+     */
+    public void iterateAndCleanupFingerprints(TaskListener listener) {
+        JedisPoolManager.INSTANCE.withPool(JedisPoolManager.Pool.BACKGROUND, () -> {
+            doIterateAndCleanupFingerprints(listener);
+            return null;
+        });
+        cleanupColdFingerprints(listener);
+    }
+
+    private void doIterateAndCleanupFingerprints(TaskListener listener) {
+        try {
+            StorageMetrics.INSTANCE.measure(StorageMetrics.Operation.CLEANUP, Collections.emptyList(), () -> {
+                CleanupLease lease = CleanupLease.acquire(this, instanceId, shareCleanup);
+                if (lease == null) {
+                    listener.getLogger().println("Fingerprint cleanup is running in another controller, skipping it");
+                    return null;
+                }
+                try {
+                    cleanupFingerprints(lease, listener);
+                } finally {
+                    lease.release();
+                }
+                return null;
+            });
+        } catch (CleanupLeaseLostException e) {
+            LOGGER.log(Level.WARNING, "Stopped cleaning fingerprints, another controller took over", e);
+        } catch (JedisException e) {
+            LOGGER.log(Level.WARNING, "Jedis failed to clean fingerprints. ", e);
+        } catch (UncheckedIOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read fingerprints to clean. ", e.getCause());
+        }
+    }
+
+    /**
+     * Cleans up the fingerprints owned by this process under the given lease. The lease is checked in Redis before
+     * each page is loaded, and before each fingerprint is cleaned up.
+     *
+     * @throws CleanupLeaseLostException once another process took the lease over.
+     */
+    void cleanupFingerprints(@NonNull CleanupLease lease, TaskListener listener) throws JedisException {
+        lease.attach();
+        long maxTimestamp = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(CLEANUP_MIN_AGE_MINUTES);
+        FingerprintPageIterator.PageLoader<Fingerprint> loader = ids -> {
+            lease.verify();
+            List<String> ownedIds = lease.filter(ids);
+            return ownedIds.isEmpty() ? Collections.emptyList() : loadPage(ownedIds);
+        };
+        FingerprintPageIterator<Fingerprint> pages = read(jedis -> jedis.exists(getIndexesBuiltKey()), false)
+                ? new FingerprintPageIterator<>(consumer -> forEachIdByRecency(maxTimestamp, consumer), loader)
+                : new FingerprintPageIterator<>(this, loader);
+        try (Stream<Fingerprint> fingerprints = stream(pages)) {
+            fingerprints.forEach(fingerprint -> {
+                lease.checkHeld();
+                cleanFingerprint(fingerprint, listener);
+            });
+        }
+    }
+
+    /**
+     * Returns all fingerprints stored in Redis. The next pages of fingerprints are fetched from Redis while the
+     * current one is consumed, up to a bounded number of pages ahead. Malformed fingerprints
+     * are logged and skipped. The stream must be closed when it is not consumed entirely.
+     *
+     * @throws JedisException from the terminal operation of the stream if fetching a page fails.
+     */
+    public @NonNull Stream<Fingerprint> streamFingerprints() {
+        return stream(new FingerprintPageIterator<>(this, this::loadPage));
+    }
+
+    private static Stream<Fingerprint> stream(FingerprintPageIterator<Fingerprint> pages) {
+        Spliterator<FingerprintPageIterator.Page<Fingerprint>> spliterator =
+                Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false)
+                .onClose(pages::close)
+                .flatMap(page -> page.getValues().stream());
+    }
+
+    /**
+     * Hands over the ids of the fingerprints last saved up to the given time, oldest first, one page at a time.
+     * Fingerprints saved meanwhile move past the given time and are not handed over again. Each page starts at the
+     * save time of the last fingerprint of the previous page, so that removing the fingerprints already handed over
+     * does not shift the next pages, unless they were saved in the same millisecond.
+     */
+    private void forEachIdByRecency(long maxTimestamp, FingerprintPageIterator.IdConsumer consumer)
+            throws IOException, InterruptedException, JedisException {
+        double min = Double.NEGATIVE_INFINITY;
+        int offset = 0;
+        List<Tuple> page;
+        do {
+            double pageMin = min;
+            int pageOffset = offset;
+            page = read(jedis -> RecencyIndex.getOldest(jedis, instanceId, pageMin, maxTimestamp, pageOffset,
+                    MAX_FINGERPRINT_DELETES), false);
+            List<String> ids = new ArrayList<>();
+            for (Tuple tuple : page) {
+                ids.add(tuple.getElement());
+                if (tuple.getScore() == min) {
+                    offset++;
+                } else {
+                    min = tuple.getScore();
+                    offset = 1;
+                }
+            }
+            consumer.accept(ids);
+        } while (page.size() == MAX_FINGERPRINT_DELETES);
+    }
+
+    private List<Fingerprint> loadPage(List<String> ids) throws IOException, JedisException {
+        return StorageMetrics.INSTANCE.measure(StorageMetrics.Operation.LOAD_PAGE, ids, () -> doLoadPage(ids));
+    }
+
+    /**
+     * Loads a page of fingerprints, skipping the ones which do not exist or are malformed. Fingerprints with writes
+     * still in the spool are loaded from the spool, as by {@link #load(String)}.
+     */
+    private List<Fingerprint> doLoadPage(List<String> ids) throws IOException, JedisException {
+        List<String> fingerprintBlobs;
+        try {
+            fingerprintBlobs = read(jedis -> getFingerprintBlobs(jedis, ids), false);
+        } catch (JedisException e) {
+            LOGGER.log(Level.WARNING, "Failed to connect to Jedis", e);
+            throw e;
+        }
+        WriteSpool writeSpool = getWriteSpool();
+        List<Fingerprint> fingerprints = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            WriteSpool.Entry spooledEntry = writeSpool == null ? null : writeSpool.getPending(ids.get(i));
+            String fingerprintBlob = spooledEntry == null ? fingerprintBlobs.get(i) : spooledEntry.blob;
+            if (fingerprintBlob == null) {
+                continue;
+            }
+            if (spooledEntry == null) {
+                StorageMetrics.INSTANCE.recordBytes(StorageMetrics.Operation.LOAD_PAGE, fingerprintBlob);
+            }
+            try {
+                fingerprints.add(blobToFingerprint(fingerprintBlob));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Fingerprint " + ids.get(i) + " found was malformed.", e);
+            }
+        }
+        return fingerprints;
     }
 
     /**
-     * Saves the given fingerprint.
+     * Returns a page of the ids of the fingerprints stored with the given key scheme. The buckets found empty are
+     * removed once the page is read, outside of the retried read.
      */
-    public synchronized void save(Fingerprint fp) throws JedisException {
-        StringWriter writer = new StringWriter();
-        Fingerprint.getXStream().toXML(fp, writer);
-        JedisPoolManager jedisPoolManager = JedisPoolManager.INSTANCE;
-        try (Jedis jedis = jedisPoolManager.getJedis(this)) {
-            Transaction transaction = jedis.multi();
-            transaction.set(instanceId + fp.getHashString(), writer.toString());
-            transaction.sadd(instanceId, fp.getHashString());
-            transaction.exec();
+    ScanResult<String> getFingerprintIdsForCleanup(KeyScheme keyScheme, String cur) throws JedisException {
+        KeyScheme.ScanPage page;
+        try {
+            page = JedisPoolManager.INSTANCE.withPool(JedisPoolManager.Pool.BACKGROUND,
+                    () -> read(jedis -> keyScheme.scan(jedis, instanceId, cur, MAX_FINGERPRINT_DELETES), false));
         } catch (JedisException e) {
-            LOGGER.log(Level.WARNING, "Jedis failed in saving fingerprint: " + fp.toString(), e);
+            LOGGER.log(Level.WARNING, "Failed to connect to Jedis", e);
             throw e;
         }
+        if (page.hasEmptyBuckets()) {
+            try {
+                JedisPoolManager.INSTANCE.withJedis(this, JedisPoolManager.Pool.BACKGROUND, jedis -> {
+                    page.removeEmptyBuckets(jedis, instanceId);
+                    return null;
+                });
+            } catch (JedisException e) {
+                LOGGER.log(Level.FINE, "Failed to remove empty buckets, leaving them to a later scan", e);
+            }
+        }
+        return new ScanResult<>(page.getCursor(), page.getIds());
     }
 
-    /**
-     * Returns the fingerprint associated with the given unique id and the Jenkins instance ID, from the storage.
-     */
-    public @CheckForNull Fingerprint load(@NonNull String id) throws IOException, JedisException {
-        String loadedData;
-        JedisPoolManager jedisPoolManager = JedisPoolManager.INSTANCE;
+    @NonNull List<Fingerprint> bulkLoad(@NonNull List<String> ids) throws IOException {
+        return StorageMetrics.INSTANCE.measure(StorageMetrics.Operation.BULK_LOAD, ids, () -> doBulkLoad(ids));
+    }
+
+    private @NonNull List<Fingerprint> doBulkLoad(@NonNull List<String> ids) throws IOException {
+        if (ids.size() == 0) {
+            return Collections.emptyList();
+        }
 
-        try (Jedis jedis = jedisPoolManager.getJedis(this)) {
-            loadedData = jedis.get(instanceId + id);
+        List<String> fingerprintBlobs;
+        try {
+            fingerprintBlobs = read(jedis -> getFingerprintBlobs(jedis, ids), false);
         } catch (JedisException e) {
-            LOGGER.log(Level.WARNING, "Jedis failed in loading fingerprint: " + id, e);
+            LOGGER.log(Level.WARNING, "Failed to connect to Jedis", e);
             throw e;
         }
+        WriteSpool writeSpool = getWriteSpool();
+        ColdArchive coldArchive = getColdArchive();
+        List<Fingerprint> fingerprints = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            WriteSpool.Entry spooledEntry = writeSpool == null ? null : writeSpool.getPending(ids.get(i));
+            if (spooledEntry != null) {
+                fingerprints.add(spooledEntry.blob == null ? null : blobToFingerprint(spooledEntry.blob));
+                continue;
+            }
+            String fingerprintBlob = fingerprintBlobs.get(i);
+            if (fingerprintBlob == null && coldArchive != null) {
+                String archivedBlob = coldArchive.get(ids.get(i));
+                if (archivedBlob != null) {
+                    fingerprints.add(blobToFingerprint(archivedBlob));
+                    continue;
+                }
+            }
+            StorageMetrics.INSTANCE.recordBytes(StorageMetrics.Operation.BULK_LOAD, fingerprintBlob);
+            fingerprints.add(fingerprintBlob != null ? blobToFingerprint(fingerprintBlob) : null);
+            if (versionedWrites && fingerprintBlob != null) {
+                FingerprintVersions.INSTANCE.put(ids.get(i), FingerprintVersions.getVersion(fingerprintBlob));
+            }
+        }
+        return Collections.unmodifiableList(fingerprints);
+    }
 
-        if (loadedData == null) {
-            return null;
+    private List<String> getFingerprintBlobs(Jedis jedis, List<String> ids) {
+        List<KeyScheme> keySchemes = getKeySchemes(jedis);
+        List<byte[]> blobs = new ArrayList<>(keySchemes.get(0).getAll(jedis, instanceId, ids));
+        for (KeyScheme oldKeyScheme : keySchemes.subList(1, keySchemes.size())) {
+            List<String> missingIds = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                if (blobs.get(i) == null) {
+                    missingIds.add(ids.get(i));
+                }
+            }
+            if (missingIds.isEmpty()) {
+                break;
+            }
+            Iterator<byte[]> oldBlobs = oldKeyScheme.getAll(jedis, instanceId, missingIds).iterator();
+            for (int i = 0; i < ids.size(); i++) {
+                if (blobs.get(i) == null) {
+                    blobs.set(i, oldBlobs.next());
+                }
+            }
         }
+        return assemble(jedis, ids, blobs);
+    }
 
-        return blobToFingerprint(loadedData);
+    /**
+     * Returns the key schemes fingerprints may currently be stored with.
+     */
+    @NonNull List<KeyScheme> getStoredKeySchemes() throws JedisException {
+        return read(this::getKeySchemes, false);
     }
 
-    private Fingerprint blobToFingerprint(String blob) throws IOException {
-        Object loadedObject = null;
-        Fingerprint loadedFingerprint;
+    /**
+     * Returns the given fingerprints as plain XML, without {@link DictionaryCodec} encoding, with null for missing
+     * fingerprints.
+     */
+    @NonNull List<String> exportFingerprintBlobs(@NonNull List<String> ids) throws IOException, JedisException {
+        return JedisPoolManager.INSTANCE.withPool(JedisPoolManager.Pool.BACKGROUND,
+                () -> doExportFingerprintBlobs(ids));
+    }
 
-        try (InputStream in = new ByteArrayInputStream(blob.getBytes(StandardCharsets.UTF_8))) {
-            loadedObject = Fingerprint.getXStream().fromXML(in);
-            loadedFingerprint = (Fingerprint) loadedObject;
-        } catch (RuntimeException e) {
-            throw new IOException("Unexpected Fingerprint type. Expected " + Fingerprint.class + " or subclass but got "
-                    + (loadedObject != null ? loadedObject.getClass() : "null"));
+    private @NonNull List<String> doExportFingerprintBlobs(@NonNull List<String> ids)
+            throws IOException, JedisException {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> fingerprintBlobs = new ArrayList<>(read(jedis -> getFingerprintBlobs(jedis, ids), false));
+        for (int i = 0; i < fingerprintBlobs.size(); i++) {
+            String fingerprintBlob = fingerprintBlobs.get(i);
+            if (fingerprintBlob != null) {
+                fingerprintBlobs.set(i, toPlainXml(fingerprintBlob));
+            }
         }
+        return fingerprintBlobs;
+    }
 
-        return loadedFingerprint;
+    /**
+     * Hands over the fingerprints of the local {@link ColdArchive}, which are archived as plain XML.
+     */
+    void exportArchivedFingerprintBlobs(@NonNull ColdArchive.FingerprintConsumer consumer) throws IOException {
+        ColdArchive coldArchive = getColdArchive();
+        if (coldArchive != null) {
+            coldArchive.forEach(consumer);
+        }
+    }
+
+    /**
+     * Returns the given serialized fingerprint as plain XML, decoding it if it was {@link DictionaryCodec} encoded.
+     */
+    private @NonNull String toPlainXml(@NonNull String fingerprintBlob) throws IOException {
+        if (!DictionaryCodec.isEncoded(fingerprintBlob)) {
+            return fingerprintBlob;
+        }
+        return toXml(blobToFingerprint(fingerprintBlob));
+    }
 
+    private static @NonNull String toXml(@NonNull Fingerprint fp) {
+        StringWriter writer = new StringWriter();
+        Fingerprint.getXStream().toXML(fp, writer);
+        return writer.toString();
     }
 
     /**
-     * Deletes the fingerprint with the given id.
+     * Saves the given plain XML fingerprints in a single pipeline, overwriting the ones already stored.
      */
-    public void delete(@NonNull String id) throws JedisException {
-        JedisPoolManager jedisPoolManager = JedisPoolManager.INSTANCE;
-        try (Jedis jedis = jedisPoolManager.getJedis(this)) {
-            Transaction transaction = jedis.multi();
-            transaction.del(instanceId + id);
-            transaction.srem(instanceId, id);
-            transaction.exec();
-        } catch (JedisException e) {
-            LOGGER.log(Level.WARNING, "Jedis failed in deleting fingerprint: " + id, e);
-            throw e;
+    void restoreFingerprintBlobs(@NonNull List<String> ids, @NonNull List<String> fingerprintBlobs)
+            throws IOException, JedisException {
+        JedisPoolManager.INSTANCE.withPool(JedisPoolManager.Pool.BACKGROUND, () -> {
+            doRestoreFingerprintBlobs(ids, fingerprintBlobs);
+            return null;
+        });
+    }
+
+    private void doRestoreFingerprintBlobs(@NonNull List<String> ids, @NonNull List<String> fingerprintBlobs)
+            throws IOException, JedisException {
+        List<String> storedBlobs = new ArrayList<>();
+        for (String fingerprintBlob : fingerprintBlobs) {
+            storedBlobs.add(dictionaryEncoding ? fingerprintToBlob(blobToFingerprint(fingerprintBlob))
+                    : fingerprintBlob);
+        }
+        JedisPoolManager.INSTANCE.withJedis(this, jedis -> {
+            List<KeyScheme> keySchemes = getKeySchemes(jedis);
+            Pipeline pipeline = jedis.pipelined();
+            for (int i = 0; i < ids.size(); i++) {
+                queueSave(pipeline, keySchemes, ids.get(i), storedBlobs.get(i));
+            }
+            pipeline.sync();
+            return null;
+        });
+        for (String id : ids) {
+            LastKnownGoodCache.INSTANCE.remove(id);
+            SaveDigestCache.INSTANCE.remove(id);
+            FingerprintVersions.INSTANCE.remove(id);
         }
     }
 
     /**
-     * Returns true if there's some data in the fingerprint database.
+     * Returns the fingerprints whose file name, or base name, starts with the given prefix, ignoring case, looked up
+     * in the {@link FileNameIndex}, up to about the given number. Index entries of deleted fingerprints which are
+     * found are removed.
      */
-    public boolean isReady() {
-        JedisPoolManager jedisPoolManager = JedisPoolManager.INSTANCE;
-        try (Jedis jedis = jedisPoolManager.getJedis(this)) {
-            return jedis.smembers(instanceId).size() != 0;
-        } catch (JedisException e) {
-            LOGGER.log(Level.WARNING, "Failed to connect to Jedis", e);
-            throw e;
+    @NonNull List<Fingerprint> searchByFileName(@NonNull String prefix, int limit) throws IOException, JedisException {
+        Map<String, String> fileNamesById = read(jedis -> FileNameIndex.search(jedis, instanceId, prefix, limit),
+                false);
+        List<String> ids = new ArrayList<>(fileNamesById.keySet());
+        List<Fingerprint> fingerprints = new ArrayList<>();
+        List<String> deletedIds = new ArrayList<>();
+        List<Fingerprint> loaded = bulkLoad(ids);
+        for (int i = 0; i < ids.size(); i++) {
+            if (loaded.get(i) == null) {
+                deletedIds.add(ids.get(i));
+            } else {
+                fingerprints.add(loaded.get(i));
+            }
+        }
+        if (!deletedIds.isEmpty()) {
+            JedisPoolManager.INSTANCE.withJedis(this, jedis -> {
+                Pipeline pipeline = jedis.pipelined();
+                for (String id : deletedIds) {
+                    FileNameIndex.queueRemove(pipeline, instanceId, fileNamesById.get(id), id);
+                }
+                pipeline.sync();
+                return null;
+            });
         }
+        return fingerprints;
     }
 
-    public void iterateAndCleanupFingerprints(TaskListener listener) {
-        String currentPointer = ScanParams.SCAN_POINTER_START;
+    /**
+     * Indexes the fingerprints stored before the {@link FileNameIndex} and the {@link RecencyIndex} were introduced,
+     * unless they have already been indexed. Fingerprints saved meanwhile are indexed as they are saved, and keep
+     * their save time in the recency index.
+     */
+    void buildIndexes(TaskListener listener) throws JedisException {
+        JedisPoolManager.INSTANCE.withPool(JedisPoolManager.Pool.BACKGROUND, () -> {
+            doBuildIndexes(listener);
+            return null;
+        });
+    }
 
-        try {
+    private void doBuildIndexes(TaskListener listener) throws JedisException {
+        JedisPoolManager jedisPoolManager = JedisPoolManager.INSTANCE;
+        byte[] builtKey = getIndexesBuiltKey();
+        if (read(jedis -> jedis.exists(builtKey), false)) {
+            return;
+        }
+        int indexed = 0;
+        for (KeyScheme keyScheme : getStoredKeySchemes()) {
+            String currentPointer = ScanParams.SCAN_POINTER_START;
             do {
-                ScanResult<String> scanResult = RedisFingerprintStorage.get().getFingerprintIdsForCleanup(currentPointer);
-                List<String> fingerprintIds = scanResult.getResult();
-
-                try {
-                    List<Fingerprint> fingerprints = bulkLoad(fingerprintIds);
-                    for (Fingerprint fingerprint : fingerprints) {
-                        if (fingerprint != null) {
-                            cleanFingerprint(fingerprint, listener);
+                ScanResult<String> scanResult = getFingerprintIdsForCleanup(keyScheme, currentPointer);
+                List<String> ids = scanResult.getResult();
+                indexed += jedisPoolManager.withJedis(this, jedis -> {
+                    List<String> fingerprintBlobs = assemble(jedis, ids, keyScheme.getAll(jedis, instanceId, ids));
+                    Pipeline pipeline = jedis.pipelined();
+                    int batchIndexed = 0;
+                    for (int i = 0; i < ids.size(); i++) {
+                        String fingerprintBlob = fingerprintBlobs.get(i);
+                        if (fingerprintBlob != null) {
+                            FileNameIndex.queueAdd(pipeline, instanceId, FileNameIndex.getFileName(fingerprintBlob),
+                                    ids.get(i));
+                            RecencyIndex.queueAdd(pipeline, instanceId, ids.get(i),
+                                    RecencyIndex.getTimestamp(fingerprintBlob));
+                            batchIndexed++;
                         }
                     }
-                } catch (IOException e) {
-                    LOGGER.log(Level.WARNING, "Fingerprints found were malformed.", e);
-                }
-
+                    pipeline.sync();
+                    return batchIndexed;
+                });
                 currentPointer = scanResult.getCursor();
             } while (!currentPointer.equals(ScanParams.SCAN_POINTER_START));
-        } catch (JedisException e) {
-            LOGGER.log(Level.WARNING, "Jedis failed to clean fingerprints. ", e);
         }
+        jedisPoolManager.withJedis(this, jedis -> jedis.set(builtKey, new byte[] {'1'}));
+        listener.getLogger().println("Indexed " + indexed + " fingerprints");
+    }
 
+    /**
+     * Returns the key marking that the fingerprints stored before the indexes were introduced have been indexed.
+     */
+    private byte[] getIndexesBuiltKey() {
+        return KeyScheme.getKey('N', instanceId, new byte[0]);
     }
 
-    ScanResult<String> getFingerprintIdsForCleanup(String cur) throws JedisException {
-        JedisPoolManager jedisPoolManager = JedisPoolManager.INSTANCE;
-        ScanParams scanParams = new ScanParams().count(MAX_FINGERPRINT_DELETES);
-        try (Jedis jedis = jedisPoolManager.getJedis(this)) {
-            return jedis.sscan(instanceId, cur, scanParams);
-        } catch (JedisException e) {
-            LOGGER.log(Level.WARNING, "Failed to connect to Jedis", e);
-            throw e;
+    /**
+     * Loads the most recently saved fingerprints into the {@link LastKnownGoodCache}, up to the given number, so that
+     * they can be served while the circuit breaker is open right after a restart. Returns the number of fingerprints
+     * loaded.
+     */
+    int preloadRecentFingerprints(int count) throws JedisException {
+        return JedisPoolManager.INSTANCE.withPool(JedisPoolManager.Pool.BACKGROUND,
+                () -> doPreloadRecentFingerprints(count));
+    }
+
+    private int doPreloadRecentFingerprints(int count) throws JedisException {
+        List<String> ids = read(jedis -> RecencyIndex.getMostRecent(jedis, instanceId, count), false);
+        List<String> fingerprintBlobs = read(jedis -> getFingerprintBlobs(jedis, ids), false);
+        int preloaded = 0;
+        // Oldest first, so that the most recent ones are evicted last.
+        for (int i = ids.size() - 1; i >= 0; i--) {
+            if (fingerprintBlobs.get(i) == null) {
+                continue;
+            }
+            try {
+                LastKnownGoodCache.INSTANCE.putIfAbsent(ids.get(i), toPlainXml(fingerprintBlobs.get(i)));
+                preloaded++;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Fingerprint " + ids.get(i) + " found was malformed.", e);
+            }
         }
+        return preloaded;
     }
 
-    @NonNull List<Fingerprint> bulkLoad(@NonNull List<String> ids) throws IOException {
-        JedisPoolManager jedisPoolManager = JedisPoolManager.INSTANCE;
-        List<String> instanceConcatenatedIds = new ArrayList<>();
+    /**
+     * Moves the fingerprints not saved for the configured number of days from Redis to the local
+     * {@link ColdArchive}, oldest first, as listed by the {@link RecencyIndex}. A fingerprint saved meanwhile is left
+     * in Redis. Nothing is moved until the fingerprints stored before the index was introduced have been indexed, nor
+     * while keys are being migrated. Returns the number of fingerprints moved.
+     */
+    int archiveColdFingerprints() throws IOException, JedisException {
+        return JedisPoolManager.INSTANCE.withPool(JedisPoolManager.Pool.BACKGROUND,
+                this::doArchiveColdFingerprints);
+    }
 
-        if (ids.size() == 0) {
-            return Collections.emptyList();
+    private int doArchiveColdFingerprints() throws IOException, JedisException {
+        ColdArchive coldArchive = getColdArchive();
+        if (coldArchiveAfterDays <= 0 || coldArchive == null
+                || !read(jedis -> jedis.exists(getIndexesBuiltKey()), false)) {
+            return 0;
         }
+        List<KeyScheme> keySchemes = read(this::getKeySchemes, false);
+        if (keySchemes.size() > 1) {
+            return 0;
+        }
+        KeyScheme keyScheme = keySchemes.get(0);
+        WriteSpool writeSpool = getWriteSpool();
+        long maxTimestamp = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(coldArchiveAfterDays);
+        int archived = 0;
+        int skipped = 0;
+        List<Tuple> page;
+        do {
+            // Archived fingerprints leave the index, so the next page starts after the ones left in Redis.
+            int offset = skipped;
+            page = read(jedis -> RecencyIndex.getOldest(jedis, instanceId, Double.NEGATIVE_INFINITY, maxTimestamp,
+                    offset, MAX_FINGERPRINT_DELETES), false);
+            List<String> ids = new ArrayList<>();
+            for (Tuple tuple : page) {
+                ids.add(tuple.getElement());
+            }
+            List<byte[]> storedBlobs = read(jedis -> keyScheme.getAll(jedis, instanceId, ids), false);
+            List<String> fingerprintBlobs = read(jedis -> assemble(jedis, ids, storedBlobs), false);
+            for (int i = 0; i < ids.size(); i++) {
+                String id = ids.get(i);
+                if (fingerprintBlobs.get(i) != null && (writeSpool == null || !writeSpool.isPending(id))
+                        && archiveColdFingerprint(coldArchive, keyScheme, id, storedBlobs.get(i),
+                        fingerprintBlobs.get(i))) {
+                    archived++;
+                } else {
+                    skipped++;
+                }
+            }
+        } while (page.size() == MAX_FINGERPRINT_DELETES);
+        return archived;
+    }
 
-        for (String id : ids) {
-            instanceConcatenatedIds.add(instanceId + id);
+    /**
+     * Archives the given fingerprint, then deletes it from Redis unless it was saved meanwhile, in which case it is
+     * removed from the archive again. Returns whether it was moved.
+     */
+    private boolean archiveColdFingerprint(ColdArchive coldArchive, KeyScheme keyScheme, String id, byte[] storedBlob,
+                                           String fingerprintBlob) throws IOException, JedisException {
+        coldArchive.put(id, toPlainXml(fingerprintBlob));
+        String fileName = FileNameIndex.getFileName(fingerprintBlob);
+        boolean deleted = JedisPoolManager.INSTANCE.withJedis(this, jedis -> MutationScript.runIfDigest(jedis,
+                pipeline -> keyScheme.queueGet(pipeline, instanceId, id), MutationScript.sha1Hex(storedBlob),
+                pipeline -> queueDelete(pipeline, Collections.singletonList(keyScheme), id, fileName)));
+        if (!deleted) {
+            coldArchive.remove(id);
+            return false;
         }
+        SaveDigestCache.INSTANCE.remove(id);
+        FingerprintVersions.INSTANCE.remove(id);
+        return true;
+    }
 
-        String[] fingerprintIds = instanceConcatenatedIds.toArray(new String[instanceConcatenatedIds.size()]);
-        try (Jedis jedis = jedisPoolManager.getJedis(this)) {
-            List<String> fingerprintBlobs = jedis.mget(fingerprintIds);
-            List<Fingerprint> fingerprints = new ArrayList<>();
-            for (String fingerprintBlob : fingerprintBlobs) {
-                fingerprints.add(blobToFingerprint(fingerprintBlob));
+    /**
+     * Removes the fingerprints of the local {@link ColdArchive} which only reference builds that no longer exist, as
+     * {@link #cleanFingerprint} deletes them from Redis. Archived fingerprints are not trimmed otherwise.
+     */
+    private void cleanupColdFingerprints(TaskListener listener) {
+        try {
+            ColdArchive coldArchive = getColdArchive();
+            if (coldArchive == null) {
+                return;
             }
-            return Collections.unmodifiableList(fingerprints);
-        } catch (JedisException e) {
-            LOGGER.log(Level.WARNING, "Failed to connect to Jedis", e);
-            throw e;
+            coldArchive.forEach((id, fingerprintBlob) -> {
+                Fingerprint fingerprint = blobToFingerprint(fingerprintBlob);
+                if (!fingerprint.isAlive() && fingerprint.getFacetBlockingDeletion() == null) {
+                    listener.getLogger().println("deleting obsolete archived " + fingerprint);
+                    coldArchive.remove(id);
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to clean archived fingerprints", e);
         }
     }
 
@@ -233,7 +1455,63 @@ public class RedisFingerprintStorage extends FingerprintStorage {
     private boolean ssl = RedisFingerprintStorageDescriptor.DEFAULT_SSL;
     private int connectionTimeout = RedisFingerprintStorageDescriptor.DEFAULT_CONNECTION_TIMEOUT;
     private int socketTimeout = RedisFingerprintStorageDescriptor.DEFAULT_SOCKET_TIMEOUT;
+    private int poolSize = RedisFingerprintStorageDescriptor.DEFAULT_POOL_SIZE;
+    private int backgroundPoolSize = RedisFingerprintStorageDescriptor.DEFAULT_BACKGROUND_POOL_SIZE;
+    private int backgroundSocketTimeout = RedisFingerprintStorageDescriptor.DEFAULT_BACKGROUND_SOCKET_TIMEOUT;
     private String credentialsId = RedisFingerprintStorageDescriptor.DEFAULT_CREDENTIALS_ID;
+    private boolean circuitBreakerEnabled = RedisFingerprintStorageDescriptor.DEFAULT_CIRCUIT_BREAKER_ENABLED;
+    private int circuitBreakerFailureRateThreshold =
+            RedisFingerprintStorageDescriptor.DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD;
+    private int circuitBreakerWaitDuration = RedisFingerprintStorageDescriptor.DEFAULT_CIRCUIT_BREAKER_WAIT_DURATION;
+    private boolean serveStaleOnOpenCircuit = RedisFingerprintStorageDescriptor.DEFAULT_SERVE_STALE_ON_OPEN_CIRCUIT;
+    private boolean spoolWrites = RedisFingerprintStorageDescriptor.DEFAULT_SPOOL_WRITES;
+    private int spoolLatencyThreshold = RedisFingerprintStorageDescriptor.DEFAULT_SPOOL_LATENCY_THRESHOLD;
+    private int maxReadRetries = RedisFingerprintStorageDescriptor.DEFAULT_MAX_READ_RETRIES;
+    private int readLatencyBudget = RedisFingerprintStorageDescriptor.DEFAULT_READ_LATENCY_BUDGET;
+    private boolean hedgedReads = RedisFingerprintStorageDescriptor.DEFAULT_HEDGED_READS;
+    private KeyScheme keyScheme = RedisFingerprintStorageDescriptor.DEFAULT_KEY_SCHEME;
+    private boolean dictionaryEncoding = RedisFingerprintStorageDescriptor.DEFAULT_DICTIONARY_ENCODING;
+    private int slowOperationThreshold = RedisFingerprintStorageDescriptor.DEFAULT_SLOW_OPERATION_THRESHOLD;
+    private UnchangedSaves unchangedSaves = RedisFingerprintStorageDescriptor.DEFAULT_UNCHANGED_SAVES;
+    private boolean versionedWrites = RedisFingerprintStorageDescriptor.DEFAULT_VERSIONED_WRITES;
+    private boolean shareCleanup = RedisFingerprintStorageDescriptor.DEFAULT_SHARE_CLEANUP;
+    private int coldArchiveAfterDays = RedisFingerprintStorageDescriptor.DEFAULT_COLD_ARCHIVE_AFTER_DAYS;
+    private boolean coalesceLoads = RedisFingerprintStorageDescriptor.DEFAULT_COALESCE_LOADS;
+    private transient volatile LoadMultiplexer loadMultiplexer;
+    private transient volatile WriteSpool writeSpool;
+    private transient volatile boolean writeSpoolChecked;
+    private transient volatile ColdArchive coldArchive;
+    private transient volatile boolean coldArchiveChecked;
+
+    /**
+     * Fills in defaults for settings missing from configurations saved by older versions of the plugin.
+     */
+    protected Object readResolve() {
+        if (poolSize <= 0) {
+            poolSize = RedisFingerprintStorageDescriptor.DEFAULT_POOL_SIZE;
+        }
+        if (backgroundPoolSize <= 0) {
+            backgroundPoolSize = RedisFingerprintStorageDescriptor.DEFAULT_BACKGROUND_POOL_SIZE;
+        }
+        if (backgroundSocketTimeout <= 0) {
+            backgroundSocketTimeout = RedisFingerprintStorageDescriptor.DEFAULT_BACKGROUND_SOCKET_TIMEOUT;
+        }
+        if (circuitBreakerFailureRateThreshold <= 0) {
+            circuitBreakerFailureRateThreshold =
+                    RedisFingerprintStorageDescriptor.DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD;
+        }
+        if (circuitBreakerWaitDuration <= 0) {
+            circuitBreakerWaitDuration = RedisFingerprintStorageDescriptor.DEFAULT_CIRCUIT_BREAKER_WAIT_DURATION;
+        }
+        if (keyScheme == null) {
+            keyScheme = RedisFingerprintStorageDescriptor.DEFAULT_KEY_SCHEME;
+        }
+        SlowOperationLog.INSTANCE.setThreshold(slowOperationThreshold);
+        if (unchangedSaves == null) {
+            unchangedSaves = RedisFingerprintStorageDescriptor.DEFAULT_UNCHANGED_SAVES;
+        }
+        return this;
+    }
 
     public String getHost() {
         return host;
@@ -295,6 +1573,36 @@ public class RedisFingerprintStorage extends FingerprintStorage {
         JedisPoolManager.INSTANCE.createJedisPoolFromConfig(this);
     }
 
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    @DataBoundSetter
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+        JedisPoolManager.INSTANCE.createJedisPoolFromConfig(this);
+    }
+
+    public int getBackgroundPoolSize() {
+        return backgroundPoolSize;
+    }
+
+    @DataBoundSetter
+    public void setBackgroundPoolSize(int backgroundPoolSize) {
+        this.backgroundPoolSize = backgroundPoolSize;
+        JedisPoolManager.INSTANCE.createJedisPoolFromConfig(this);
+    }
+
+    public int getBackgroundSocketTimeout() {
+        return backgroundSocketTimeout;
+    }
+
+    @DataBoundSetter
+    public void setBackgroundSocketTimeout(int backgroundSocketTimeout) {
+        this.backgroundSocketTimeout = backgroundSocketTimeout;
+        JedisPoolManager.INSTANCE.createJedisPoolFromConfig(this);
+    }
+
     public String getCredentialsId() {
         return credentialsId;
     }
@@ -305,6 +1613,173 @@ public class RedisFingerprintStorage extends FingerprintStorage {
         JedisPoolManager.INSTANCE.createJedisPoolFromConfig(this);
     }
 
+    public boolean getCircuitBreakerEnabled() {
+        return circuitBreakerEnabled;
+    }
+
+    @DataBoundSetter
+    public void setCircuitBreakerEnabled(boolean circuitBreakerEnabled) {
+        this.circuitBreakerEnabled = circuitBreakerEnabled;
+        JedisPoolManager.INSTANCE.createCircuitBreakerFromConfig(this);
+    }
+
+    public int getCircuitBreakerFailureRateThreshold() {
+        return circuitBreakerFailureRateThreshold;
+    }
+
+    @DataBoundSetter
+    public void setCircuitBreakerFailureRateThreshold(int circuitBreakerFailureRateThreshold) {
+        this.circuitBreakerFailureRateThreshold = circuitBreakerFailureRateThreshold;
+        JedisPoolManager.INSTANCE.createCircuitBreakerFromConfig(this);
+    }
+
+    public int getCircuitBreakerWaitDuration() {
+        return circuitBreakerWaitDuration;
+    }
+
+    @DataBoundSetter
+    public void setCircuitBreakerWaitDuration(int circuitBreakerWaitDuration) {
+        this.circuitBreakerWaitDuration = circuitBreakerWaitDuration;
+        JedisPoolManager.INSTANCE.createCircuitBreakerFromConfig(this);
+    }
+
+    public boolean getServeStaleOnOpenCircuit() {
+        return serveStaleOnOpenCircuit;
+    }
+
+    @DataBoundSetter
+    public void setServeStaleOnOpenCircuit(boolean serveStaleOnOpenCircuit) {
+        this.serveStaleOnOpenCircuit = serveStaleOnOpenCircuit;
+        if (!serveStaleOnOpenCircuit) {
+            LastKnownGoodCache.INSTANCE.clear();
+        }
+    }
+
+    public boolean getSpoolWrites() {
+        return spoolWrites;
+    }
+
+    @DataBoundSetter
+    public void setSpoolWrites(boolean spoolWrites) {
+        this.spoolWrites = spoolWrites;
+    }
+
+    public int getSpoolLatencyThreshold() {
+        return spoolLatencyThreshold;
+    }
+
+    @DataBoundSetter
+    public void setSpoolLatencyThreshold(int spoolLatencyThreshold) {
+        this.spoolLatencyThreshold = spoolLatencyThreshold;
+    }
+
+    public int getMaxReadRetries() {
+        return maxReadRetries;
+    }
+
+    @DataBoundSetter
+    public void setMaxReadRetries(int maxReadRetries) {
+        this.maxReadRetries = maxReadRetries;
+    }
+
+    public int getReadLatencyBudget() {
+        return readLatencyBudget;
+    }
+
+    @DataBoundSetter
+    public void setReadLatencyBudget(int readLatencyBudget) {
+        this.readLatencyBudget = readLatencyBudget;
+    }
+
+    public boolean getHedgedReads() {
+        return hedgedReads;
+    }
+
+    @DataBoundSetter
+    public void setHedgedReads(boolean hedgedReads) {
+        this.hedgedReads = hedgedReads;
+    }
+
+    public KeyScheme getKeyScheme() {
+        return keyScheme;
+    }
+
+    @DataBoundSetter
+    public void setKeyScheme(KeyScheme keyScheme) {
+        this.keyScheme = keyScheme;
+        JedisPoolManager.INSTANCE.resetKeyMigrationPending();
+    }
+
+    public boolean getDictionaryEncoding() {
+        return dictionaryEncoding;
+    }
+
+    @DataBoundSetter
+    public void setDictionaryEncoding(boolean dictionaryEncoding) {
+        this.dictionaryEncoding = dictionaryEncoding;
+    }
+
+    public int getSlowOperationThreshold() {
+        return slowOperationThreshold;
+    }
+
+    @DataBoundSetter
+    public void setSlowOperationThreshold(int slowOperationThreshold) {
+        this.slowOperationThreshold = slowOperationThreshold;
+        SlowOperationLog.INSTANCE.setThreshold(slowOperationThreshold);
+    }
+
+    public UnchangedSaves getUnchangedSaves() {
+        return unchangedSaves;
+    }
+
+    @DataBoundSetter
+    public void setUnchangedSaves(UnchangedSaves unchangedSaves) {
+        this.unchangedSaves = unchangedSaves;
+        if (unchangedSaves == UnchangedSaves.WRITE) {
+            SaveDigestCache.INSTANCE.clear();
+        }
+    }
+
+    public boolean getVersionedWrites() {
+        return versionedWrites;
+    }
+
+    @DataBoundSetter
+    public void setVersionedWrites(boolean versionedWrites) {
+        this.versionedWrites = versionedWrites;
+        if (!versionedWrites) {
+            FingerprintVersions.INSTANCE.clear();
+        }
+    }
+
+    public boolean getShareCleanup() {
+        return shareCleanup;
+    }
+
+    @DataBoundSetter
+    public void setShareCleanup(boolean shareCleanup) {
+        this.shareCleanup = shareCleanup;
+    }
+
+    public int getColdArchiveAfterDays() {
+        return coldArchiveAfterDays;
+    }
+
+    @DataBoundSetter
+    public void setColdArchiveAfterDays(int coldArchiveAfterDays) {
+        this.coldArchiveAfterDays = coldArchiveAfterDays;
+    }
+
+    public boolean getCoalesceLoads() {
+        return coalesceLoads;
+    }
+
+    @DataBoundSetter
+    public void setCoalesceLoads(boolean coalesceLoads) {
+        this.coalesceLoads = coalesceLoads;
+    }
+
     public @NonNull String getUsername() {
         StandardUsernamePasswordCredentials credential = CredentialHelper.getCredential(credentialsId);
         return CredentialHelper.getUsernameFromCredential(credential);
@@ -54,7 +54,27 @@ public class RedisFingerprintStorageDescriptor extends FingerprintStorageDescrip
     public static final boolean DEFAULT_SSL = false;
     public static final int DEFAULT_CONNECTION_TIMEOUT = 2000;
     public static final int DEFAULT_SOCKET_TIMEOUT = 2000;
+    public static final int DEFAULT_POOL_SIZE = 8;
+    public static final int DEFAULT_BACKGROUND_POOL_SIZE = 2;
+    public static final int DEFAULT_BACKGROUND_SOCKET_TIMEOUT = 10000;
     public static final String DEFAULT_CREDENTIALS_ID = "";
+    public static final boolean DEFAULT_CIRCUIT_BREAKER_ENABLED = false;
+    public static final int DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD = 50;
+    public static final int DEFAULT_CIRCUIT_BREAKER_WAIT_DURATION = 30000;
+    public static final boolean DEFAULT_SERVE_STALE_ON_OPEN_CIRCUIT = false;
+    public static final boolean DEFAULT_SPOOL_WRITES = false;
+    public static final int DEFAULT_SPOOL_LATENCY_THRESHOLD = 0;
+    public static final int DEFAULT_MAX_READ_RETRIES = 0;
+    public static final int DEFAULT_READ_LATENCY_BUDGET = 0;
+    public static final boolean DEFAULT_HEDGED_READS = false;
+    public static final KeyScheme DEFAULT_KEY_SCHEME = KeyScheme.LEGACY;
+    public static final boolean DEFAULT_DICTIONARY_ENCODING = false;
+    public static final UnchangedSaves DEFAULT_UNCHANGED_SAVES = UnchangedSaves.WRITE;
+    public static final boolean DEFAULT_VERSIONED_WRITES = false;
+    public static final boolean DEFAULT_SHARE_CLEANUP = false;
+    public static final int DEFAULT_COLD_ARCHIVE_AFTER_DAYS = 0;
+    public static final boolean DEFAULT_COALESCE_LOADS = false;
+    public static final int DEFAULT_SLOW_OPERATION_THRESHOLD = 0;
 
     @Override
     public String getDisplayName() {
@@ -112,6 +132,78 @@ public class RedisFingerprintStorageDescriptor extends FingerprintStorageDescrip
         return FormValidation.ok();
     }
 
+    @Restricted(NoExternalUse.class)
+    public FormValidation doCheckPoolSize(@QueryParameter int value) {
+        if (value < 1) {
+            return FormValidation.error("Pool size must be a positive number of connections");
+        }
+        return FormValidation.ok();
+    }
+
+    @Restricted(NoExternalUse.class)
+    public FormValidation doCheckBackgroundPoolSize(@QueryParameter int value) {
+        if (value < 1) {
+            return FormValidation.error("Pool size must be a positive number of connections");
+        }
+        return FormValidation.ok();
+    }
+
+    @Restricted(NoExternalUse.class)
+    public FormValidation doCheckCircuitBreakerFailureRateThreshold(@QueryParameter int value) {
+        if (value < 1 || value > 100) {
+            return FormValidation.error("Failure rate threshold must be a percentage between 1 and 100");
+        }
+        return FormValidation.ok();
+    }
+
+    @Restricted(NoExternalUse.class)
+    public FormValidation doCheckCircuitBreakerWaitDuration(@QueryParameter int value) {
+        if (value < 1) {
+            return FormValidation.error("Wait duration must be a positive number of milliseconds");
+        }
+        return FormValidation.ok();
+    }
+
+    @Restricted(NoExternalUse.class)
+    public FormValidation doCheckSpoolLatencyThreshold(@QueryParameter int value) {
+        if (value < 0) {
+            return FormValidation.error("Latency threshold must not be negative");
+        }
+        return FormValidation.ok();
+    }
+
+    @Restricted(NoExternalUse.class)
+    public FormValidation doCheckMaxReadRetries(@QueryParameter int value) {
+        if (value < 0) {
+            return FormValidation.error("Number of retries must not be negative");
+        }
+        return FormValidation.ok();
+    }
+
+    @Restricted(NoExternalUse.class)
+    public FormValidation doCheckReadLatencyBudget(@QueryParameter int value) {
+        if (value < 0) {
+            return FormValidation.error("Latency budget must not be negative");
+        }
+        return FormValidation.ok();
+    }
+
+    @Restricted(NoExternalUse.class)
+    public FormValidation doCheckColdArchiveAfterDays(@QueryParameter int value) {
+        if (value < 0) {
+            return FormValidation.error("Number of days must not be negative");
+        }
+        return FormValidation.ok();
+    }
+
+    @Restricted(NoExternalUse.class)
+    public FormValidation doCheckSlowOperationThreshold(@QueryParameter int value) {
+        if (value < 0) {
+            return FormValidation.error("Threshold must not be negative");
+        }
+        return FormValidation.ok();
+    }
+
     @RequirePOST
     @Restricted(NoExternalUse.class)
     public FormValidation doTestRedisConnection(
@@ -0,0 +1,205 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Api;
+import hudson.model.ManagementLink;
+import hudson.security.Permission;
+import jenkins.fingerprints.FingerprintStorage;
+import jenkins.model.Jenkins;
+import org.apache.commons.fileupload.FileItem;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+import redis.clients.jedis.exceptions.JedisException;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Administration page of the Redis fingerprint storage, whose slow operation log is also exposed through the remote
+ * access API.
+ */
+@Extension
+@ExportedBean
+public class RedisFingerprintStorageManagementLink extends ManagementLink {
+
+    private static final Logger LOGGER = Logger.getLogger(RedisFingerprintStorageManagementLink.class.getName());
+
+    private volatile String restoreStatus;
+
+    @Override
+    public String getIconFileName() {
+        return "fingerprint.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.RedisFingerprintStorage_DisplayName();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.RedisFingerprintStorageManagementLink_Description();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "redis-fingerprint-storage";
+    }
+
+    @NonNull
+    @Override
+    public Permission getRequiredPermission() {
+        return Jenkins.ADMINISTER;
+    }
+
+    @NonNull
+    @Override
+    public Category getCategory() {
+        return Category.TOOLS;
+    }
+
+    public boolean isRedisFingerprintStorageConfigured() {
+        return FingerprintStorage.get() instanceof RedisFingerprintStorage;
+    }
+
+    public FingerprintImporter getImporter() {
+        return FingerprintImporter.INSTANCE;
+    }
+
+    public FingerprintDiagnostics getDiagnostics() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        return FingerprintDiagnostics.INSTANCE;
+    }
+
+    /**
+     * Returns the search of fingerprints by the file name prefix of the {@code fileName} query parameter.
+     */
+    public FingerprintSearch getSearch() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        FingerprintStorage fingerprintStorage = FingerprintStorage.get();
+        String fileName = Stapler.getCurrentRequest().getParameter("fileName");
+        return FingerprintSearch.search(fingerprintStorage instanceof RedisFingerprintStorage
+                ? (RedisFingerprintStorage) fingerprintStorage : null, fileName);
+    }
+
+    public Api getApi() {
+        return new Api(this);
+    }
+
+    @Exported
+    public List<SlowOperation> getSlowOperations() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        return SlowOperationLog.INSTANCE.getOperations();
+    }
+
+    public String getRestoreStatus() {
+        return restoreStatus;
+    }
+
+    @RequirePOST
+    public HttpResponse doImportFingerprints(@QueryParameter int threads, @QueryParameter int maxRate,
+                                             @QueryParameter boolean deleteImported) {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        FingerprintStorage fingerprintStorage = FingerprintStorage.get();
+        if (fingerprintStorage instanceof RedisFingerprintStorage) {
+            FingerprintImporter.INSTANCE.start((RedisFingerprintStorage) fingerprintStorage, threads, maxRate,
+                    deleteImported);
+        }
+        return HttpResponses.redirectToDot();
+    }
+
+    @RequirePOST
+    public HttpResponse doClearSlowOperations() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        SlowOperationLog.INSTANCE.clear();
+        return HttpResponses.redirectToDot();
+    }
+
+    @RequirePOST
+    public HttpResponse doCancelImport() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        FingerprintImporter.INSTANCE.cancel();
+        return HttpResponses.redirectToDot();
+    }
+
+    @RequirePOST
+    public void doExport(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        FingerprintStorage fingerprintStorage = FingerprintStorage.get();
+        if (!(fingerprintStorage instanceof RedisFingerprintStorage)) {
+            rsp.sendRedirect(".");
+            return;
+        }
+        String fileName = "fingerprints-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".gz";
+        rsp.setContentType("application/gzip");
+        rsp.setHeader("Content-Disposition", "attachment; filename=" + fileName);
+        try (OutputStream out = rsp.getOutputStream()) {
+            long exported = FingerprintArchive.export((RedisFingerprintStorage) fingerprintStorage, out);
+            LOGGER.log(Level.INFO, "Exported {0} fingerprints", exported);
+        } catch (JedisException e) {
+            LOGGER.log(Level.WARNING, "Export of fingerprints failed", e);
+            throw new IOException(e);
+        }
+    }
+
+    @RequirePOST
+    public HttpResponse doRestore(StaplerRequest req) throws IOException, ServletException {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        FingerprintStorage fingerprintStorage = FingerprintStorage.get();
+        if (!(fingerprintStorage instanceof RedisFingerprintStorage)) {
+            return HttpResponses.redirectToDot();
+        }
+        FileItem archive = req.getFileItem("archive");
+        if (archive == null || archive.getSize() == 0) {
+            restoreStatus = "No archive uploaded";
+            return HttpResponses.redirectToDot();
+        }
+        try (InputStream in = archive.getInputStream()) {
+            long restored = FingerprintArchive.restore((RedisFingerprintStorage) fingerprintStorage, in);
+            restoreStatus = "Restored " + restored + " fingerprints";
+        } catch (IOException | JedisException e) {
+            LOGGER.log(Level.WARNING, "Restore of fingerprints failed", e);
+            restoreStatus = "Restore failed: " + e.getMessage();
+        }
+        return HttpResponses.redirectToDot();
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Retries idempotent Redis calls failing with a connection error, with exponential backoff and full jitter, as long
+ * as the latency budget of the operation is not exhausted.
+ */
+class RetryPolicy {
+
+    static final long BASE_BACKOFF_MILLIS = 20;
+    static final long MAX_BACKOFF_MILLIS = 1000;
+
+    private final int maxRetries;
+    private final long latencyBudgetNanos;
+
+    /**
+     * @param maxRetries number of retries after the first attempt.
+     * @param latencyBudgetMillis time after which no further attempt is made, or 0 for no budget.
+     */
+    RetryPolicy(int maxRetries, long latencyBudgetMillis) {
+        this.maxRetries = maxRetries;
+        this.latencyBudgetNanos = latencyBudgetMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(latencyBudgetMillis)
+                : Long.MAX_VALUE;
+    }
+
+    <T> T execute(Supplier<T> call) throws JedisException {
+        long start = System.nanoTime();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return call.get();
+            } catch (CircuitBreakerOpenException e) {
+                throw e;
+            } catch (JedisConnectionException e) {
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+                long backoffMillis = ThreadLocalRandom.current().nextLong(
+                        Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 16)) + 1);
+                long elapsedNanos = System.nanoTime() - start;
+                if (elapsedNanos + TimeUnit.MILLISECONDS.toNanos(backoffMillis) >= latencyBudgetNanos) {
+                    throw e;
+                }
+                StorageMetrics.INSTANCE.retries.increment();
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+}
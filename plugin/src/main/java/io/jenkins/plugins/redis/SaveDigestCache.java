@@ -0,0 +1,69 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.SystemProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Singleton holding the digest of the serialized form last written to Redis by this controller for recently saved
+ * fingerprints, so that saves which would write the same content again can be skipped.
+ *
+ * Entries are only added once a write is known to have reached Redis, and are removed when the fingerprint is deleted,
+ * spooled or restored, so that a save is never skipped while Redis may hold something else.
+ */
+public enum SaveDigestCache {
+
+    INSTANCE;
+
+    static final int MAX_ENTRIES = SystemProperties.getInteger(
+            SaveDigestCache.class.getName() + ".maxEntries", 10000);
+
+    private final Map<String, String> digests = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    synchronized boolean isUnchanged(@NonNull String id, @NonNull String digest) {
+        return digest.equals(digests.get(id));
+    }
+
+    synchronized void put(@NonNull String id, @NonNull String digest) {
+        digests.put(id, digest);
+    }
+
+    synchronized void remove(@NonNull String id) {
+        digests.remove(id);
+    }
+
+    synchronized void clear() {
+        digests.clear();
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storage operation recorded by the {@link SlowOperationLog}.
+ */
+@ExportedBean
+public final class SlowOperation {
+
+    static final int MAX_IDS = 10;
+
+    /**
+     * Phase of a storage operation.
+     */
+    public enum Phase {
+        POOL_WAIT, REDIS, ENCODE, DECODE, OTHER
+    }
+
+    private final String operation;
+    private final List<String> ids;
+    private final int fingerprints;
+    private final String thread;
+    private final long timestamp;
+    private final boolean succeeded;
+    private final long payloadSize;
+    private final long durationNanos;
+    private final long poolWaitNanos;
+    private final long redisNanos;
+    private final long encodeNanos;
+    private final long decodeNanos;
+
+    SlowOperation(@NonNull OperationTrace trace) {
+        this.operation = trace.getOperation().name().toLowerCase(Locale.ENGLISH);
+        List<String> traceIds = trace.getIds();
+        this.ids = Collections.unmodifiableList(new ArrayList<>(traceIds.subList(0, Math.min(MAX_IDS,
+                traceIds.size()))));
+        this.fingerprints = traceIds.size();
+        this.thread = trace.getThread();
+        this.timestamp = trace.getTimestamp();
+        this.succeeded = trace.isSucceeded();
+        this.payloadSize = trace.getPayloadSize();
+        this.durationNanos = trace.getDurationNanos();
+        this.poolWaitNanos = trace.getPoolWaitNanos();
+        this.redisNanos = trace.getRedisNanos();
+        this.encodeNanos = trace.getEncodeNanos();
+        this.decodeNanos = trace.getDecodeNanos();
+    }
+
+    @Exported
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Returns the ids of the first {@value #MAX_IDS} fingerprints of the operation.
+     */
+    @Exported
+    public List<String> getIds() {
+        return ids;
+    }
+
+    @Exported
+    public int getFingerprints() {
+        return fingerprints;
+    }
+
+    @Exported
+    public String getThread() {
+        return thread;
+    }
+
+    @Exported
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Date getDate() {
+        return new Date(timestamp);
+    }
+
+    @Exported
+    public boolean isSucceeded() {
+        return succeeded;
+    }
+
+    @Exported
+    public long getPayloadSize() {
+        return payloadSize;
+    }
+
+    @Exported
+    public long getDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    }
+
+    @Exported
+    public long getPoolWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(poolWaitNanos);
+    }
+
+    @Exported
+    public long getRedisMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(redisNanos);
+    }
+
+    @Exported
+    public long getEncodeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(encodeNanos);
+    }
+
+    @Exported
+    public long getDecodeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(decodeNanos);
+    }
+
+    /**
+     * Returns the phase which took the most time.
+     */
+    @Exported
+    public Phase getSlowestPhase() {
+        long otherNanos = durationNanos - poolWaitNanos - redisNanos - encodeNanos - decodeNanos;
+        Phase slowestPhase = Phase.OTHER;
+        long slowestNanos = otherNanos;
+        if (poolWaitNanos > slowestNanos) {
+            slowestPhase = Phase.POOL_WAIT;
+            slowestNanos = poolWaitNanos;
+        }
+        if (redisNanos > slowestNanos) {
+            slowestPhase = Phase.REDIS;
+            slowestNanos = redisNanos;
+        }
+        if (encodeNanos > slowestNanos) {
+            slowestPhase = Phase.ENCODE;
+            slowestNanos = encodeNanos;
+        }
+        if (decodeNanos > slowestNanos) {
+            slowestPhase = Phase.DECODE;
+        }
+        return slowestPhase;
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.SystemProperties;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Singleton keeping the most recent storage operations which took longer than the configured threshold, along with the
+ * time spent in each of their phases, so that a slow operation can be told to come from a large fingerprint, a
+ * saturated pool or a slow Redis.
+ */
+public enum SlowOperationLog {
+
+    INSTANCE;
+
+    static final int CAPACITY = SystemProperties.getInteger(SlowOperationLog.class.getName() + ".capacity", 100);
+
+    private final Deque<SlowOperation> operations = new ArrayDeque<>();
+    private volatile long thresholdNanos;
+
+    /**
+     * Sets the duration in milliseconds above which operations are recorded, or 0 to record none.
+     */
+    void setThreshold(int thresholdMillis) {
+        thresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, thresholdMillis));
+    }
+
+    boolean isEnabled() {
+        return thresholdNanos > 0;
+    }
+
+    void record(@NonNull OperationTrace trace) {
+        long threshold = thresholdNanos;
+        if (threshold <= 0 || trace.getDurationNanos() < threshold) {
+            return;
+        }
+        SlowOperation operation = new SlowOperation(trace);
+        synchronized (operations) {
+            if (operations.size() >= CAPACITY) {
+                operations.removeLast();
+            }
+            operations.addFirst(operation);
+        }
+    }
+
+    /**
+     * Returns the recorded operations, most recent first.
+     */
+    public @NonNull List<SlowOperation> getOperations() {
+        synchronized (operations) {
+            return new ArrayList<>(operations);
+        }
+    }
+
+    void clear() {
+        synchronized (operations) {
+            operations.clear();
+        }
+    }
+
+}
@@ -0,0 +1,314 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import redis.clients.jedis.JedisPool;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Singleton holding the metrics of the Redis fingerprint storage, published as the
+ * {@code io.jenkins.plugins.redis:type=RedisFingerprintStorage} MBean, along with one
+ * {@code io.jenkins.plugins.redis:type=RedisFingerprintStorage,operation=<operation>} MBean per {@link Operation} and
+ * one {@code io.jenkins.plugins.redis:type=RedisFingerprintStorage,pool=<pool>} MBean per connection pool.
+ */
+public enum StorageMetrics {
+
+    INSTANCE;
+
+    static final String OBJECT_NAME = "io.jenkins.plugins.redis:type=RedisFingerprintStorage";
+
+    final LongAdder retries = new LongAdder();
+    final LongAdder hedgedReads = new LongAdder();
+    final LongAdder hedgedReadWins = new LongAdder();
+    final LongAdder unchangedSavesSkipped = new LongAdder();
+    final LongAdder versionConflicts = new LongAdder();
+
+    /**
+     * Storage operations whose latency, errors and payload size are measured.
+     */
+    enum Operation {
+        SAVE, LOAD, DELETE, BULK_LOAD, IS_READY, CLEANUP,
+        /**
+         * Loading a page of {@link RedisFingerprintStorage#streamFingerprints()}, during cleanup for instance.
+         */
+        LOAD_PAGE,
+        /**
+         * Borrowing a connection from the pool.
+         */
+        BORROW
+    }
+
+    private final Map<Operation, OperationMetrics> operations = new EnumMap<>(Operation.class);
+
+    StorageMetrics() {
+        for (Operation operation : Operation.values()) {
+            operations.put(operation, new OperationMetrics());
+        }
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(new StandardMBean(new MBean(), StorageMetricsMBean.class), objectName);
+            }
+            for (Map.Entry<Operation, OperationMetrics> entry : operations.entrySet()) {
+                ObjectName operationName = new ObjectName(OBJECT_NAME + ",operation="
+                        + entry.getKey().name().toLowerCase(Locale.ENGLISH));
+                if (!mBeanServer.isRegistered(operationName)) {
+                    mBeanServer.registerMBean(new StandardMBean(entry.getValue(), OperationMetricsMBean.class),
+                            operationName);
+                }
+            }
+            for (JedisPoolManager.Pool pool : JedisPoolManager.Pool.values()) {
+                ObjectName poolName = new ObjectName(OBJECT_NAME + ",pool=" + pool.name().toLowerCase(Locale.ENGLISH));
+                if (!mBeanServer.isRegistered(poolName)) {
+                    mBeanServer.registerMBean(new StandardMBean(new PoolMBean(pool), PoolMetricsMBean.class),
+                            poolName);
+                }
+            }
+        } catch (JMException | RuntimeException e) {
+            Logger.getLogger(StorageMetrics.class.getName()).log(Level.WARNING,
+                    "Failed to register the fingerprint storage metrics MBean", e);
+        }
+    }
+
+    OperationMetrics get(Operation operation) {
+        return operations.get(operation);
+    }
+
+    @FunctionalInterface
+    interface MeasuredCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    /**
+     * Runs the given operation on the fingerprints with the given ids, recording its latency and outcome. If the
+     * {@link FingerprintEvents} are enabled or the {@link SlowOperationLog} is, the operation is also traced and
+     * handed over to them.
+     */
+    <T, E extends Exception> T measure(Operation operation, List<String> ids, MeasuredCall<T, E> call) throws E {
+        Object event = FingerprintEvents.begin();
+        OperationTrace trace = event != null || SlowOperationLog.INSTANCE.isEnabled()
+                ? OperationTrace.begin(operation, ids) : null;
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            T result = call.call();
+            succeeded = true;
+            return result;
+        } finally {
+            record(operation, start, succeeded);
+            if (trace != null) {
+                trace.end(succeeded);
+                FingerprintEvents.commit(event, trace);
+                SlowOperationLog.INSTANCE.record(trace);
+            }
+        }
+    }
+
+    /**
+     * Records an operation started at the given {@link System#nanoTime()}.
+     */
+    void record(Operation operation, long startNanos, boolean succeeded) {
+        OperationMetrics metrics = operations.get(operation);
+        metrics.latency.record(System.nanoTime() - startNanos);
+        if (!succeeded) {
+            metrics.errors.increment();
+        }
+    }
+
+    void recordBytes(Operation operation, String payload) {
+        if (payload != null) {
+            long length = utf8Length(payload);
+            operations.get(operation).bytes.add(length);
+            OperationTrace.addPayloadSize(length);
+        }
+    }
+
+    /**
+     * Returns the UTF-8 encoded length of the given string without encoding it.
+     */
+    static long utf8Length(String value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    static final class OperationMetrics implements OperationMetricsMBean {
+
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+
+        @Override
+        public long getCount() {
+            return latency.getCount();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        @Override
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        @Override
+        public double getTotalTimeMillis() {
+            return latency.getSumMillis();
+        }
+
+        @Override
+        public double getMeanTimeMillis() {
+            long count = latency.getCount();
+            return count == 0 ? 0 : latency.getSumMillis() / count;
+        }
+
+        @Override
+        public double get50thPercentileMillis() {
+            return latency.getPercentileMillis(50);
+        }
+
+        @Override
+        public double get95thPercentileMillis() {
+            return latency.getPercentileMillis(95);
+        }
+
+        @Override
+        public double get99thPercentileMillis() {
+            return latency.getPercentileMillis(99);
+        }
+
+        @Override
+        public double[] getBucketBoundsMillis() {
+            return LatencyHistogram.BUCKET_BOUNDS_MILLIS.clone();
+        }
+
+        @Override
+        public long[] getBucketCumulativeCounts() {
+            return latency.getCumulativeCounts();
+        }
+
+    }
+
+    private final class MBean implements StorageMetricsMBean {
+
+        @Override
+        public long getRetries() {
+            return retries.sum();
+        }
+
+        @Override
+        public long getHedgedReads() {
+            return hedgedReads.sum();
+        }
+
+        @Override
+        public long getHedgedReadWins() {
+            return hedgedReadWins.sum();
+        }
+
+        @Override
+        public long getUnchangedSavesSkipped() {
+            return unchangedSavesSkipped.sum();
+        }
+
+        @Override
+        public long getVersionConflicts() {
+            return versionConflicts.sum();
+        }
+
+    }
+
+    private static final class PoolMBean implements PoolMetricsMBean {
+
+        private final JedisPoolManager.Pool pool;
+
+        PoolMBean(JedisPoolManager.Pool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public int getMaxTotal() {
+            return JedisPoolManager.INSTANCE.getPoolSize(pool);
+        }
+
+        @Override
+        public int getActive() {
+            JedisPool jedisPool = JedisPoolManager.INSTANCE.getJedisPool(pool);
+            return jedisPool == null ? 0 : jedisPool.getNumActive();
+        }
+
+        @Override
+        public int getIdle() {
+            JedisPool jedisPool = JedisPoolManager.INSTANCE.getJedisPool(pool);
+            return jedisPool == null ? 0 : jedisPool.getNumIdle();
+        }
+
+        @Override
+        public int getWaiters() {
+            JedisPool jedisPool = JedisPoolManager.INSTANCE.getJedisPool(pool);
+            return jedisPool == null ? 0 : jedisPool.getNumWaiters();
+        }
+
+        @Override
+        public long getMeanBorrowWaitTimeMillis() {
+            JedisPool jedisPool = JedisPoolManager.INSTANCE.getJedisPool(pool);
+            return jedisPool == null ? 0 : jedisPool.getMeanBorrowWaitTimeMillis();
+        }
+
+        @Override
+        public long getMaxBorrowWaitTimeMillis() {
+            JedisPool jedisPool = JedisPoolManager.INSTANCE.getJedisPool(pool);
+            return jedisPool == null ? 0 : jedisPool.getMaxBorrowWaitTimeMillis();
+        }
+
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Whether saves of fingerprints whose serialized form has not changed since this controller last wrote them are
+ * skipped, as tracked by the {@link SaveDigestCache}.
+ */
+public enum UnchangedSaves {
+
+    /**
+     * Every save is written to Redis.
+     */
+    WRITE("Always write"),
+
+    /**
+     * Saves unchanged since this controller last wrote them are skipped, assuming that no other controller writes the
+     * fingerprints of this instance.
+     */
+    SKIP("Skip if unchanged since last written by this controller"),
+
+    /**
+     * Saves unchanged since this controller last wrote them are only skipped if a script run by Redis finds the same
+     * digest stored, for fingerprints shared with other controllers.
+     */
+    SKIP_VERIFIED("Skip if still stored unchanged in Redis, checked with a script");
+
+    private final String displayName;
+
+    UnchangedSaves(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public @NonNull String getDisplayName() {
+        return displayName;
+    }
+
+}
@@ -0,0 +1,416 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only local spool holding fingerprint writes which could not be sent to Redis right away.
+ *
+ * Entries are appended to segment files with sequential writes, each of them forced to disk before returning. A
+ * segment is sealed once it grows past {@link #MAX_SEGMENT_SIZE} or when a replay starts, and sealed segments are
+ * replayed in order and deleted once every entry they contain has been written to Redis. The location of the latest
+ * entry of every fingerprint still in the spool is kept in memory, and the entry read back from its segment, so that
+ * loads stay consistent with the spooled writes while memory use does not depend on the size of the spooled
+ * fingerprints.
+ */
+public class WriteSpool {
+
+    private static final Logger LOGGER = Logger.getLogger(WriteSpool.class.getName());
+
+    static final long MAX_SEGMENT_SIZE = SystemProperties.getLong(
+            WriteSpool.class.getName() + ".maxSegmentSize", 16L * 1024 * 1024);
+    static final int REPLAY_BATCH_SIZE = 100;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String DIRECTORY_NAME = "redis-fingerprint-storage" + File.separator + "spool";
+
+    private static WriteSpool instance;
+
+    enum Operation {
+        SAVE, DELETE
+    }
+
+    static final class Entry {
+
+        final long sequence;
+        final Operation operation;
+        final String id;
+        final @CheckForNull String blob;
+
+        Entry(long sequence, @NonNull Operation operation, @NonNull String id, @CheckForNull String blob) {
+            this.sequence = sequence;
+            this.operation = operation;
+            this.id = id;
+            this.blob = blob;
+        }
+
+    }
+
+    /**
+     * Position of a spooled entry in its segment.
+     */
+    private static final class Location {
+
+        final long sequence;
+        final File segment;
+        final long offset;
+        final int length;
+
+        Location(long sequence, @NonNull File segment, long offset, int length) {
+            this.sequence = sequence;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+    }
+
+    /**
+     * Writes a batch of replayed entries to Redis.
+     */
+    @FunctionalInterface
+    interface ReplayTarget {
+        void write(@NonNull List<Entry> batch) throws IOException, JedisException;
+    }
+
+    private final File directory;
+    private final ConcurrentMap<String, Location> pending = new ConcurrentHashMap<>();
+    private final Object replayLock = new Object();
+    private FileChannel activeChannel;
+    private File activeSegment;
+    private long nextSequence;
+    private volatile long writeLatencyNanos;
+
+    /**
+     * Returns the spool stored under {@code JENKINS_HOME}, recovering any entry left over by a previous run.
+     */
+    static synchronized @NonNull WriteSpool get() throws IOException {
+        File directory = new File(Jenkins.get().getRootDir(), DIRECTORY_NAME);
+        if (instance == null || !instance.directory.equals(directory)) {
+            instance = new WriteSpool(directory);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns whether the spool stored under {@code JENKINS_HOME} holds segments, without recovering them.
+     */
+    static boolean exists() {
+        return !listSegments(new File(Jenkins.get().getRootDir(), DIRECTORY_NAME)).isEmpty();
+    }
+
+    WriteSpool(@NonNull File directory) throws IOException {
+        this.directory = directory;
+        recover();
+    }
+
+    boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Returns whether a spooled entry of the given fingerprint is waiting to be replayed.
+     */
+    boolean isPending(@NonNull String id) {
+        return pending.containsKey(id);
+    }
+
+    /**
+     * Returns the latest spooled entry of the given fingerprint, read back from its segment, or null if none is
+     * waiting to be replayed.
+     */
+    @CheckForNull Entry getPending(@NonNull String id) throws IOException {
+        Location location = pending.get(id);
+        if (location == null) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(location.length);
+        try (FileChannel channel = FileChannel.open(location.segment.toPath(), StandardOpenOption.READ)) {
+            while (record.hasRemaining()) {
+                if (channel.read(record, location.offset + record.position()) < 0) {
+                    throw new EOFException("Spooled fingerprint write is truncated");
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Replayed meanwhile, the segment being deleted once written to Redis.
+            return null;
+        }
+        int payloadLength = record.getInt(0);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, payloadLength);
+        if (payloadLength != location.length - 8 || (int) crc.getValue() != record.getInt(4 + payloadLength)) {
+            throw new IOException("Spooled fingerprint write is corrupted");
+        }
+        return decode(ByteBuffer.wrap(record.array(), 4, payloadLength));
+    }
+
+    /**
+     * Moving average of the latency of writes to Redis, in milliseconds.
+     */
+    long getWriteLatency() {
+        return TimeUnit.NANOSECONDS.toMillis(writeLatencyNanos);
+    }
+
+    void recordWriteLatency(long nanos) {
+        long previous = writeLatencyNanos;
+        writeLatencyNanos = previous == 0 ? nanos : (previous * 4 + nanos) / 5;
+    }
+
+    synchronized void append(@NonNull Operation operation, @NonNull String id, @CheckForNull String blob)
+            throws IOException {
+        Entry entry = new Entry(nextSequence++, operation, id, blob);
+        if (activeChannel == null) {
+            Files.createDirectories(directory.toPath());
+            activeSegment = new File(directory, segmentName(entry.sequence));
+            activeChannel = FileChannel.open(activeSegment.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        ByteBuffer buffer = encode(entry);
+        long offset = activeChannel.size();
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            activeChannel.write(buffer);
+        }
+        activeChannel.force(false);
+        pending.put(id, new Location(entry.sequence, activeSegment, offset, length));
+        if (activeChannel.size() >= MAX_SEGMENT_SIZE) {
+            seal();
+        }
+    }
+
+    /**
+     * Replays every spooled entry to the given target, oldest segment first, and returns the number of entries
+     * written. Entries appended while the replay is running are left for the next replay.
+     */
+    int replay(@NonNull ReplayTarget target) throws IOException, JedisException {
+        synchronized (replayLock) {
+            List<File> segments;
+            synchronized (this) {
+                seal();
+                segments = listSegments(directory);
+            }
+            int replayed = 0;
+            for (File segment : segments) {
+                Collection<Entry> entries = latestEntries(readSegment(segment, null));
+                List<Entry> batch = new ArrayList<>(REPLAY_BATCH_SIZE);
+                for (Entry entry : entries) {
+                    batch.add(entry);
+                    if (batch.size() == REPLAY_BATCH_SIZE) {
+                        target.write(batch);
+                        batch = new ArrayList<>(REPLAY_BATCH_SIZE);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    target.write(batch);
+                }
+                Files.delete(segment.toPath());
+                for (Entry entry : entries) {
+                    pending.computeIfPresent(entry.id, (id, current) -> current.sequence <= entry.sequence
+                            ? null : current);
+                }
+                replayed += entries.size();
+            }
+            return replayed;
+        }
+    }
+
+    synchronized void close() throws IOException {
+        seal();
+    }
+
+    private void seal() throws IOException {
+        if (activeChannel != null) {
+            activeChannel.close();
+            activeChannel = null;
+            activeSegment = null;
+        }
+    }
+
+    private synchronized void recover() throws IOException {
+        long maxSequence = -1;
+        for (File segment : listSegments(directory)) {
+            List<Location> locations = new ArrayList<>();
+            List<Entry> entries = readSegment(segment, locations);
+            for (int i = 0; i < entries.size(); i++) {
+                pending.put(entries.get(i).id, locations.get(i));
+                maxSequence = Math.max(maxSequence, entries.get(i).sequence);
+            }
+        }
+        nextSequence = maxSequence + 1;
+        if (!pending.isEmpty()) {
+            LOGGER.log(Level.INFO, "Recovered {0} spooled fingerprint writes from {1}",
+                    new Object[] {pending.size(), directory});
+        }
+    }
+
+    private static @NonNull List<File> listSegments(@NonNull File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX)
+                && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    private static @NonNull String segmentName(long firstSequence) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX);
+    }
+
+    private static @NonNull Collection<Entry> latestEntries(@NonNull List<Entry> entries) {
+        Map<String, Entry> latest = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            latest.remove(entry.id);
+            latest.put(entry.id, entry);
+        }
+        return latest.values();
+    }
+
+    /**
+     * Layout of a record: payload length, payload, CRC32 of the payload. The payload holds the sequence number, the
+     * operation, the fingerprint id and the serialized fingerprint, which is absent for deletions.
+     */
+    private static @NonNull ByteBuffer encode(@NonNull Entry entry) {
+        byte[] id = entry.id.getBytes(StandardCharsets.UTF_8);
+        byte[] blob = entry.blob == null ? null : entry.blob.getBytes(StandardCharsets.UTF_8);
+        int payloadLength = 8 + 1 + 4 + id.length + 4 + (blob == null ? 0 : blob.length);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + payloadLength + 4);
+        buffer.putInt(payloadLength);
+        buffer.putLong(entry.sequence);
+        buffer.put((byte) entry.operation.ordinal());
+        buffer.putInt(id.length);
+        buffer.put(id);
+        buffer.putInt(blob == null ? -1 : blob.length);
+        if (blob != null) {
+            buffer.put(blob);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 4, payloadLength);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Reads the records of a segment, adding their locations to the given list, if any. A torn or corrupted record,
+     * as left by a crash in the middle of a write, ends the segment and is truncated away.
+     */
+    private static @NonNull List<Entry> readSegment(@NonNull File segment, @CheckForNull List<Location> locations)
+            throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long validLength = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(segment.toPath()));
+             DataInputStream data = new DataInputStream(in)) {
+            while (true) {
+                int payloadLength;
+                try {
+                    payloadLength = data.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (payloadLength < 8 + 1 + 4 + 4 || payloadLength > segment.length()) {
+                    break;
+                }
+                byte[] payload = new byte[payloadLength];
+                int storedCrc;
+                try {
+                    data.readFully(payload);
+                    storedCrc = data.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != storedCrc) {
+                    break;
+                }
+                Entry entry = decode(ByteBuffer.wrap(payload));
+                entries.add(entry);
+                if (locations != null) {
+                    locations.add(new Location(entry.sequence, segment, validLength, 4 + payloadLength + 4));
+                }
+                validLength += 4 + payloadLength + 4;
+            }
+        }
+        if (validLength < segment.length()) {
+            LOGGER.log(Level.WARNING, "Truncating corrupted tail of fingerprint spool segment {0}", segment);
+            try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+        return entries;
+    }
+
+    private static @NonNull Entry decode(@NonNull ByteBuffer payload) {
+        long sequence = payload.getLong();
+        Operation operation = Operation.values()[payload.get()];
+        byte[] id = new byte[payload.getInt()];
+        payload.get(id);
+        int blobLength = payload.getInt();
+        String blob = null;
+        if (blobLength >= 0) {
+            byte[] blobBytes = new byte[blobLength];
+            payload.get(blobBytes);
+            blob = new String(blobBytes, StandardCharsets.UTF_8);
+        }
+        return new Entry(sequence, operation, new String(id, StandardCharsets.UTF_8), blob);
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class CircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(true, 50, 1000, clock::get);
+
+    private void recordCalls(int successes, int failures) {
+        for (int i = 0; i < successes; i++) {
+            assertThat(circuitBreaker.tryAcquirePermission(), is(true));
+            circuitBreaker.onSuccess();
+        }
+        for (int i = 0; i < failures; i++) {
+            assertThat(circuitBreaker.tryAcquirePermission(), is(true));
+            circuitBreaker.onError();
+        }
+    }
+
+    private void advanceClock(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    public void shouldStayClosedBelowMinimumNumberOfCalls() {
+        recordCalls(0, CircuitBreaker.MINIMUM_NUMBER_OF_CALLS - 1);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void shouldStayClosedBelowFailureRateThreshold() {
+        recordCalls(CircuitBreaker.MINIMUM_NUMBER_OF_CALLS, CircuitBreaker.MINIMUM_NUMBER_OF_CALLS - 1);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void shouldOpenAtFailureRateThresholdAndRejectCalls() {
+        recordCalls(CircuitBreaker.MINIMUM_NUMBER_OF_CALLS / 2, CircuitBreaker.MINIMUM_NUMBER_OF_CALLS / 2);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(circuitBreaker.tryAcquirePermission(), is(false));
+        advanceClock(999);
+        assertThat(circuitBreaker.tryAcquirePermission(), is(false));
+    }
+
+    @Test
+    public void shouldForgetOutcomesOutsideOfSlidingWindow() {
+        recordCalls(0, CircuitBreaker.MINIMUM_NUMBER_OF_CALLS - 1);
+        recordCalls(CircuitBreaker.SLIDING_WINDOW_SIZE, 0);
+        recordCalls(0, CircuitBreaker.MINIMUM_NUMBER_OF_CALLS - 1);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void shouldCloseAfterSuccessfulProbes() {
+        recordCalls(0, CircuitBreaker.MINIMUM_NUMBER_OF_CALLS);
+        advanceClock(1000);
+        for (int i = 0; i < CircuitBreaker.PERMITTED_CALLS_IN_HALF_OPEN_STATE; i++) {
+            assertThat(circuitBreaker.tryAcquirePermission(), is(true));
+        }
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        assertThat(circuitBreaker.tryAcquirePermission(), is(false));
+        for (int i = 0; i < CircuitBreaker.PERMITTED_CALLS_IN_HALF_OPEN_STATE; i++) {
+            circuitBreaker.onSuccess();
+        }
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+        recordCalls(0, CircuitBreaker.MINIMUM_NUMBER_OF_CALLS - 1);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void shouldReopenAfterFailedProbe() {
+        recordCalls(0, CircuitBreaker.MINIMUM_NUMBER_OF_CALLS);
+        advanceClock(1000);
+        assertThat(circuitBreaker.tryAcquirePermission(), is(true));
+        circuitBreaker.onError();
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(circuitBreaker.tryAcquirePermission(), is(false));
+    }
+
+    @Test
+    public void disabledCircuitBreakerShouldAlwaysPermitCalls() {
+        CircuitBreaker disabled = new CircuitBreaker(false, 50, 1000, clock::get);
+        for (int i = 0; i < CircuitBreaker.SLIDING_WINDOW_SIZE; i++) {
+            assertThat(disabled.tryAcquirePermission(), is(true));
+            disabled.onError();
+        }
+        assertThat(disabled.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+}
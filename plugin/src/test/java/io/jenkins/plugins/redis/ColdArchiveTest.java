@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+
+public class ColdArchiveTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldReturnLatestArchivedFingerprint() throws IOException {
+        ColdArchive coldArchive = new ColdArchive(temporaryFolder.newFolder());
+        coldArchive.put("a", "first");
+        coldArchive.put("b", "blob");
+        coldArchive.put("a", "second");
+
+        assertThat(coldArchive.size(), is(2));
+        assertThat(coldArchive.get("a"), is("second"));
+        assertThat(coldArchive.get("b"), is("blob"));
+        assertThat(coldArchive.get("c"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldDeleteSegmentsOnceEmpty() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        ColdArchive coldArchive = new ColdArchive(directory);
+        coldArchive.put("a", "blob");
+        coldArchive.close();
+        coldArchive.remove("a");
+
+        assertThat(coldArchive.get("a"), is(nullValue()));
+        assertThat(directory.list(), is(new String[0]));
+    }
+
+    @Test
+    public void shouldReopenArchivedFingerprints() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        ColdArchive coldArchive = new ColdArchive(directory);
+        String largeBlob = String.join("", Collections.nCopies(1000, "<fingerprint/>"));
+        coldArchive.put("a", largeBlob);
+        coldArchive.put("b", "blob");
+        coldArchive.remove("b");
+        coldArchive.close();
+
+        ColdArchive reopenedArchive = new ColdArchive(directory);
+        List<String> ids = new ArrayList<>();
+        reopenedArchive.forEach((id, fingerprintBlob) -> ids.add(id));
+        assertThat(ids, is(Collections.singletonList("a")));
+        assertThat(reopenedArchive.get("a"), is(largeBlob));
+
+        reopenedArchive.put("c", "blob");
+        assertThat(reopenedArchive.get("c"), is("blob"));
+    }
+
+    @Test
+    public void shouldLookUpFingerprintsAcrossSealedSegments() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        ColdArchive coldArchive = new ColdArchive(directory);
+        for (int segment = 0; segment < 3; segment++) {
+            for (int i = 0; i < 100; i++) {
+                coldArchive.put("fingerprint-" + segment + "-" + i, "blob-" + segment);
+            }
+            coldArchive.close();
+        }
+        coldArchive.put("fingerprint-0-0", "updated");
+
+        ColdArchive reopenedArchive = new ColdArchive(directory);
+        assertThat(reopenedArchive.size(), is(300));
+        assertThat(reopenedArchive.get("fingerprint-0-0"), is("updated"));
+        assertThat(reopenedArchive.get("fingerprint-0-99"), is("blob-0"));
+        assertThat(reopenedArchive.get("fingerprint-2-50"), is("blob-2"));
+        assertThat(reopenedArchive.get("fingerprint-3-0"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldRecoverUnsealedSegmentWithTornRecord() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        ColdArchive coldArchive = new ColdArchive(directory);
+        coldArchive.put("a", "blob");
+        coldArchive.put("b", "blob");
+        coldArchive.put("c", "blob");
+        coldArchive.remove("a");
+
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory,
+                "segment-00000000000000000000.archive"), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        ColdArchive reopenedArchive = new ColdArchive(directory);
+        assertThat(reopenedArchive.size(), is(1));
+        assertThat(reopenedArchive.get("a"), is(nullValue()));
+        assertThat(reopenedArchive.get("b"), is("blob"));
+        assertThat(reopenedArchive.get("c"), is(nullValue()));
+    }
+
+}
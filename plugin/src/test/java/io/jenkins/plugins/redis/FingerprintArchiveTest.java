@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import hudson.Util;
+import hudson.model.Fingerprint;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.testcontainers.containers.GenericContainer;
+import redis.clients.jedis.Jedis;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+
+public class FingerprintArchiveTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Rule
+    public GenericContainer redis = new GenericContainer<>("redis:6.0.4-alpine").withExposedPorts(6379);
+
+    @Test
+    public void shouldRestoreExportedFingerprints() throws Exception {
+        RedisConfiguration.setConfiguration(redis.getHost(), redis.getFirstMappedPort());
+        RedisFingerprintStorage.get().setDictionaryEncoding(true);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 2 * FingerprintArchive.BATCH_SIZE + 1; i++) {
+            String id = Util.getDigestOf("shouldRestoreExportedFingerprints" + i);
+            Fingerprint fingerprint = new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+            fingerprint.add("folder/job" + i, 1);
+            ids.add(id);
+        }
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        assertThat(FingerprintArchive.export(RedisFingerprintStorage.get(), archive), is((long) ids.size()));
+
+        try (Jedis jedis = new Jedis(redis.getHost(), redis.getFirstMappedPort())) {
+            jedis.flushDB();
+        }
+        RedisFingerprintStorage.get().setDictionaryEncoding(false);
+        for (String id : ids) {
+            assertThat(RedisFingerprintStorage.get().load(id), is(nullValue()));
+        }
+
+        assertThat(FingerprintArchive.restore(RedisFingerprintStorage.get(),
+                new ByteArrayInputStream(archive.toByteArray())), is((long) ids.size()));
+        for (int i = 0; i < ids.size(); i++) {
+            Fingerprint fingerprint = RedisFingerprintStorage.get().load(ids.get(i));
+            assertThat(fingerprint, is(not(nullValue())));
+            assertThat(fingerprint.getJobs(), hasItem("folder/job" + i));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectTruncatedArchive() throws Exception {
+        RedisConfiguration.setConfiguration(redis.getHost(), redis.getFirstMappedPort());
+        String id = Util.getDigestOf("shouldRejectTruncatedArchive");
+        new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        FingerprintArchive.export(RedisFingerprintStorage.get(), archive);
+        byte[] bytes = archive.toByteArray();
+
+        FingerprintArchive.restore(RedisFingerprintStorage.get(),
+                new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length / 2)));
+    }
+
+}
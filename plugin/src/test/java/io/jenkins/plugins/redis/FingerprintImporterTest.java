@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import hudson.Util;
+import hudson.model.Fingerprint;
+import org.jenkinsci.main.modules.instance_identity.InstanceIdentity;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.testcontainers.containers.GenericContainer;
+import redis.clients.jedis.Jedis;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class FingerprintImporterTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Rule
+    public GenericContainer redis = new GenericContainer<>("redis:6.0.4-alpine").withExposedPorts(6379);
+
+    @Test
+    public void shouldImportFileFingerprints() throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 2 * FingerprintImporter.BATCH_SIZE + 1; i++) {
+            String id = Util.getDigestOf("shouldImportFileFingerprints" + i);
+            new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+            ids.add(id);
+        }
+        RedisConfiguration.setConfiguration(redis.getHost(), redis.getFirstMappedPort());
+
+        assertThat(FingerprintImporter.INSTANCE.start(RedisFingerprintStorage.get(), 2, 0, true), is(true));
+        while (FingerprintImporter.INSTANCE.isRunning()) {
+            Thread.sleep(100);
+        }
+
+        assertThat(FingerprintImporter.INSTANCE.getStatus(), is("Completed"));
+        assertThat(FingerprintImporter.INSTANCE.getImported(), is((long) ids.size()));
+        assertThat(FingerprintImporter.INSTANCE.getFailed(), is(0L));
+        String instanceId = Util.getDigestOf(new ByteArrayInputStream(InstanceIdentity.get().getPublic().getEncoded()));
+        try (Jedis jedis = new Jedis(redis.getHost(), redis.getFirstMappedPort())) {
+            for (String id : ids) {
+                assertThat(jedis.exists(instanceId + id), is(true));
+            }
+        }
+        File fingerprintsDir = new File(j.jenkins.getRootDir(), "fingerprints");
+        assertThat(Files.walk(fingerprintsDir.toPath()).anyMatch(file -> file.toString().endsWith(".xml")),
+                is(false));
+    }
+
+    @Test
+    public void shouldNotOverwriteFingerprintsAlreadyInRedis() throws IOException, InterruptedException {
+        String id = Util.getDigestOf("shouldNotOverwriteFingerprintsAlreadyInRedis");
+        new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        RedisConfiguration.setConfiguration(redis.getHost(), redis.getFirstMappedPort());
+        Fingerprint fingerprint = new Fingerprint(null, "bar.jar", Util.fromHexString(id));
+
+        FingerprintImporter.INSTANCE.start(RedisFingerprintStorage.get(), 1, 0, false);
+        while (FingerprintImporter.INSTANCE.isRunning()) {
+            Thread.sleep(100);
+        }
+
+        assertThat(FingerprintImporter.INSTANCE.getImported(), is(0L));
+        assertThat(FingerprintImporter.INSTANCE.getSkipped(), is(1L));
+        assertThat(RedisFingerprintStorage.get().load(id).getFileName(), is(fingerprint.getFileName()));
+    }
+
+    @Test
+    public void shouldKeepFilesOfFingerprintsAlreadyInRedis() throws IOException, InterruptedException {
+        String id = Util.getDigestOf("shouldKeepFilesOfFingerprintsAlreadyInRedis");
+        new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        RedisConfiguration.setConfiguration(redis.getHost(), redis.getFirstMappedPort());
+        new Fingerprint(null, "bar.jar", Util.fromHexString(id));
+
+        FingerprintImporter.INSTANCE.start(RedisFingerprintStorage.get(), 1, 0, true);
+        while (FingerprintImporter.INSTANCE.isRunning()) {
+            Thread.sleep(100);
+        }
+
+        File fingerprintsDir = new File(j.jenkins.getRootDir(), "fingerprints");
+        assertThat(Files.walk(fingerprintsDir.toPath()).anyMatch(file -> file.toString().endsWith(".xml")),
+                is(true));
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import hudson.Util;
+import org.testcontainers.containers.GenericContainer;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Compares the memory used by Redis to store a generated set of fingerprints with each {@link KeyScheme}.
+ *
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=io.jenkins.plugins.redis.KeySchemeMemoryBenchmark [-Dexec.args=<number of fingerprints>]}.
+ */
+public class KeySchemeMemoryBenchmark {
+
+    private static final int DEFAULT_FINGERPRINTS = 1_000_000;
+    private static final int BATCH_SIZE = 1000;
+    /**
+     * Fingerprint blobs are larger than the default value size limit of the compact hash encoding.
+     */
+    private static final String HASH_MAX_VALUE = "1024";
+
+    public static void main(String[] args) {
+        int fingerprints = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_FINGERPRINTS;
+        try (GenericContainer<?> redis = new GenericContainer<>("redis:6.0.4-alpine").withExposedPorts(6379)) {
+            redis.start();
+            try (Jedis jedis = new Jedis(redis.getHost(), redis.getFirstMappedPort())) {
+                jedis.configSet("hash-max-ziplist-value", HASH_MAX_VALUE);
+                String instanceId = Util.getDigestOf("KeySchemeMemoryBenchmark");
+                System.out.printf(Locale.ROOT, "%-25s %15s %15s%n", "Key scheme", "Used memory", "Per fingerprint");
+                for (KeyScheme keyScheme : KeyScheme.values()) {
+                    jedis.flushDB();
+                    long usedMemoryBefore = getUsedMemory(jedis);
+                    populate(jedis, keyScheme, instanceId, fingerprints);
+                    long usedMemory = getUsedMemory(jedis) - usedMemoryBefore;
+                    System.out.printf(Locale.ROOT, "%-25s %15d %15d%n", keyScheme.getDisplayName(), usedMemory,
+                            usedMemory / fingerprints);
+                }
+            }
+        }
+    }
+
+    private static void populate(Jedis jedis, KeyScheme keyScheme, String instanceId, int fingerprints) {
+        for (int batch = 0; batch < fingerprints; batch += BATCH_SIZE) {
+            Pipeline pipeline = jedis.pipelined();
+            for (int i = batch; i < Math.min(batch + BATCH_SIZE, fingerprints); i++) {
+                String id = Util.getDigestOf(Integer.toString(i));
+                keyScheme.queueSave(pipeline, instanceId, id, generateBlob(id, i), false);
+            }
+            pipeline.sync();
+        }
+    }
+
+    private static byte[] generateBlob(String id, int i) {
+        return ("<?xml version='1.1' encoding='UTF-8'?>\n"
+                + "<fingerprint>\n"
+                + "  <timestamp>2020-08-11 12:00:00.0 UTC</timestamp>\n"
+                + "  <original>\n"
+                + "    <name>folder/job-" + i % 1000 + "</name>\n"
+                + "    <number>" + i / 1000 + "</number>\n"
+                + "  </original>\n"
+                + "  <md5sum>" + id + "</md5sum>\n"
+                + "  <fileName>artifact-" + i + ".jar</fileName>\n"
+                + "  <usages>\n"
+                + "    <entry>\n"
+                + "      <string>folder/job-" + i % 1000 + "</string>\n"
+                + "      <ranges>" + i / 1000 + "</ranges>\n"
+                + "    </entry>\n"
+                + "  </usages>\n"
+                + "  <facets/>\n"
+                + "</fingerprint>").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long getUsedMemory(Jedis jedis) {
+        for (String line : jedis.info("memory").split("\r\n")) {
+            if (line.startsWith("used_memory:")) {
+                return Long.parseLong(line.substring("used_memory:".length()));
+            }
+        }
+        throw new IllegalStateException("used_memory missing from INFO memory");
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldEstimatePercentilesFromBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(300));
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(20));
+        }
+
+        assertThat(histogram.getCount(), is(100L));
+        assertThat(histogram.getPercentileMillis(50), is(0.5));
+        assertThat(histogram.getPercentileMillis(95), is(25.0));
+        assertThat(histogram.getCumulativeCounts()[0], is(90L));
+        assertThat(histogram.getCumulativeCounts()[LatencyHistogram.BUCKET_BOUNDS_MILLIS.length - 1], is(100L));
+    }
+
+    @Test
+    public void shouldCountLatenciesAboveHighestBound() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.SECONDS.toNanos(20));
+
+        assertThat(histogram.getCount(), is(1L));
+        assertThat(histogram.getPercentileMillis(99), is(Double.POSITIVE_INFINITY));
+        assertThat(histogram.getCumulativeCounts()[LatencyHistogram.BUCKET_BOUNDS_MILLIS.length - 1], is(0L));
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import org.junit.Test;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static junit.framework.TestCase.fail;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+
+public class LoadMultiplexerTest {
+
+    @Test
+    public void shouldLoadSingleFingerprint() {
+        LoadMultiplexer loadMultiplexer = new LoadMultiplexer(ids -> ids.stream()
+                .map(id -> id.equals("missing") ? null : "blob-" + id)
+                .collect(Collectors.toList()));
+
+        assertThat(loadMultiplexer.load("a"), is("blob-a"));
+        assertThat(loadMultiplexer.load("missing"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldBatchLoadsQueuedWhileReading() throws Exception {
+        CountDownLatch firstBatchStarted = new CountDownLatch(1);
+        CountDownLatch firstBatchReleased = new CountDownLatch(1);
+        List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+        LoadMultiplexer loadMultiplexer = new LoadMultiplexer(ids -> {
+            batches.add(ids);
+            if (batches.size() == 1) {
+                firstBatchStarted.countDown();
+                try {
+                    firstBatchReleased.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return ids.stream().map(id -> "blob-" + id).collect(Collectors.toList());
+        });
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            Future<String> first = executor.submit(() -> loadMultiplexer.load("a"));
+            firstBatchStarted.await();
+            List<Future<String>> next = new ArrayList<>();
+            for (String id : Arrays.asList("b", "c", "b")) {
+                next.add(executor.submit(() -> loadMultiplexer.load(id)));
+            }
+            while (loadMultiplexer.getQueuedCount() < 3) {
+                Thread.sleep(10);
+            }
+            firstBatchReleased.countDown();
+
+            assertThat(first.get(), is("blob-a"));
+            assertThat(next.get(0).get(), is("blob-b"));
+            assertThat(next.get(1).get(), is("blob-c"));
+            assertThat(next.get(2).get(), is("blob-b"));
+            assertThat(batches.size(), is(2));
+            assertThat(batches.get(0), is(Collections.singletonList("a")));
+            assertThat(batches.get(1).size(), is(2));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldFailLoadsOfFailedBatch() {
+        LoadMultiplexer loadMultiplexer = new LoadMultiplexer(ids -> {
+            throw new JedisConnectionException("Connection refused");
+        });
+
+        try {
+            loadMultiplexer.load("a");
+            fail("Expected JedisConnectionException");
+        } catch (JedisConnectionException e) {
+            assertThat(e.getMessage(), is("Connection refused"));
+        }
+    }
+
+}
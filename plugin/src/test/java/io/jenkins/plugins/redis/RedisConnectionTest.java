@@ -36,6 +36,7 @@ import org.testcontainers.containers.Network;
 import redis.clients.jedis.exceptions.JedisException;
 
 import java.io.IOException;
+import java.util.Collections;
 
 import static junit.framework.TestCase.fail;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -152,6 +153,46 @@ public class RedisConnectionTest {
         fail("Expected JedisException");
     }
 
+    @Test
+    public void testSpooledSaveIsReplayedAfterConnectionFailure() throws IOException {
+        String id = Util.getDigestOf("testSpooledSaveIsReplayedAfterConnectionFailure");
+
+        final ToxiproxyContainer.ContainerProxy proxy = toxiproxy.getProxy(redis, 6379);
+        setRedisConfigurationViaProxy(proxy);
+        RedisFingerprintStorage.get().setSpoolWrites(true);
+        proxy.setConnectionCut(true);
+
+        new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        assertThat(Fingerprint.load(id), is(not(nullValue())));
+
+        proxy.setConnectionCut(false);
+        RedisFingerprintStorage.get().replaySpool();
+        RedisFingerprintStorage.get().setSpoolWrites(false);
+
+        assertThat(RedisFingerprintStorage.get().bulkLoad(Collections.singletonList(id)).get(0),
+                is(not(nullValue())));
+    }
+
+    @Test
+    public void testSlowOperationsAreRecorded() throws IOException {
+        final ToxiproxyContainer.ContainerProxy proxy = toxiproxy.getProxy(redis, 6379);
+        proxy.toxics().latency("latency", ToxicDirection.DOWNSTREAM, 200);
+        setRedisConfigurationViaProxy(proxy);
+        RedisFingerprintStorage.get().setSlowOperationThreshold(100);
+        SlowOperationLog.INSTANCE.clear();
+
+        String id = Util.getDigestOf("testSlowOperationsAreRecorded");
+        Fingerprint fingerprint = new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        fingerprint.add("foo", 1);
+        RedisFingerprintStorage.get().setSlowOperationThreshold(0);
+
+        SlowOperation slowOperation = SlowOperationLog.INSTANCE.getOperations().get(0);
+        assertThat(slowOperation.getOperation(), is("save"));
+        assertThat(slowOperation.getIds(), is(Collections.singletonList(id)));
+        assertThat(slowOperation.getSlowestPhase(), is(SlowOperation.Phase.REDIS));
+        assertThat(slowOperation.getPayloadSize() > 0, is(true));
+    }
+
     @Test
     public void testSlowRedisConnectionForSave() throws IOException {
         exceptionRule.expect(JedisException.class);
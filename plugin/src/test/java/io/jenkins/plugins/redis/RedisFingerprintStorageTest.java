@@ -26,13 +26,21 @@ package io.jenkins.plugins.redis;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Util;
 import hudson.model.Fingerprint;
+import hudson.model.FreeStyleProject;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import hudson.model.TaskListener;
 import jenkins.fingerprints.FingerprintStorage;
@@ -53,6 +61,7 @@ import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.CoreMatchers.instanceOf;
+import static junit.framework.TestCase.fail;
 
 public class RedisFingerprintStorageTest {
 
@@ -71,7 +80,7 @@ public class RedisFingerprintStorageTest {
         jedis = new Jedis(host, port);
     }
 
-    private void setConfiguration() {
+    protected void setConfiguration() {
         String host = redis.getHost();
         Integer port = redis.getFirstMappedPort();
         RedisConfiguration.setConfiguration(host, port);
@@ -210,6 +219,680 @@ public class RedisFingerprintStorageTest {
         }
     }
 
+    @Test
+    public void shouldRecordOperationMetrics() throws IOException {
+        setConfiguration();
+        StorageMetrics.OperationMetrics saves = StorageMetrics.INSTANCE.get(StorageMetrics.Operation.SAVE);
+        StorageMetrics.OperationMetrics loads = StorageMetrics.INSTANCE.get(StorageMetrics.Operation.LOAD);
+        long savesBefore = saves.getCount();
+        long saveBytesBefore = saves.getBytes();
+        long loadsBefore = loads.getCount();
+        String id = Util.getDigestOf("shouldRecordOperationMetrics");
+
+        new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        Fingerprint.load(id);
+
+        assertThat(saves.getCount() > savesBefore, is(true));
+        assertThat(saves.getBytes() > saveBytesBefore, is(true));
+        assertThat(loads.getCount() > loadsBefore, is(true));
+        assertThat(StorageMetrics.INSTANCE.get(StorageMetrics.Operation.BORROW).getCount() > 0, is(true));
+    }
+
+    @Test
+    public void shouldLoadNullForMissingFingerprints() throws IOException {
+        setConfiguration();
+        String id = Util.getDigestOf("shouldLoadNullForMissingFingerprints");
+        new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        List<String> fingerprintIds = new ArrayList<>();
+        fingerprintIds.add(Util.getDigestOf("shouldLoadNullForMissingFingerprints-missing"));
+        fingerprintIds.add(id);
+
+        List<Fingerprint> fingerprints = RedisFingerprintStorage.get().bulkLoad(fingerprintIds);
+
+        assertThat(fingerprints.get(0), is(nullValue()));
+        assertThat(fingerprints.get(1), is(not(nullValue())));
+    }
+
+    @Test
+    public void shouldStreamAllFingerprints() throws IOException {
+        setConfiguration();
+        Set<String> fingerprintIds = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            String fingerprintId = Util.getDigestOf("shouldStreamAllFingerprints" + i);
+            new Fingerprint(null, "foo.jar", Util.fromHexString(fingerprintId));
+            fingerprintIds.add(fingerprintId);
+        }
+
+        try (Stream<Fingerprint> fingerprints = RedisFingerprintStorage.get().streamFingerprints()) {
+            assertThat(fingerprints.map(Fingerprint::getHashString).collect(Collectors.toSet()), is(fingerprintIds));
+        }
+        try (Stream<Fingerprint> fingerprints = RedisFingerprintStorage.get().streamFingerprints()) {
+            assertThat(fingerprints.limit(10).count(), is(10L));
+        }
+    }
+
+    @Test
+    public void shouldServeStaleFingerprintWhileCircuitBreakerIsOpen() throws IOException {
+        RedisFingerprintStorage redisFingerprintStorage = RedisFingerprintStorage.get();
+        redisFingerprintStorage.setCircuitBreakerEnabled(true);
+        redisFingerprintStorage.setServeStaleOnOpenCircuit(true);
+        setConfiguration();
+        String id = Util.getDigestOf("shouldServeStaleFingerprintWhileCircuitBreakerIsOpen");
+        Fingerprint fingerprintSaved = new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+
+        setIncorrectConfiguration();
+        for (int i = 0; i < CircuitBreaker.MINIMUM_NUMBER_OF_CALLS; i++) {
+            try {
+                redisFingerprintStorage.load(id);
+            } catch (JedisException e) {
+                assertThat(e, not(instanceOf(CircuitBreakerOpenException.class)));
+            }
+        }
+
+        assertThat(JedisPoolManager.INSTANCE.getCircuitBreaker(redisFingerprintStorage).getState(),
+                is(CircuitBreaker.State.OPEN));
+        Fingerprint fingerprintLoaded = redisFingerprintStorage.load(id);
+        assertThat(fingerprintLoaded, is(not(nullValue())));
+        assertThat(fingerprintSaved.toString(), is(equalTo(fingerprintLoaded.toString())));
+    }
+
+    @Test
+    public void shouldServeStaleDictionaryEncodedFingerprintWhileCircuitBreakerIsOpen() throws IOException {
+        RedisFingerprintStorage redisFingerprintStorage = RedisFingerprintStorage.get();
+        redisFingerprintStorage.setCircuitBreakerEnabled(true);
+        redisFingerprintStorage.setServeStaleOnOpenCircuit(true);
+        redisFingerprintStorage.setDictionaryEncoding(true);
+        setConfiguration();
+        String id = Util.getDigestOf("shouldServeStaleDictionaryEncodedFingerprintWhileCircuitBreakerIsOpen");
+        Fingerprint fingerprintSaved = new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        fingerprintSaved.add("job", 1);
+        JobNameDictionary.INSTANCE.clear();
+
+        setIncorrectConfiguration();
+        for (int i = 0; i < CircuitBreaker.MINIMUM_NUMBER_OF_CALLS; i++) {
+            try {
+                redisFingerprintStorage.load(id);
+            } catch (JedisException e) {
+                assertThat(e, not(instanceOf(CircuitBreakerOpenException.class)));
+            }
+        }
+
+        Fingerprint fingerprintLoaded = redisFingerprintStorage.load(id);
+        assertThat(fingerprintLoaded.getJobs(), hasItem("job"));
+        redisFingerprintStorage.setDictionaryEncoding(false);
+    }
+
+    @Test(expected=CircuitBreakerOpenException.class)
+    public void shouldFailFastWhileCircuitBreakerIsOpen() throws IOException {
+        RedisFingerprintStorage redisFingerprintStorage = RedisFingerprintStorage.get();
+        redisFingerprintStorage.setCircuitBreakerEnabled(true);
+        setIncorrectConfiguration();
+        String id = Util.getDigestOf("shouldFailFastWhileCircuitBreakerIsOpen");
+        for (int i = 0; i < CircuitBreaker.MINIMUM_NUMBER_OF_CALLS; i++) {
+            try {
+                redisFingerprintStorage.load(id);
+            } catch (JedisException e) {
+                assertThat(e, not(instanceOf(CircuitBreakerOpenException.class)));
+            }
+        }
+        redisFingerprintStorage.load(id);
+    }
+
+    @Test
+    public void shouldMigrateLegacyKeysToCompactKeys() throws IOException {
+        setConfiguration();
+        RedisFingerprintStorage redisFingerprintStorage = RedisFingerprintStorage.get();
+        String instanceId = Util.getDigestOf(new ByteArrayInputStream(InstanceIdentity.get().getPublic().getEncoded()));
+        String id = Util.getDigestOf("shouldMigrateLegacyKeysToCompactKeys");
+        Fingerprint fingerprintSaved = new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+
+        redisFingerprintStorage.setKeyScheme(KeyScheme.COMPACT);
+        Fingerprint fingerprintLoaded = Fingerprint.load(id);
+        assertThat(fingerprintLoaded, is(not(nullValue())));
+        assertThat(fingerprintSaved.toString(), is(equalTo(fingerprintLoaded.toString())));
+
+        redisFingerprintStorage.migrateKeys(new TestTaskListener());
+
+        assertThat(jedis.exists(instanceId), is(false));
+        assertThat(jedis.exists(instanceId + id), is(false));
+        assertThat(jedis.exists(KeyScheme.COMPACT.getFingerprintKey(instanceId, id)), is(true));
+        assertThat(JedisPoolManager.INSTANCE.isKeyMigrationPending(KeyScheme.COMPACT), is(false));
+        fingerprintLoaded = Fingerprint.load(id);
+        assertThat(fingerprintLoaded, is(not(nullValue())));
+        assertThat(fingerprintSaved.toString(), is(equalTo(fingerprintLoaded.toString())));
+        assertThat(redisFingerprintStorage.isReady(), is(true));
+    }
+
+    @Test
+    public void shouldDeleteFingerprintWhileMigratingKeys() throws IOException {
+        setConfiguration();
+        RedisFingerprintStorage redisFingerprintStorage = RedisFingerprintStorage.get();
+        String instanceId = Util.getDigestOf(new ByteArrayInputStream(InstanceIdentity.get().getPublic().getEncoded()));
+        String id = Util.getDigestOf("shouldDeleteFingerprintWhileMigratingKeys");
+        new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+
+        redisFingerprintStorage.setKeyScheme(KeyScheme.COMPACT);
+        Fingerprint.delete(id);
+
+        assertThat(Fingerprint.load(id), is(nullValue()));
+        assertThat(jedis.exists(instanceId + id), is(false));
+    }
+
+    @Test
+    public void shouldStoreFingerprintsInBucketedHashes() throws IOException {
+        setConfiguration();
+        RedisFingerprintStorage redisFingerprintStorage = RedisFingerprintStorage.get();
+        redisFingerprintStorage.setKeyScheme(KeyScheme.BUCKETED);
+        String instanceId = Util.getDigestOf(new ByteArrayInputStream(InstanceIdentity.get().getPublic().getEncoded()));
+        assertThat(redisFingerprintStorage.isReady(), is(false));
+
+        List<String> fingerprintIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String fingerprintId = Util.getDigestOf("shouldStoreFingerprintsInBucketedHashes" + i);
+            new Fingerprint(null, "foo.jar", Util.fromHexString(fingerprintId));
+            fingerprintIds.add(fingerprintId);
+        }
+
+        assertThat(redisFingerprintStorage.isReady(), is(true));
+        assertThat(jedis.exists(KeyScheme.BUCKETED.getFingerprintKey(instanceId, fingerprintIds.get(0))), is(true));
+        assertThat(Fingerprint.load(fingerprintIds.get(0)), is(not(nullValue())));
+        List<Fingerprint> fingerprints = redisFingerprintStorage.bulkLoad(fingerprintIds);
+        for (int i = 0; i < 3; i++) {
+            assertThat(fingerprints.get(i).getHashString(), is(fingerprintIds.get(i)));
+        }
+
+        redisFingerprintStorage.iterateAndCleanupFingerprints(new TestTaskListener());
+        for (String fingerprintId : fingerprintIds) {
+            assertThat(Fingerprint.load(fingerprintId), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void shouldEncodeJobNamesWithDictionary() throws IOException {
+        setConfiguration();
+        RedisFingerprintStorage.get().setDictionaryEncoding(true);
+        String instanceId = Util.getDigestOf(new ByteArrayInputStream(InstanceIdentity.get().getPublic().getEncoded()));
+        String id = Util.getDigestOf("shouldEncodeJobNamesWithDictionary");
+        Fingerprint fingerprintSaved = new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        fingerprintSaved.add("folder/shouldEncodeJobNamesWithDictionary", 3);
+
+        String blob = jedis.get(instanceId + id);
+        assertThat(blob.charAt(0), is(DictionaryCodec.FORMAT));
+        assertThat(blob.contains("shouldEncodeJobNamesWithDictionary"), is(false));
+        Fingerprint fingerprintLoaded = Fingerprint.load(id);
+        assertThat(fingerprintLoaded, is(not(nullValue())));
+        assertThat(fingerprintSaved.toString(), is(equalTo(fingerprintLoaded.toString())));
+        assertThat(fingerprintLoaded.getJobs(), hasItem("folder/shouldEncodeJobNamesWithDictionary"));
+    }
+
+    @Test
+    public void shouldFollowJobRenamesWithDictionary() throws IOException {
+        setConfiguration();
+        RedisFingerprintStorage.get().setDictionaryEncoding(true);
+        FreeStyleProject project = j.createFreeStyleProject("before");
+        String id = Util.getDigestOf("shouldFollowJobRenamesWithDictionary");
+        new Fingerprint(null, "foo.jar", Util.fromHexString(id)).add(project.getFullName(), 1);
+
+        project.renameTo("after");
+
+        assertThat(Fingerprint.load(id).getJobs(), hasItem("after"));
+        assertThat(Fingerprint.load(id).getJobs(), not(hasItem("before")));
+    }
+
+    @Test
+    public void shouldSampleFingerprintDiagnostics() throws Exception {
+        setConfiguration();
+        for (int i = 0; i < 100; i++) {
+            String fingerprintId = Util.getDigestOf("shouldSampleFingerprintDiagnostics" + i);
+            new Fingerprint(null, "foo.jar", Util.fromHexString(fingerprintId)).add("job", 1);
+        }
+        String largestId = Util.getDigestOf("shouldSampleFingerprintDiagnosticsLargest");
+        Fingerprint largest = new Fingerprint(null, "bar.jar", Util.fromHexString(largestId));
+        for (int i = 0; i < 100; i++) {
+            largest.add("job" + i, 1);
+        }
+
+        FingerprintDiagnostics.INSTANCE.sample(RedisFingerprintStorage.get());
+
+        FingerprintSizeReport report = FingerprintDiagnostics.INSTANCE.getReport();
+        assertThat(report.getSampledFingerprints(), is(101));
+        assertThat(report.getEstimatedFingerprints(), is(101L));
+        assertThat(report.getLargestFingerprints().get(0).getId(), is(largestId));
+        assertThat(report.getLargestFingerprints().get(0).getJobs().size(), is(100));
+        assertThat(report.getMostUsedJobs().get(0).getName(), is("job"));
+        assertThat(report.getMostUsedJobs().get(0).getSampledFingerprints(), is(100));
+        assertThat(FingerprintDiagnostics.INSTANCE.getGrowth().get(0).getFingerprints(), is(101L));
+    }
+
+    @Test
+    public void shouldSearchFingerprintsByFileName() throws IOException {
+        setConfiguration();
+        String releaseId = Util.getDigestOf("shouldSearchFingerprintsByFileName1");
+        String snapshotId = Util.getDigestOf("shouldSearchFingerprintsByFileName2");
+        new Fingerprint(null, "foo-1.2.jar", Util.fromHexString(releaseId));
+        new Fingerprint(null, "target/Foo-1.3-SNAPSHOT.jar", Util.fromHexString(snapshotId));
+        String otherId = Util.getDigestOf("shouldSearchFingerprintsByFileName3");
+        new Fingerprint(null, "bar-1.2.jar", Util.fromHexString(otherId));
+        RedisFingerprintStorage redisFingerprintStorage = RedisFingerprintStorage.get();
+
+        assertThat(search(redisFingerprintStorage, "foo-1"), is(new HashSet<>(Arrays.asList(releaseId, snapshotId))));
+        assertThat(search(redisFingerprintStorage, "FOO-1.3"), is(Collections.singleton(snapshotId)));
+        assertThat(search(redisFingerprintStorage, "target/"), is(Collections.singleton(snapshotId)));
+
+        Fingerprint.delete(releaseId);
+        assertThat(search(redisFingerprintStorage, "foo-1"), is(Collections.singleton(snapshotId)));
+    }
+
+    @Test
+    public void shouldRemoveFileNameIndexEntriesOnDeleteWithTheKeptFileName() throws IOException {
+        setConfiguration();
+        String id = Util.getDigestOf("shouldRemoveFileNameIndexEntriesOnDeleteWithTheKeptFileName");
+        new Fingerprint(null, "target/foo.jar", Util.fromHexString(id));
+        String instanceId = RedisFingerprintStorage.get().getInstanceId();
+        assertThat(FileNameIndex.getFileName(jedis, instanceId, id), is("target/foo.jar"));
+        assertThat(jedis.zcard(FileNameIndex.getKey(instanceId)), is(2L));
+
+        Fingerprint.delete(id);
+
+        assertThat(FileNameIndex.getFileName(jedis, instanceId, id), is(nullValue()));
+        assertThat(jedis.zcard(FileNameIndex.getKey(instanceId)), is(0L));
+    }
+
+    @Test
+    public void shouldIndexFileNamesOfFingerprintsStoredBeforeTheIndex() throws IOException {
+        setConfiguration();
+        String id = Util.getDigestOf("shouldIndexFileNamesOfFingerprintsStoredBeforeTheIndex");
+        new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        RedisFingerprintStorage redisFingerprintStorage = RedisFingerprintStorage.get();
+        jedis.del(FileNameIndex.getKey(redisFingerprintStorage.getInstanceId()));
+        assertThat(search(redisFingerprintStorage, "foo"), is(Collections.emptySet()));
+
+        redisFingerprintStorage.buildIndexes(new TestTaskListener());
+
+        assertThat(search(redisFingerprintStorage, "foo"), is(Collections.singleton(id)));
+    }
+
+    @Test
+    public void shouldIndexFingerprintsBySaveTime() throws Exception {
+        setConfiguration();
+        String instanceId = RedisFingerprintStorage.get().getInstanceId();
+        String olderId = Util.getDigestOf("shouldIndexFingerprintsBySaveTime-older");
+        String newerId = Util.getDigestOf("shouldIndexFingerprintsBySaveTime-newer");
+        new Fingerprint(null, "foo.jar", Util.fromHexString(olderId));
+        Thread.sleep(10);
+        new Fingerprint(null, "bar.jar", Util.fromHexString(newerId));
+        assertThat(RecencyIndex.getMostRecent(jedis, instanceId, 10), is(Arrays.asList(newerId, olderId)));
+
+        Fingerprint.delete(olderId);
+        assertThat(RecencyIndex.getMostRecent(jedis, instanceId, 10), is(Collections.singletonList(newerId)));
+    }
+
+    @Test
+    public void shouldOnlyCleanUpFingerprintsNotSavedRecently() throws IOException {
+        setConfiguration();
+        RedisFingerprintStorage redisFingerprintStorage = RedisFingerprintStorage.get();
+        String oldId = Util.getDigestOf("shouldOnlyCleanUpFingerprintsNotSavedRecently-old");
+        String recentId = Util.getDigestOf("shouldOnlyCleanUpFingerprintsNotSavedRecently-recent");
+        new Fingerprint(null, "foo.jar", Util.fromHexString(oldId));
+        new Fingerprint(null, "bar.jar", Util.fromHexString(recentId));
+        redisFingerprintStorage.buildIndexes(new TestTaskListener());
+        jedis.zadd(RecencyIndex.getKey(redisFingerprintStorage.getInstanceId()), 0,
+                oldId.getBytes(StandardCharsets.UTF_8));
+
+        redisFingerprintStorage.iterateAndCleanupFingerprints(new TestTaskListener());
+
+        assertThat(Fingerprint.load(oldId), is(nullValue()));
+        assertThat(Fingerprint.load(recentId), is(not(nullValue())));
+    }
+
+    @Test
+    public void shouldPreloadRecentlySavedFingerprints() throws IOException {
+        setConfiguration();
+        String id = Util.getDigestOf("shouldPreloadRecentlySavedFingerprints");
+        new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        LastKnownGoodCache.INSTANCE.clear();
+
+        assertThat(RedisFingerprintStorage.get().preloadRecentFingerprints(10), is(1));
+        assertThat(LastKnownGoodCache.INSTANCE.get(id), is(not(nullValue())));
+    }
+
+    @Test
+    public void shouldStoreLargeFingerprintsInChunks() throws IOException {
+        setConfiguration();
+        String instanceId = RedisFingerprintStorage.get().getInstanceId();
+        String id = Util.getDigestOf("shouldStoreLargeFingerprintsInChunks");
+        Fingerprint fingerprint = new Fingerprint(null, "toolchain.jar", Util.fromHexString(id));
+        for (int i = 0; i < 5000; i++) {
+            fingerprint.addWithoutSaving("a-job-with-a-rather-long-name-sharing-the-toolchain-" + i, 1);
+        }
+        fingerprint.save();
+        assertThat(jedis.llen(ChunkedBlobs.getKey(instanceId, id)) > 1, is(true));
+
+        assertThat(Fingerprint.load(id).getJobs().size(), is(5000));
+        assertThat(RedisFingerprintStorage.get().bulkLoad(Collections.singletonList(id)).get(0).getJobs().size(),
+                is(5000));
+
+        Fingerprint.delete(id);
+        assertThat(jedis.exists(ChunkedBlobs.getKey(instanceId, id)), is(false));
+        assertThat(Fingerprint.load(id), is(nullValue()));
+    }
+
+    @Test
+    public void shouldReloadMutationScriptAfterScriptFlush() throws IOException {
+        setConfiguration();
+        String id = Util.getDigestOf("shouldReloadMutationScriptAfterScriptFlush");
+        new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        assertThat(JedisPoolManager.INSTANCE.isScriptingAvailable(), is(true));
+        jedis.scriptFlush();
+
+        Fingerprint fingerprint = Fingerprint.load(id);
+        fingerprint.add("foo", 1);
+        assertThat(Fingerprint.load(id).getJobs(), is(Collections.singletonList("foo")));
+        Fingerprint.delete(id);
+        assertThat(Fingerprint.load(id), is(nullValue()));
+    }
+
+    @Test
+    public void shouldFallBackToTransactionsWithoutScripting() throws IOException {
+        setConfiguration();
+        JedisPoolManager.INSTANCE.setScriptingAvailable(false);
+        String id = Util.getDigestOf("shouldFallBackToTransactionsWithoutScripting");
+        new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        assertThat(Fingerprint.load(id), is(not(nullValue())));
+        assertThat(search(RedisFingerprintStorage.get(), "foo"), is(Collections.singleton(id)));
+
+        Fingerprint.delete(id);
+        assertThat(Fingerprint.load(id), is(nullValue()));
+        assertThat(search(RedisFingerprintStorage.get(), "foo"), is(Collections.emptySet()));
+    }
+
+    @Test
+    public void shouldSkipUnchangedSaves() throws IOException {
+        setConfiguration();
+        RedisFingerprintStorage.get().setUnchangedSaves(UnchangedSaves.SKIP);
+        String instanceId = Util.getDigestOf(new ByteArrayInputStream(InstanceIdentity.get().getPublic().getEncoded()));
+        String id = Util.getDigestOf("shouldSkipUnchangedSaves");
+        Fingerprint fingerprint = new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        long skipped = StorageMetrics.INSTANCE.unchangedSavesSkipped.sum();
+
+        jedis.del(instanceId + id);
+        fingerprint.save();
+        assertThat(StorageMetrics.INSTANCE.unchangedSavesSkipped.sum(), is(skipped + 1));
+        assertThat(jedis.exists(instanceId + id), is(false));
+
+        fingerprint.add("foo", 1);
+        assertThat(StorageMetrics.INSTANCE.unchangedSavesSkipped.sum(), is(skipped + 1));
+        assertThat(Fingerprint.load(id).getJobs(), is(Collections.singletonList("foo")));
+        RedisFingerprintStorage.get().setUnchangedSaves(UnchangedSaves.WRITE);
+    }
+
+    @Test
+    public void shouldOnlySkipUnchangedSavesStillStored() throws IOException {
+        setConfiguration();
+        RedisFingerprintStorage.get().setUnchangedSaves(UnchangedSaves.SKIP_VERIFIED);
+        String instanceId = Util.getDigestOf(new ByteArrayInputStream(InstanceIdentity.get().getPublic().getEncoded()));
+        String id = Util.getDigestOf("shouldOnlySkipUnchangedSavesStillStored");
+        Fingerprint fingerprint = new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        long skipped = StorageMetrics.INSTANCE.unchangedSavesSkipped.sum();
+
+        fingerprint.save();
+        assertThat(StorageMetrics.INSTANCE.unchangedSavesSkipped.sum(), is(skipped + 1));
+
+        jedis.del(instanceId + id);
+        fingerprint.save();
+        assertThat(StorageMetrics.INSTANCE.unchangedSavesSkipped.sum(), is(skipped + 1));
+        assertThat(jedis.exists(instanceId + id), is(true));
+        RedisFingerprintStorage.get().setUnchangedSaves(UnchangedSaves.WRITE);
+    }
+
+    @Test
+    public void shouldMergeUsagesOfConcurrentlyWrittenFingerprints() throws IOException {
+        setConfiguration();
+        assertUsagesMergedOnConflict("shouldMergeUsagesOfConcurrentlyWrittenFingerprints");
+    }
+
+    @Test
+    public void shouldMergeUsagesOfConcurrentlyWrittenFingerprintsWithoutScripting() throws IOException {
+        setConfiguration();
+        JedisPoolManager.INSTANCE.setScriptingAvailable(false);
+        assertUsagesMergedOnConflict("shouldMergeUsagesOfConcurrentlyWrittenFingerprintsWithoutScripting");
+    }
+
+    private void assertUsagesMergedOnConflict(String name) throws IOException {
+        RedisFingerprintStorage redisFingerprintStorage = RedisFingerprintStorage.get();
+        redisFingerprintStorage.setVersionedWrites(true);
+        String instanceId = Util.getDigestOf(new ByteArrayInputStream(InstanceIdentity.get().getPublic().getEncoded()));
+        String id = Util.getDigestOf(name);
+        Fingerprint fingerprint = new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        fingerprint.add("foo", 1);
+
+        Fingerprint concurrentFingerprint = redisFingerprintStorage.blobToFingerprint(
+                redisFingerprintStorage.fingerprintToBlob(fingerprint));
+        concurrentFingerprint.addWithoutSaving("bar", 2);
+        jedis.set(instanceId + id, redisFingerprintStorage.fingerprintToBlob(concurrentFingerprint));
+        long conflicts = StorageMetrics.INSTANCE.versionConflicts.sum();
+
+        fingerprint.add("foo", 3);
+        assertThat(StorageMetrics.INSTANCE.versionConflicts.sum(), is(conflicts + 1));
+        Fingerprint fingerprintLoaded = redisFingerprintStorage.load(id);
+        assertThat(fingerprintLoaded.getUsages().keySet(), is(new HashSet<>(Arrays.asList("foo", "bar"))));
+        assertThat(fingerprintLoaded.getUsages().get("foo").includes(1), is(true));
+        assertThat(fingerprintLoaded.getUsages().get("foo").includes(3), is(true));
+        assertThat(fingerprintLoaded.getUsages().get("bar").includes(2), is(true));
+        redisFingerprintStorage.setVersionedWrites(false);
+    }
+
+    @Test
+    public void shouldCleanUpSpooledFingerprints() throws Exception {
+        setConfiguration();
+        RedisFingerprintStorage redisFingerprintStorage = RedisFingerprintStorage.get();
+        FreeStyleProject project = j.createFreeStyleProject();
+        j.buildAndAssertSuccess(project);
+        String id = Util.getDigestOf("shouldCleanUpSpooledFingerprints");
+        redisFingerprintStorage.setSpoolWrites(true);
+        Fingerprint fingerprint = new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        WriteSpool.get().append(WriteSpool.Operation.SAVE, id, redisFingerprintStorage.fingerprintToBlob(fingerprint));
+        fingerprint.add(project.getFullName(), 1);
+        redisFingerprintStorage.setSpoolWrites(false);
+
+        redisFingerprintStorage.iterateAndCleanupFingerprints(new TestTaskListener());
+
+        assertThat(Fingerprint.load(id).getJobs(), hasItem(project.getFullName()));
+        assertThat(WriteSpool.get().getPending(id).operation, is(WriteSpool.Operation.SAVE));
+    }
+
+    @Test
+    public void shouldReplaySpooledWritesAsSavesAndDeletesWriteThem() throws IOException {
+        setConfiguration();
+        RedisFingerprintStorage redisFingerprintStorage = RedisFingerprintStorage.get();
+        redisFingerprintStorage.setVersionedWrites(true);
+        String instanceId = Util.getDigestOf(new ByteArrayInputStream(InstanceIdentity.get().getPublic().getEncoded()));
+        String id = Util.getDigestOf("shouldReplaySpooledWritesAsSavesAndDeletesWriteThem");
+        String deletedId = Util.getDigestOf("shouldReplaySpooledWritesAsSavesAndDeletesWriteThem-deleted");
+        Fingerprint fingerprint = new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        new Fingerprint(null, "target/bar.jar", Util.fromHexString(deletedId));
+        long indexedFileNames = jedis.zcard(FileNameIndex.getKey(instanceId));
+
+        Fingerprint concurrentFingerprint = redisFingerprintStorage.blobToFingerprint(
+                redisFingerprintStorage.fingerprintToBlob(fingerprint));
+        concurrentFingerprint.addWithoutSaving("bar", 2);
+        jedis.set(instanceId + id, redisFingerprintStorage.fingerprintToBlob(concurrentFingerprint));
+        redisFingerprintStorage.setSpoolWrites(true);
+        fingerprint.addWithoutSaving("foo", 1);
+        WriteSpool.get().append(WriteSpool.Operation.SAVE, id, redisFingerprintStorage.fingerprintToBlob(fingerprint));
+        WriteSpool.get().append(WriteSpool.Operation.DELETE, deletedId, null);
+        redisFingerprintStorage.setSpoolWrites(false);
+
+        try {
+            redisFingerprintStorage.replaySpool();
+
+            assertThat(WriteSpool.get().isEmpty(), is(true));
+            assertThat(redisFingerprintStorage.load(id).getUsages().keySet(),
+                    is(new HashSet<>(Arrays.asList("foo", "bar"))));
+            assertThat(redisFingerprintStorage.load(deletedId), is(nullValue()));
+            assertThat(jedis.zcard(FileNameIndex.getKey(instanceId)), is(indexedFileNames - 2));
+        } finally {
+            redisFingerprintStorage.setVersionedWrites(false);
+        }
+    }
+
+    @Test
+    public void shouldOnlyCleanUpWhileHoldingTheLease() throws IOException {
+        setConfiguration();
+        RedisFingerprintStorage redisFingerprintStorage = RedisFingerprintStorage.get();
+        String id = Util.getDigestOf("shouldOnlyCleanUpWhileHoldingTheLease");
+        new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+
+        CleanupLease lease = CleanupLease.acquire(redisFingerprintStorage, redisFingerprintStorage.getInstanceId(),
+                false);
+        assertThat(lease, is(not(nullValue())));
+        redisFingerprintStorage.iterateAndCleanupFingerprints(new TestTaskListener());
+        assertThat(Fingerprint.load(id), is(not(nullValue())));
+
+        lease.release();
+        redisFingerprintStorage.iterateAndCleanupFingerprints(new TestTaskListener());
+        assertThat(Fingerprint.load(id), is(nullValue()));
+    }
+
+    @Test
+    public void shouldFenceCleanupDeletesOnceTheLeaseIsTakenOver() throws IOException {
+        setConfiguration();
+        RedisFingerprintStorage redisFingerprintStorage = RedisFingerprintStorage.get();
+        String id = Util.getDigestOf("shouldFenceCleanupDeletesOnceTheLeaseIsTakenOver");
+        new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+
+        CleanupLease lease = CleanupLease.acquire(redisFingerprintStorage, redisFingerprintStorage.getInstanceId(),
+                false);
+        lease.attach();
+        jedis.set(CleanupLease.getKey(redisFingerprintStorage.getInstanceId(), "cleanup"),
+                "1000:other".getBytes(StandardCharsets.UTF_8));
+        try {
+            redisFingerprintStorage.delete(id);
+            fail("Expected CleanupLeaseLostException");
+        } catch (CleanupLeaseLostException e) {
+            assertThat(Fingerprint.load(id), is(not(nullValue())));
+        } finally {
+            lease.release();
+        }
+    }
+
+    @Test
+    public void shouldFenceCleanupSavesOnceTheLeaseIsTakenOver() throws IOException {
+        setConfiguration();
+        RedisFingerprintStorage redisFingerprintStorage = RedisFingerprintStorage.get();
+        String id = Util.getDigestOf("shouldFenceCleanupSavesOnceTheLeaseIsTakenOver");
+        Fingerprint fingerprint = new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        fingerprint.addWithoutSaving("foo", 1);
+
+        CleanupLease lease = CleanupLease.acquire(redisFingerprintStorage, redisFingerprintStorage.getInstanceId(),
+                false);
+        lease.attach();
+        jedis.set(CleanupLease.getKey(redisFingerprintStorage.getInstanceId(), "cleanup"),
+                "1000:other".getBytes(StandardCharsets.UTF_8));
+        try {
+            for (boolean versionedWrites : new boolean[] {false, true}) {
+                redisFingerprintStorage.setVersionedWrites(versionedWrites);
+                try {
+                    redisFingerprintStorage.save(fingerprint);
+                    fail("Expected CleanupLeaseLostException");
+                } catch (CleanupLeaseLostException e) {
+                    assertThat(redisFingerprintStorage.load(id).getJobs(), is(Collections.emptyList()));
+                }
+            }
+        } finally {
+            redisFingerprintStorage.setVersionedWrites(false);
+            lease.release();
+        }
+    }
+
+    @Test
+    public void shouldStopCleanupOnceTheLeaseIsTakenOverWhileLoadingAPage() throws IOException {
+        setConfiguration();
+        RedisFingerprintStorage redisFingerprintStorage = RedisFingerprintStorage.get();
+        String id = Util.getDigestOf("shouldStopCleanupOnceTheLeaseIsTakenOverWhileLoadingAPage");
+        new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+
+        CleanupLease lease = CleanupLease.acquire(redisFingerprintStorage, redisFingerprintStorage.getInstanceId(),
+                false);
+        jedis.set(CleanupLease.getKey(redisFingerprintStorage.getInstanceId(), "cleanup"),
+                "1000:other".getBytes(StandardCharsets.UTF_8));
+        try {
+            redisFingerprintStorage.cleanupFingerprints(lease, new TestTaskListener());
+            fail("Expected CleanupLeaseLostException");
+        } catch (CleanupLeaseLostException e) {
+            assertThat(Fingerprint.load(id), is(not(nullValue())));
+        } finally {
+            lease.release();
+        }
+    }
+
+    @Test
+    public void shouldShareCleanupAmongHolders() {
+        setConfiguration();
+        RedisFingerprintStorage redisFingerprintStorage = RedisFingerprintStorage.get();
+        String instanceId = redisFingerprintStorage.getInstanceId();
+        jedis.zadd(CleanupLease.getKey(instanceId, "cleanup:holders"), System.currentTimeMillis(),
+                "other".getBytes(StandardCharsets.UTF_8));
+
+        CleanupLease lease = CleanupLease.acquire(redisFingerprintStorage, instanceId, true);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ids.add(Util.getDigestOf("shouldShareCleanupAmongHolders" + i));
+        }
+        List<String> ownedIds = lease.filter(ids);
+        assertThat(ownedIds.isEmpty(), is(false));
+        assertThat(ownedIds.size() < ids.size(), is(true));
+        lease.release();
+    }
+
+    @Test
+    public void shouldBorrowConnectionsForCleanupFromTheBackgroundPool() throws IOException {
+        setConfiguration();
+        RedisFingerprintStorage redisFingerprintStorage = RedisFingerprintStorage.get();
+        String id = Util.getDigestOf("shouldBorrowConnectionsForCleanupFromTheBackgroundPool");
+        new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        assertThat(JedisPoolManager.INSTANCE.getJedisPool(JedisPoolManager.Pool.BACKGROUND).getNumIdle(), is(0));
+
+        redisFingerprintStorage.iterateAndCleanupFingerprints(new TestTaskListener());
+        assertThat(Fingerprint.load(id), is(nullValue()));
+        assertThat(JedisPoolManager.INSTANCE.getJedisPool(JedisPoolManager.Pool.BACKGROUND).getNumIdle() > 0,
+                is(true));
+        assertThat(JedisPoolManager.INSTANCE.getJedisPool(JedisPoolManager.Pool.BACKGROUND).getNumActive(), is(0));
+    }
+
+    @Test
+    public void shouldMoveColdFingerprintsToTheArchiveAndBack() throws IOException {
+        setConfiguration();
+        RedisFingerprintStorage redisFingerprintStorage = RedisFingerprintStorage.get();
+        String instanceId = redisFingerprintStorage.getInstanceId();
+        String id = Util.getDigestOf("shouldMoveColdFingerprintsToTheArchiveAndBack");
+        String recentId = Util.getDigestOf("shouldMoveColdFingerprintsToTheArchiveAndBack-recent");
+        Fingerprint fingerprint = new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        new Fingerprint(null, "bar.jar", Util.fromHexString(recentId));
+        jedis.set(KeyScheme.getKey('N', instanceId, new byte[0]), new byte[] {'1'});
+        jedis.zadd(RecencyIndex.getKey(instanceId), 0, id.getBytes(StandardCharsets.UTF_8));
+
+        redisFingerprintStorage.setColdArchiveAfterDays(30);
+        assertThat(redisFingerprintStorage.archiveColdFingerprints(), is(1));
+        assertThat(jedis.exists(instanceId + id), is(false));
+        assertThat(jedis.exists(instanceId + recentId), is(true));
+        assertThat(ColdArchive.get().contains(id), is(true));
+        assertThat(Fingerprint.load(id).getFileName(), is("foo.jar"));
+
+        fingerprint.add("foo", 1);
+        assertThat(jedis.exists(instanceId + id), is(true));
+        assertThat(ColdArchive.get().contains(id), is(false));
+        assertThat(Fingerprint.load(id).getJobs(), is(Collections.singletonList("foo")));
+        redisFingerprintStorage.setColdArchiveAfterDays(0);
+    }
+
+    private static Set<String> search(RedisFingerprintStorage redisFingerprintStorage, String fileName)
+            throws IOException {
+        return redisFingerprintStorage.searchByFileName(fileName, 10).stream()
+                .map(Fingerprint::getHashString)
+                .collect(Collectors.toSet());
+    }
+
     private static class TestTaskListener implements TaskListener {
 
         private ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import org.junit.Test;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class RetryPolicyTest {
+
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    private String failTimes(int failures) {
+        if (attempts.incrementAndGet() <= failures) {
+            throw new JedisConnectionException("Read timed out");
+        }
+        return "OK";
+    }
+
+    @Test
+    public void shouldRetryConnectionFailures() {
+        long retries = StorageMetrics.INSTANCE.retries.sum();
+        assertThat(new RetryPolicy(2, 0).execute(() -> failTimes(2)), is("OK"));
+        assertThat(attempts.get(), is(3));
+        assertThat(StorageMetrics.INSTANCE.retries.sum() - retries, is(2L));
+    }
+
+    @Test(expected = JedisConnectionException.class)
+    public void shouldGiveUpAfterMaxRetries() {
+        new RetryPolicy(2, 0).execute(() -> failTimes(3));
+    }
+
+    @Test
+    public void shouldNotRetryErrorsRepliedByRedis() {
+        try {
+            new RetryPolicy(2, 0).execute(() -> {
+                attempts.incrementAndGet();
+                throw new JedisDataException("WRONGTYPE");
+            });
+        } catch (JedisDataException e) {
+            assertThat(attempts.get(), is(1));
+            return;
+        }
+        throw new AssertionError("Expected JedisDataException");
+    }
+
+    @Test
+    public void shouldNotRetryWhenCircuitBreakerIsOpen() {
+        try {
+            new RetryPolicy(2, 0).execute(() -> {
+                attempts.incrementAndGet();
+                throw new CircuitBreakerOpenException();
+            });
+        } catch (CircuitBreakerOpenException e) {
+            assertThat(attempts.get(), is(1));
+            return;
+        }
+        throw new AssertionError("Expected CircuitBreakerOpenException");
+    }
+
+    @Test
+    public void shouldNotRetryBeyondLatencyBudget() {
+        try {
+            new RetryPolicy(100, 1).execute(() -> {
+                attempts.incrementAndGet();
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new JedisConnectionException("Read timed out");
+            });
+        } catch (JedisConnectionException e) {
+            assertThat(attempts.get(), is(1));
+            return;
+        }
+        throw new AssertionError("Expected JedisConnectionException");
+    }
+
+    @Test
+    public void latencyTrackerShouldEstimate95thPercentile() {
+        LatencyTracker latencyTracker = new LatencyTracker();
+        for (int i = 1; i < LatencyTracker.MIN_SAMPLES; i++) {
+            latencyTracker.record(i);
+        }
+        assertThat(latencyTracker.getP95(), is(-1L));
+        latencyTracker.record(LatencyTracker.MIN_SAMPLES);
+        assertThat(latencyTracker.getP95(), is((long) LatencyTracker.MIN_SAMPLES - 1));
+    }
+
+}
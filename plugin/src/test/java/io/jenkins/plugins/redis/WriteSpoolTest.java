@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.redis;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+
+public class WriteSpoolTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final List<WriteSpool.Entry> replayed = new ArrayList<>();
+
+    @Test
+    public void shouldKeepLatestPendingEntry() throws IOException {
+        WriteSpool writeSpool = new WriteSpool(temporaryFolder.newFolder());
+        assertThat(writeSpool.isEmpty(), is(true));
+
+        writeSpool.append(WriteSpool.Operation.SAVE, "a", "first");
+        writeSpool.append(WriteSpool.Operation.SAVE, "a", "second");
+        writeSpool.append(WriteSpool.Operation.DELETE, "b", null);
+
+        assertThat(writeSpool.getPendingCount(), is(2));
+        assertThat(writeSpool.getPending("a").blob, is("second"));
+        assertThat(writeSpool.getPending("b").operation, is(WriteSpool.Operation.DELETE));
+        assertThat(writeSpool.getPending("c"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldReplayLatestEntriesAndEmptySpool() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        WriteSpool writeSpool = new WriteSpool(directory);
+        writeSpool.append(WriteSpool.Operation.SAVE, "a", "first");
+        writeSpool.append(WriteSpool.Operation.SAVE, "b", "blob");
+        writeSpool.append(WriteSpool.Operation.SAVE, "a", "second");
+
+        assertThat(writeSpool.replay(replayed::addAll), is(2));
+
+        assertThat(replayed.size(), is(2));
+        assertThat(replayed.get(0).id, is("b"));
+        assertThat(replayed.get(1).blob, is("second"));
+        assertThat(writeSpool.isEmpty(), is(true));
+        assertThat(directory.listFiles().length, is(0));
+    }
+
+    @Test
+    public void shouldKeepEntriesWhenReplayFails() throws IOException {
+        WriteSpool writeSpool = new WriteSpool(temporaryFolder.newFolder());
+        writeSpool.append(WriteSpool.Operation.SAVE, "a", "blob");
+
+        try {
+            writeSpool.replay(batch -> {
+                throw new CircuitBreakerOpenException();
+            });
+        } catch (CircuitBreakerOpenException e) {
+            assertThat(writeSpool.getPending("a"), is(not(nullValue())));
+            assertThat(writeSpool.replay(replayed::addAll), is(1));
+            assertThat(writeSpool.isEmpty(), is(true));
+            return;
+        }
+        throw new AssertionError("Expected CircuitBreakerOpenException");
+    }
+
+    @Test
+    public void shouldRecoverPendingEntriesAfterRestart() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        WriteSpool writeSpool = new WriteSpool(directory);
+        writeSpool.append(WriteSpool.Operation.SAVE, "a", "blob");
+        writeSpool.append(WriteSpool.Operation.DELETE, "b", null);
+        writeSpool.close();
+
+        WriteSpool recoveredSpool = new WriteSpool(directory);
+        assertThat(recoveredSpool.getPendingCount(), is(2));
+        assertThat(recoveredSpool.getPending("a").blob, is("blob"));
+
+        recoveredSpool.append(WriteSpool.Operation.SAVE, "c", "blob");
+        assertThat(recoveredSpool.getPending("c").sequence, is(2L));
+    }
+
+    @Test
+    public void shouldTruncateTornRecord() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        WriteSpool writeSpool = new WriteSpool(directory);
+        writeSpool.append(WriteSpool.Operation.SAVE, "a", "blob");
+        writeSpool.append(WriteSpool.Operation.SAVE, "b", "blob");
+        writeSpool.close();
+
+        File segment = directory.listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        WriteSpool recoveredSpool = new WriteSpool(directory);
+        assertThat(recoveredSpool.getPendingCount(), is(1));
+        assertThat(recoveredSpool.getPending("b"), is(nullValue()));
+        assertThat(recoveredSpool.replay(replayed::addAll), is(1));
+    }
+
+}